@@ -0,0 +1,79 @@
+package se.kry.codetest;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import se.kry.codetest.model.ProbeType;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Blocks the benchmark thread on futures completed by Vert.x, never call it from an event loop.
+ */
+public final class BenchmarkSupport {
+
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private BenchmarkSupport() {
+    }
+
+    public static <T> T await(Future<T> future) {
+        final AsyncResult<T> done = awaitResult(future);
+        if (done.failed()) {
+            throw new IllegalStateException("Benchmark operation failed", done.cause());
+        }
+        return done.result();
+    }
+
+    /**
+     * The JDBC client of a connector is only created once its configuration is read, retries the statement until it succeeds.
+     */
+    public static <T> T awaitDatabase(Supplier<Future<T>> statement) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (true) {
+            final AsyncResult<T> done = awaitResult(statement.get());
+            if (done.succeeded()) {
+                return done.result();
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("The database is not ready", done.cause());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static <T> AsyncResult<T> awaitResult(Future<T> future) {
+        final CompletableFuture<AsyncResult<T>> result = new CompletableFuture<>();
+        future.setHandler(result::complete);
+        try {
+            return result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException("Benchmark operation did not complete", e);
+        }
+    }
+
+    public static List<Service> services(int count) {
+        final LocalDateTime creationDate = LocalDateTime.now();
+        final ProbeType[] probeTypes = ProbeType.values();
+        final List<Service> services = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            services.add(Service.builder()
+                    .id(UUID.randomUUID().toString())
+                    .name("service-" + i)
+                    .url("https://service-" + i + ".example.com/health")
+                    .serviceStatus(ServiceStatus.values()[i % ServiceStatus.values().length])
+                    .creationDate(creationDate)
+                    .pollIntervalMs(Service.DEFAULT_POLL_INTERVAL_MS)
+                    .probeType(probeTypes[i % probeTypes.length])
+                    .build());
+        }
+        return services;
+    }
+}
@@ -0,0 +1,60 @@
+package se.kry.codetest.mapper;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.kry.codetest.BenchmarkSupport;
+import se.kry.codetest.model.Service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping and encoding of the services list as served by GET /api/v1/services.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceMapperBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    int services;
+
+    private List<Service> registry;
+    private List<JsonObject> mapped;
+
+    @Setup
+    public void setUp() {
+        registry = BenchmarkSupport.services(services);
+        mapped = ServiceMapper.toJsonObjects(registry);
+    }
+
+    @Benchmark
+    public List<JsonObject> toJsonObjects() {
+        return ServiceMapper.toJsonObjects(registry);
+    }
+
+    @Benchmark
+    public Buffer encode() {
+        return new JsonArray(mapped).toBuffer();
+    }
+
+    @Benchmark
+    public Buffer toJsonObjectsAndEncode() {
+        return new JsonArray(ServiceMapper.toJsonObjects(registry)).toBuffer();
+    }
+}
@@ -0,0 +1,87 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.Vertx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.kry.codetest.BenchmarkSupport;
+import se.kry.codetest.model.ProbeType;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static se.kry.codetest.BenchmarkSupport.await;
+
+/**
+ * Statements of the registry on a temporary SQLite file holding {@code services} rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceRegistryRepositoryBenchmark {
+
+    @Param({"100", "10000"})
+    int services;
+
+    private Path dbFile;
+    private Vertx vertx;
+    private ServiceRegistryRepository repository;
+    private List<String> ids;
+    private long saved;
+    private int updated;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        dbFile = Files.createTempFile("poller-benchmark", ".db");
+        // read by the configuration of the connector, which falls back on system properties
+        System.setProperty("db_path", dbFile.toString());
+        vertx = Vertx.vertx();
+        repository = new ServiceRegistryRepository(vertx);
+        BenchmarkSupport.awaitDatabase(repository::createDb);
+        ids = await(repository.saveAll(BenchmarkSupport.services(services))).stream()
+                .map(Service::getId)
+                .collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        vertx.close();
+        Files.deleteIfExists(dbFile);
+    }
+
+    @Benchmark
+    public List<Service> findAll() {
+        return await(repository.findAll());
+    }
+
+    @Benchmark
+    public String save() {
+        final long n = saved++;
+        return await(repository.save("https://saved-" + n + ".example.com", "saved-" + n, ServiceStatus.UNKNOWN,
+                Service.DEFAULT_POLL_INTERVAL_MS, ProbeType.GET));
+    }
+
+    @Benchmark
+    public Boolean updateStatus() {
+        final int n = updated++;
+        return await(repository.updateStatus(ids.get(n % ids.size()), n % 2 == 0 ? ServiceStatus.OK : ServiceStatus.FAILED));
+    }
+}
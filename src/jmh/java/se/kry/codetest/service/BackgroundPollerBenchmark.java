@@ -0,0 +1,107 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.kry.codetest.BenchmarkSupport;
+import se.kry.codetest.latency.AdaptiveTimeouts;
+import se.kry.codetest.model.ProbeResult;
+import se.kry.codetest.model.ProbeType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static se.kry.codetest.BenchmarkSupport.await;
+
+/**
+ * One poll of every registered service with probes answered right away, measuring the poller bookkeeping
+ * (limits, latencies, timeouts, backoff and status transitions) rather than the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackgroundPollerBenchmark {
+
+    @Param({"100", "10000"})
+    int services;
+
+    private Path dbFile;
+    private Vertx vertx;
+    private Context context;
+    private BackgroundPoller backgroundPoller;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        dbFile = Files.createTempFile("poller-benchmark", ".db");
+        System.setProperty("db_path", dbFile.toString());
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+        final ServiceRegistry registry = new ServiceRegistry(vertx);
+        BenchmarkSupport.awaitDatabase(registry::createDb);
+        await(registry.createAll(BenchmarkSupport.services(services)));
+        await(registry.load());
+        // statuses settle after the first poll, later polls only write transitions
+        backgroundPoller = new BackgroundPoller(new StubPoller(vertx), registry, new PollExecutor(PollExecutor.DEFAULT_MAX_IN_FLIGHT),
+                new AdaptiveTimeouts(Poller.DEFAULT_TIMEOUT_MS), new PollBackoff(true, 2, 2, 60 * 60 * 1000),
+                OverlapPolicy.SKIP, StatusWriteBuffer.writeThrough(registry));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        vertx.close();
+        Files.deleteIfExists(dbFile);
+    }
+
+    @Benchmark
+    public CompositeFuture pollServices() {
+        // the poller is confined to the event loop, like the scheduler that drives it
+        final Future<CompositeFuture> polled = Future.future();
+        context.runOnContext(v -> backgroundPoller.pollServices()
+                .compose(futures -> {
+                    final List<Future> polls = new ArrayList<>(futures);
+                    return CompositeFuture.all(polls);
+                })
+                .setHandler(polled));
+        return await(polled);
+    }
+
+    private static class StubPoller extends Poller {
+        private int probes;
+
+        StubPoller(Vertx vertx) {
+            super(vertx);
+        }
+
+        @Override
+        public Future<ProbeResult> probe(String url, ProbeType probeType, long timeoutMs) {
+            // one service in ten fails, the others answer in a few milliseconds
+            final int n = probes++;
+            return Future.succeededFuture(ProbeResult.builder()
+                    .success(n % 10 != 0)
+                    .connectMs(1)
+                    .ttfbMs(2 + n % 5)
+                    .totalMs(3 + n % 5)
+                    .build());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.Vertx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.kry.codetest.model.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Url validation done on every create and update of a service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceRegistryValidationBenchmark {
+
+    @Param({"https://www.example.com/health", "http://service-42.internal.example.com/api/v1/status/deep", "ftp://example.com"})
+    String url;
+
+    private Vertx vertx;
+    private ServiceRegistry registry;
+
+    @Setup
+    public void setUp() {
+        vertx = Vertx.vertx();
+        registry = new ServiceRegistry(vertx);
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    public String validate() {
+        return registry.validate(url, Service.DEFAULT_POLL_INTERVAL_MS);
+    }
+}
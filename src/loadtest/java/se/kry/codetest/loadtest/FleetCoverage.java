@@ -0,0 +1,52 @@
+package se.kry.codetest.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Requests received by the stub fleet and poll cycles, a cycle completes once every endpoint was requested
+ * at least once since the previous one. Shared by the stub server instances.
+ */
+class FleetCoverage {
+    private final int[] lastCycle;
+    private final List<Long> cycleDurationsMs = new ArrayList<>();
+    private int cycle = 1;
+    private int covered;
+    private long cycleStartedAt = System.currentTimeMillis();
+    private long requests;
+
+    FleetCoverage(int endpoints) {
+        this.lastCycle = new int[endpoints];
+    }
+
+    synchronized void start() {
+        cycleStartedAt = System.currentTimeMillis();
+    }
+
+    synchronized void hit(int endpoint) {
+        requests++;
+        if (lastCycle[endpoint] == cycle) {
+            return;
+        }
+        lastCycle[endpoint] = cycle;
+        if (++covered == lastCycle.length) {
+            final long now = System.currentTimeMillis();
+            cycleDurationsMs.add(now - cycleStartedAt);
+            cycleStartedAt = now;
+            covered = 0;
+            cycle++;
+        }
+    }
+
+    synchronized long getRequests() {
+        return requests;
+    }
+
+    synchronized int getCovered() {
+        return covered;
+    }
+
+    synchronized List<Long> getCycleDurationsMs() {
+        return new ArrayList<>(cycleDurationsMs);
+    }
+}
@@ -0,0 +1,131 @@
+package se.kry.codetest.loadtest;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Random;
+
+/**
+ * Behaviour of the simulated endpoints: each endpoint is served on one of {@code hosts} loopback addresses,
+ * or one of {@code hosts} ports of 127.0.0.1 without loopback aliases, answers after a log-normal latency,
+ * fails or hangs at random, and a fixed share of endpoints is always down.
+ */
+class FleetProfile {
+    static final String ENDPOINTS_CONFIG = "endpoints";
+    static final String HOSTS_CONFIG = "hosts";
+    static final String LATENCY_MEDIAN_MS_CONFIG = "latency_median_ms";
+    static final String LATENCY_P99_MS_CONFIG = "latency_p99_ms";
+    static final String ERROR_RATE_CONFIG = "error_rate";
+    static final String HANG_RATE_CONFIG = "hang_rate";
+    static final String DOWN_RATE_CONFIG = "down_rate";
+    static final String LOOPBACK_ALIASES_CONFIG = "loopback_aliases";
+    static final String PATH_PREFIX = "/svc/";
+    private static final int MAX_HOSTS = 1 << 16;
+    // standard normal quantile of the 99th percentile
+    private static final double Z_99 = 2.326;
+
+    private final int endpoints;
+    private final int hosts;
+    private final double latencyMedianMs;
+    private final double latencyP99Ms;
+    private final double errorRate;
+    private final double hangRate;
+    private final double downRate;
+    private final boolean loopbackAliases;
+
+    private FleetProfile(int endpoints, int hosts, double latencyMedianMs, double latencyP99Ms, double errorRate, double hangRate, double downRate,
+                         boolean loopbackAliases) {
+        if (endpoints < 1) {
+            throw new IllegalArgumentException("The fleet needs at least one endpoint");
+        }
+        if (hosts < 1 || hosts > MAX_HOSTS) {
+            throw new IllegalArgumentException("Hosts must be between 1 and " + MAX_HOSTS);
+        }
+        if (latencyMedianMs <= 0 || latencyP99Ms < latencyMedianMs) {
+            throw new IllegalArgumentException("Latency median must be positive and at most the p99");
+        }
+        this.endpoints = endpoints;
+        this.hosts = hosts;
+        this.latencyMedianMs = latencyMedianMs;
+        this.latencyP99Ms = latencyP99Ms;
+        this.errorRate = errorRate;
+        this.hangRate = hangRate;
+        this.downRate = downRate;
+        this.loopbackAliases = loopbackAliases;
+    }
+
+    static FleetProfile fromJson(JsonObject config) {
+        return new FleetProfile(
+                config.getInteger(ENDPOINTS_CONFIG, 10_000),
+                config.getInteger(HOSTS_CONFIG, 1000),
+                config.getDouble(LATENCY_MEDIAN_MS_CONFIG, 20.0),
+                config.getDouble(LATENCY_P99_MS_CONFIG, 250.0),
+                config.getDouble(ERROR_RATE_CONFIG, 0.01),
+                config.getDouble(HANG_RATE_CONFIG, 0.001),
+                config.getDouble(DOWN_RATE_CONFIG, 0.01),
+                config.getBoolean(LOOPBACK_ALIASES_CONFIG, System.getProperty("os.name", "").startsWith("Linux")));
+    }
+
+    int getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Ports the stub servers listen on from the first one, one per host when hosts are told apart by port.
+     */
+    int getPorts() {
+        return loopbackAliases ? 1 : hosts;
+    }
+
+    /**
+     * Linux routes the whole 127.0.0.0/8 block to the loopback interface, so every host is a distinct
+     * connection pool and host limit for the poller while being served by the same stub server. Other
+     * systems only answer on 127.0.0.1, hosts are then told apart by port instead.
+     */
+    String host(int endpoint) {
+        final int host = endpoint % hosts;
+        return hosts == 1 || !loopbackAliases ? "127.0.0.1" : "127.1." + (host >> 8) + "." + (host & 0xff);
+    }
+
+    String url(int endpoint, int firstPort) {
+        final int port = loopbackAliases ? firstPort : firstPort + endpoint % hosts;
+        return "http://" + host(endpoint) + ":" + port + PATH_PREFIX + endpoint;
+    }
+
+    boolean isDown(int endpoint) {
+        return fraction(endpoint) < downRate;
+    }
+
+    boolean hangs(double roll) {
+        return roll < hangRate;
+    }
+
+    boolean fails(double roll) {
+        return roll >= hangRate && roll < hangRate + errorRate;
+    }
+
+    long latencyMs(Random random) {
+        final double sigma = Math.log(latencyP99Ms / latencyMedianMs) / Z_99;
+        return Math.max(0, Math.round(latencyMedianMs * Math.exp(sigma * random.nextGaussian())));
+    }
+
+    JsonObject toJson() {
+        return new JsonObject()
+                .put(ENDPOINTS_CONFIG, endpoints)
+                .put(HOSTS_CONFIG, hosts)
+                .put(LATENCY_MEDIAN_MS_CONFIG, latencyMedianMs)
+                .put(LATENCY_P99_MS_CONFIG, latencyP99Ms)
+                .put(ERROR_RATE_CONFIG, errorRate)
+                .put(HANG_RATE_CONFIG, hangRate)
+                .put(DOWN_RATE_CONFIG, downRate)
+                .put(LOOPBACK_ALIASES_CONFIG, loopbackAliases);
+    }
+
+    // stable uniform value in [0, 1) per endpoint
+    private static double fraction(int endpoint) {
+        long h = endpoint * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (h >>> 11) / (double) (1L << 53);
+    }
+}
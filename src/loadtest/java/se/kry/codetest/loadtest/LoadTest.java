@@ -0,0 +1,325 @@
+package se.kry.codetest.loadtest;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Verticle;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.MainVerticle;
+import se.kry.codetest.latency.LatencyHistogram;
+import se.kry.codetest.metrics.Counter;
+import se.kry.codetest.metrics.Metrics;
+import se.kry.codetest.model.ProbeType;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.repository.ServiceRegistryRepository;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Polls a simulated fleet of endpoints with the real {@link MainVerticle} and reports probes per second,
+ * poll cycle completion times, event loop lag and heap usage.
+ * <p>
+ * Arguments are {@code key=value} pairs: the fleet keys of {@link FleetProfile}, the harness keys below,
+ * anything else is passed to the configuration of the verticle, e.g. {@code host_rate_per_second=50}.
+ * The stub fleet runs on its own Vert.x instance, the poller on a Vert.x instance with a single event loop
+ * so the measured lag is the one of the verticle.
+ */
+@Slf4j
+public class LoadTest {
+    static final String STUB_PORT_CONFIG = "stub_port";
+    static final String STUB_INSTANCES_CONFIG = "stub_instances";
+    static final String DURATION_MS_CONFIG = "duration_ms";
+    static final String REPORT_INTERVAL_MS_CONFIG = "report_interval_ms";
+    static final String POLL_INTERVAL_MS_CONFIG = "poll_interval_ms";
+    static final String PROBE_TYPE_CONFIG = "probe_type";
+    static final String OUTPUT_CONFIG = "output";
+    private static final Set<String> HARNESS_CONFIG = new HashSet<>(Arrays.asList(
+            STUB_PORT_CONFIG, STUB_INSTANCES_CONFIG, DURATION_MS_CONFIG, REPORT_INTERVAL_MS_CONFIG, POLL_INTERVAL_MS_CONFIG,
+            PROBE_TYPE_CONFIG, OUTPUT_CONFIG, FleetProfile.ENDPOINTS_CONFIG, FleetProfile.HOSTS_CONFIG,
+            FleetProfile.LATENCY_MEDIAN_MS_CONFIG, FleetProfile.LATENCY_P99_MS_CONFIG, FleetProfile.ERROR_RATE_CONFIG,
+            FleetProfile.HANG_RATE_CONFIG, FleetProfile.DOWN_RATE_CONFIG, FleetProfile.LOOPBACK_ALIASES_CONFIG));
+    private static final String[] PROBE_RESULTS = {"success", "failure", "timeout"};
+    private static final long LAG_PROBE_INTERVAL_MS = 20;
+    private static final int SEED_BATCH_SIZE = 5000;
+    private static final long STARTUP_TIMEOUT_MINUTES = 10;
+    // time left for the last sample and the results after the test duration
+    private static final long RESULTS_TIMEOUT_MARGIN_SECONDS = 60;
+
+    private final JsonObject config;
+    private final FleetProfile profile;
+    private final FleetCoverage coverage;
+
+    LoadTest(JsonObject config) {
+        this.config = config;
+        this.profile = FleetProfile.fromJson(config);
+        this.coverage = new FleetCoverage(profile.getEndpoints());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadTest(parseArgs(args)).run();
+    }
+
+    static JsonObject parseArgs(String[] args) {
+        final JsonObject config = new JsonObject();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Arguments must be key=value pairs: " + arg);
+            }
+            config.put(arg.substring(0, separator), parseValue(arg.substring(separator + 1)));
+        }
+        return config;
+    }
+
+    private static Object parseValue(String value) {
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+            return Boolean.parseBoolean(value);
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException notLong) {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException notDouble) {
+                return value;
+            }
+        }
+    }
+
+    JsonObject run() throws Exception {
+        final Path dbFile = Files.createTempFile("poller-loadtest", ".db");
+        final int stubPort = config.getInteger(STUB_PORT_CONFIG, 9099);
+        final long pollIntervalMs = config.getLong(POLL_INTERVAL_MS_CONFIG, 10_000L);
+        final Vertx stubVertx = Vertx.vertx();
+        final Vertx pollerVertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(1));
+        try {
+            final int stubInstances = config.getInteger(STUB_INSTANCES_CONFIG, Runtime.getRuntime().availableProcessors());
+            for (int i = 0; i < stubInstances; i++) {
+                await(deploy(stubVertx, new StubFleetVerticle(profile, coverage, stubPort), new DeploymentOptions()));
+            }
+            log.info("Stub fleet of {} endpoints listening on {} port(s) from {}", profile.getEndpoints(), profile.getPorts(), stubPort);
+
+            // the repository reads its database path from the system properties when created outside a verticle
+            System.setProperty("db_path", dbFile.toString());
+            final ServiceRegistryRepository repository = new ServiceRegistryRepository(pollerVertx);
+            await(repository.createDb().compose(created -> seed(repository, 0, stubPort, pollIntervalMs)));
+            log.info("Registered {} services polled every {} ms", profile.getEndpoints(), pollIntervalMs);
+
+            final JsonObject verticleConfig = verticleConfig(dbFile, pollIntervalMs);
+            final long startedAt = System.currentTimeMillis();
+            await(deploy(pollerVertx, new MainVerticle(), new DeploymentOptions().setConfig(verticleConfig)));
+            coverage.start();
+
+            final CompletableFuture<JsonObject> results = new CompletableFuture<>();
+            // timers created outside a verticle run on the single event loop of the poller instance
+            final Sampler sampler = new Sampler(pollerVertx, startedAt);
+            pollerVertx.setPeriodic(LAG_PROBE_INTERVAL_MS, new LagProbe(sampler)::tick);
+            pollerVertx.setPeriodic(config.getLong(REPORT_INTERVAL_MS_CONFIG, 5000L), timerId -> sampler.sample());
+            final long durationMs = config.getLong(DURATION_MS_CONFIG, 120_000L);
+            pollerVertx.setTimer(durationMs, timerId -> {
+                sampler.sample();
+                results.complete(new JsonObject()
+                        .put("fleet", profile.toJson())
+                        .put("config", verticleConfig)
+                        .put("samples", sampler.samples)
+                        .put("summary", sampler.summary()));
+            });
+            final JsonObject result;
+            try {
+                result = results.get(TimeUnit.MILLISECONDS.toSeconds(durationMs) + RESULTS_TIMEOUT_MARGIN_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                throw new IllegalStateException("No results " + RESULTS_TIMEOUT_MARGIN_SECONDS + "s after the end of the "
+                        + durationMs + " ms test, the event loop of the poller may be blocked", e);
+            }
+            write(result);
+            return result;
+        } finally {
+            pollerVertx.close();
+            stubVertx.close();
+            Files.deleteIfExists(dbFile);
+        }
+    }
+
+    private JsonObject verticleConfig(Path dbFile, long pollIntervalMs) {
+        final JsonObject verticleConfig = new JsonObject()
+                .put("db_path", dbFile.toString())
+                .put(MainVerticle.HTTP_PORT_CONFIG, 18080)
+                .put(MainVerticle.STARTUP_SPREAD_MS_CONFIG, pollIntervalMs)
+                // down endpoints backed off would not be requested again within a cycle, which would never complete
+                .put(MainVerticle.BACKOFF_ENABLED_CONFIG, false);
+        config.forEach(entry -> {
+            if (!HARNESS_CONFIG.contains(entry.getKey())) {
+                verticleConfig.put(entry.getKey(), entry.getValue());
+            }
+        });
+        return verticleConfig;
+    }
+
+    private Future<Void> seed(ServiceRegistryRepository repository, int from, int stubPort, long pollIntervalMs) {
+        if (from >= profile.getEndpoints()) {
+            return Future.succeededFuture();
+        }
+        final ProbeType probeType = ProbeType.parse(config.getString(PROBE_TYPE_CONFIG, ProbeType.GET.name()));
+        final int to = Math.min(from + SEED_BATCH_SIZE, profile.getEndpoints());
+        final List<Service> services = new ArrayList<>(to - from);
+        for (int endpoint = from; endpoint < to; endpoint++) {
+            services.add(Service.builder()
+                    .name("endpoint-" + endpoint)
+                    .url(profile.url(endpoint, stubPort))
+                    .pollIntervalMs(pollIntervalMs)
+                    .probeType(probeType)
+                    .build());
+        }
+        return repository.saveAll(services).compose(saved -> seed(repository, to, stubPort, pollIntervalMs));
+    }
+
+    private void write(JsonObject result) throws Exception {
+        final Path output = Paths.get(config.getString(OUTPUT_CONFIG, "build/reports/loadtest/results.json"));
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        Files.write(output, result.encodePrettily().getBytes(StandardCharsets.UTF_8));
+        log.info("Results written to {}", output.toAbsolutePath());
+    }
+
+    private static Future<String> deploy(Vertx vertx, Verticle verticle, DeploymentOptions options) {
+        Future<String> deployed = Future.future();
+        vertx.deployVerticle(verticle, options, deployed);
+        return deployed;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        future.setHandler(done -> {
+            if (done.succeeded()) {
+                result.complete(done.result());
+            } else {
+                result.completeExceptionally(done.cause());
+            }
+        });
+        return result.get(STARTUP_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Measures how late a periodic timer fires on the event loop of the poller.
+     */
+    private static class LagProbe {
+        private final Sampler sampler;
+        private long lastTickAt = System.nanoTime();
+
+        LagProbe(Sampler sampler) {
+            this.sampler = sampler;
+        }
+
+        void tick(long timerId) {
+            final long now = System.nanoTime();
+            sampler.recordLag(TimeUnit.NANOSECONDS.toMillis(now - lastTickAt) - LAG_PROBE_INTERVAL_MS);
+            lastTickAt = now;
+        }
+    }
+
+    /**
+     * Must only be used from the event loop of the poller instance.
+     */
+    private class Sampler {
+        private final Metrics metrics;
+        private final long startedAt;
+        private final JsonArray samples = new JsonArray();
+        private final LatencyHistogram totalLag = new LatencyHistogram();
+        private LatencyHistogram intervalLag = new LatencyHistogram();
+        private long sampledAt;
+        private long probes;
+        private long requests;
+        private long maxHeapUsed;
+
+        Sampler(Vertx pollerVertx, long startedAt) {
+            this.metrics = Metrics.get(pollerVertx);
+            this.startedAt = startedAt;
+            this.sampledAt = startedAt;
+        }
+
+        void recordLag(long lagMs) {
+            intervalLag.record(lagMs);
+        }
+
+        void sample() {
+            final long now = System.currentTimeMillis();
+            final double seconds = Math.max(1, now - sampledAt) / 1000.0;
+            final long totalProbes = totalProbes();
+            final long totalRequests = coverage.getRequests();
+            final List<Long> cycles = coverage.getCycleDurationsMs();
+            final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            maxHeapUsed = Math.max(maxHeapUsed, heap.getUsed());
+            totalLag.add(intervalLag);
+
+            final JsonObject sample = new JsonObject()
+                    .put("elapsed_ms", now - startedAt)
+                    .put("probes_per_second", Math.round((totalProbes - probes) / seconds))
+                    .put("stub_requests_per_second", Math.round((totalRequests - requests) / seconds))
+                    .put("probes", probesByResult())
+                    .put("cycles_completed", cycles.size())
+                    .put("last_cycle_ms", cycles.isEmpty() ? null : cycles.get(cycles.size() - 1))
+                    .put("current_cycle_coverage", coverage.getCovered() / (double) profile.getEndpoints())
+                    .put("event_loop_lag_ms", intervalLag.toJson())
+                    .put("heap_used_mb", toMb(heap.getUsed()))
+                    .put("heap_committed_mb", toMb(heap.getCommitted()));
+            samples.add(sample);
+            log.info("{}", sample.encode());
+
+            sampledAt = now;
+            probes = totalProbes;
+            requests = totalRequests;
+            intervalLag = new LatencyHistogram();
+        }
+
+        JsonObject summary() {
+            final long elapsedMs = System.currentTimeMillis() - startedAt;
+            final List<Long> cycles = coverage.getCycleDurationsMs();
+            return new JsonObject()
+                    .put("elapsed_ms", elapsedMs)
+                    .put("probes_per_second", Math.round(totalProbes() / (Math.max(1, elapsedMs) / 1000.0)))
+                    .put("probes", probesByResult())
+                    .put("cycles_ms", new JsonArray(cycles))
+                    .put("max_cycle_ms", cycles.stream().mapToLong(Long::longValue).max().orElse(0))
+                    .put("event_loop_lag_ms", totalLag.toJson())
+                    .put("max_heap_used_mb", toMb(maxHeapUsed));
+        }
+
+        private long totalProbes() {
+            final Counter counter = probeCounter();
+            return Arrays.stream(PROBE_RESULTS).mapToLong(counter::get).sum();
+        }
+
+        private JsonObject probesByResult() {
+            final Counter counter = probeCounter();
+            final JsonObject byResult = new JsonObject();
+            Arrays.stream(PROBE_RESULTS).forEach(result -> byResult.put(result, counter.get(result)));
+            return byResult;
+        }
+
+        // registered by the background poller, registering it again returns the same counter
+        private Counter probeCounter() {
+            return metrics.counter("poll_probes_total", "Completed probes by result, success, failure or timeout", "result");
+        }
+
+        private long toMb(long bytes) {
+            return bytes / (1024 * 1024);
+        }
+    }
+}
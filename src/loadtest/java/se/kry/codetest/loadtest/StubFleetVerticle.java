@@ -0,0 +1,88 @@
+package se.kry.codetest.loadtest;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Serves every endpoint of the fleet on {@code /svc/<endpoint>} on each port of the fleet, several instances can share the ports.
+ */
+class StubFleetVerticle extends AbstractVerticle {
+
+    private final FleetProfile profile;
+    private final FleetCoverage coverage;
+    private final int port;
+
+    StubFleetVerticle(FleetProfile profile, FleetCoverage coverage, int port) {
+        this.profile = profile;
+        this.coverage = coverage;
+        this.port = port;
+    }
+
+    @Override
+    public void start(Future<Void> startFuture) {
+        final List<Future> servers = new ArrayList<>();
+        for (int i = 0; i < profile.getPorts(); i++) {
+            final Future<HttpServer> listening = Future.future();
+            vertx.createHttpServer()
+                    .requestHandler(this::handle)
+                    .listen(port + i, listening);
+            servers.add(listening);
+        }
+        CompositeFuture.all(servers)
+                .setHandler(listening -> {
+                    if (listening.succeeded()) {
+                        startFuture.complete();
+                    } else {
+                        startFuture.fail(listening.cause());
+                    }
+                });
+    }
+
+    private void handle(HttpServerRequest req) {
+        final int endpoint = endpoint(req.path());
+        if (endpoint < 0) {
+            req.response().setStatusCode(404).end();
+            return;
+        }
+        coverage.hit(endpoint);
+        final Random random = ThreadLocalRandom.current();
+        final double roll = random.nextDouble();
+        if (profile.hangs(roll)) {
+            // never answered, the probe times out and drops the connection
+            return;
+        }
+        final int status = profile.isDown(endpoint) ? 503 : profile.fails(roll) ? 500 : 200;
+        final long latencyMs = profile.latencyMs(random);
+        if (latencyMs == 0) {
+            respond(req, status);
+        } else {
+            vertx.setTimer(latencyMs, timerId -> respond(req, status));
+        }
+    }
+
+    private void respond(HttpServerRequest req, int status) {
+        if (!req.response().closed()) {
+            req.response().setStatusCode(status).end(status == 200 ? "UP" : "DOWN");
+        }
+    }
+
+    private int endpoint(String path) {
+        if (path == null || !path.startsWith(FleetProfile.PATH_PREFIX)) {
+            return -1;
+        }
+        try {
+            final int endpoint = Integer.parseInt(path.substring(FleetProfile.PATH_PREFIX.length()));
+            return endpoint >= 0 && endpoint < profile.getEndpoints() ? endpoint : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
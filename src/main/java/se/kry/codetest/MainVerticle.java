@@ -1,44 +1,242 @@
 package se.kry.codetest;
 
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.config.ConfigRetriever;
 import io.vertx.core.*;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.JsonEventType;
+import io.vertx.core.parsetools.JsonParser;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 import io.vertx.ext.web.handler.StaticHandler;
 import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.events.ServiceEventBroadcaster;
+import se.kry.codetest.history.PollHistoryRecorder;
+import se.kry.codetest.latency.AdaptiveTimeouts;
+import se.kry.codetest.mapper.HistoryMapper;
 import se.kry.codetest.mapper.ServiceMapper;
+import se.kry.codetest.metrics.Histogram;
+import se.kry.codetest.metrics.Metrics;
+import se.kry.codetest.model.HistoryBucket;
+import se.kry.codetest.model.HistoryResolution;
+import se.kry.codetest.model.ProbeType;
 import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.scheduler.PollScheduler;
+import se.kry.codetest.repository.ServiceStores;
+import se.kry.codetest.service.ServiceListSnapshot;
 import se.kry.codetest.service.ServiceRegistry;
 import se.kry.codetest.service.BackgroundPoller;
+import se.kry.codetest.sharding.ShardManager;
+import se.kry.codetest.service.BulkImport;
+import se.kry.codetest.service.HostLimiter;
+import se.kry.codetest.service.OverlapPolicy;
+import se.kry.codetest.service.PollBackoff;
+import se.kry.codetest.service.PollExecutor;
+import se.kry.codetest.service.Poller;
+import se.kry.codetest.service.ProbeClientOptions;
+import se.kry.codetest.service.RegistrySnapshot;
+import se.kry.codetest.service.StatusWriteBuffer;
 
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static io.netty.handler.codec.http.HttpHeaderValues.APPLICATION_JSON;
+import static io.vertx.core.http.HttpHeaders.ACCEPT;
 import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
+import static io.vertx.core.http.HttpHeaders.ETAG;
+import static io.vertx.core.http.HttpHeaders.IF_NONE_MATCH;
 import static se.kry.codetest.mapper.ServiceMapper.toService;
 
 @Slf4j
 public class MainVerticle extends AbstractVerticle {
 
-    public static final int PERIOD_IN_MINUTES = 60 * 1000;
     public static final String SERVICES_BASE_API_PATH = "/api/v1/services";
+    public static final String SCHEDULER_API_PATH = "/api/v1/scheduler";
+    public static final String POLLER_API_PATH = "/api/v1/poller";
+    public static final String REGISTRY_API_PATH = "/api/v1/registry";
+    public static final String SHARDS_API_PATH = "/api/v1/shards";
+    public static final String METRICS_PATH = "/metrics";
+    public static final String EVENTS_API_PATH = SERVICES_BASE_API_PATH + "/events";
+    public static final String BULK_IMPORT_API_PATH = SERVICES_BASE_API_PATH + "/bulk";
+    public static final String LATENCY = "latency";
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final int DEFAULT_PAGE_LIMIT = 100;
+    public static final int MAX_PAGE_LIMIT = 1000;
+    private static final int STREAM_CHUNK_SIZE = 500;
+    public static final String MAX_IN_FLIGHT_POLLS_CONFIG = "max_in_flight_polls";
+    public static final String STATUS_WRITE_BATCH_SIZE_CONFIG = "status_write_batch_size";
+    public static final String STATUS_WRITE_DELAY_MS_CONFIG = "status_write_delay_ms";
+    public static final String EVENT_CLIENT_BUFFER_BYTES_CONFIG = "event_client_buffer_bytes";
+    public static final String HTTP_PORT_CONFIG = "http_port";
+    public static final String SHARDING_ENABLED_CONFIG = "sharding_enabled";
+    public static final String INSTANCE_ID_CONFIG = "instance_id";
+    public static final String LEASE_HEARTBEAT_MS_CONFIG = "lease_heartbeat_ms";
+    public static final String LEASE_TTL_MS_CONFIG = "lease_ttl_ms";
+    public static final String REGISTRY_RELOAD_MS_CONFIG = "registry_reload_ms";
+    public static final String ADAPTIVE_TIMEOUTS_ENABLED_CONFIG = "adaptive_timeouts_enabled";
+    public static final String POLL_TIMEOUT_MS_CONFIG = "poll_timeout_ms";
+    public static final String ADAPTIVE_TIMEOUT_FACTOR_CONFIG = "adaptive_timeout_factor";
+    public static final String ADAPTIVE_TIMEOUT_MIN_MS_CONFIG = "adaptive_timeout_min_ms";
+    public static final String ADAPTIVE_TIMEOUT_MAX_MS_CONFIG = "adaptive_timeout_max_ms";
+    public static final String PROBE_MAX_BODY_BYTES_CONFIG = "probe_max_body_bytes";
+    public static final String PROBE_POOL_SIZE_PER_HOST_CONFIG = "probe_pool_size_per_host";
+    public static final String PROBE_KEEP_ALIVE_CONFIG = "probe_keep_alive";
+    public static final String PROBE_IDLE_TIMEOUT_SECONDS_CONFIG = "probe_idle_timeout_seconds";
+    public static final String PROBE_HTTP2_CONFIG = "probe_http2";
+    public static final String PROBE_HTTP2_MULTIPLEXING_LIMIT_CONFIG = "probe_http2_multiplexing_limit";
+    public static final String HOST_MAX_IN_FLIGHT_CONFIG = "host_max_in_flight";
+    public static final String HOST_RATE_PER_SECOND_CONFIG = "host_rate_per_second";
+    public static final String HOST_BURST_CONFIG = "host_burst";
+    public static final String OVERLAP_POLICY_CONFIG = "overlap_policy";
+    public static final String POLL_STAGGERED_CONFIG = "poll_staggered";
+    public static final String POLL_JITTER_MS_CONFIG = "poll_jitter_ms";
+    public static final String STARTUP_SPREAD_MS_CONFIG = "startup_spread_ms";
+    public static final long DEFAULT_STARTUP_SPREAD_MS = 30 * 1000;
+    public static final int DEFAULT_HOSTS_LIMIT = 100;
+    public static final String BACKOFF_ENABLED_CONFIG = "backoff_enabled";
+    public static final String BACKOFF_THRESHOLD_CONFIG = "backoff_threshold";
+    public static final String BACKOFF_MULTIPLIER_CONFIG = "backoff_multiplier";
+    public static final String BACKOFF_MAX_INTERVAL_MS_CONFIG = "backoff_max_interval_ms";
+    public static final String BACKOFF = "backoff";
+    public static final String HISTORY_FLUSH_MS_CONFIG = "history_flush_ms";
+    public static final String HISTORY_RETENTION_MS_CONFIG_SUFFIX = "_history_retention_ms";
+    public static final long DEFAULT_HISTORY_RANGE_MS = 60 * 60 * 1000;
+    public static final int DEFAULT_HTTP_PORT = 8080;
+    public static final long DEFAULT_REGISTRY_RELOAD_MS = 30 * 1000;
+    public static final String REGISTRY_SNAPSHOT_PATH_CONFIG = "registry_snapshot_path";
+    public static final String REGISTRY_SNAPSHOT_MS_CONFIG = "registry_snapshot_ms";
+    // latencies in the services list are refreshed at most this often, so the list is not re-encoded after every probe
+    public static final long LIST_LATENCY_MAX_AGE_MS = 10 * 1000;
     private ServiceRegistry apiPollerService;
+    private BackgroundPoller poller;
+    private PollScheduler scheduler;
+    private ServiceEventBroadcaster broadcaster;
+    private ShardManager shards;
+    private PollHistoryRecorder history;
+    // null unless registry_snapshot_path is set
+    private RegistrySnapshot registrySnapshot;
+    private Metrics metrics;
+    // window over which services scheduled together have their first poll spread
+    private long startupSpreadMs;
 
     @Override
     public void start(Future<Void> startFuture) {
-        apiPollerService = new ServiceRegistry(vertx);
-        apiPollerService.createDb();
-        final BackgroundPoller poller = new BackgroundPoller(vertx);
-        vertx.setPeriodic(PERIOD_IN_MINUTES, timerId -> poller.pollServices());
+        ConfigRetriever.create(vertx)
+                .getConfig(conf -> {
+                    final JsonObject config = conf.succeeded() ? conf.result() : new JsonObject();
+                    try {
+                        start(config, startFuture);
+                    } catch (IllegalArgumentException e) {
+                        log.error("Invalid configuration", e);
+                        startFuture.fail(e);
+                    }
+                });
+    }
+
+    private void start(JsonObject config, Future<Void> startFuture) {
+        metrics = Metrics.get(vertx);
+        apiPollerService = new ServiceRegistry(vertx, ServiceStores.create(vertx, config, config.getBoolean(SHARDING_ENABLED_CONFIG, false)));
+        final PollExecutor executor = new PollExecutor(config.getInteger(MAX_IN_FLIGHT_POLLS_CONFIG, PollExecutor.DEFAULT_MAX_IN_FLIGHT));
+        final AdaptiveTimeouts timeouts = new AdaptiveTimeouts(
+                config.getBoolean(ADAPTIVE_TIMEOUTS_ENABLED_CONFIG, true),
+                config.getLong(POLL_TIMEOUT_MS_CONFIG, (long) Poller.DEFAULT_TIMEOUT_MS),
+                config.getDouble(ADAPTIVE_TIMEOUT_FACTOR_CONFIG, AdaptiveTimeouts.DEFAULT_FACTOR),
+                config.getLong(ADAPTIVE_TIMEOUT_MIN_MS_CONFIG, AdaptiveTimeouts.DEFAULT_MIN_TIMEOUT_MS),
+                config.getLong(ADAPTIVE_TIMEOUT_MAX_MS_CONFIG, AdaptiveTimeouts.DEFAULT_MAX_TIMEOUT_MS));
+        final PollBackoff backoff = new PollBackoff(
+                config.getBoolean(BACKOFF_ENABLED_CONFIG, true),
+                config.getInteger(BACKOFF_THRESHOLD_CONFIG, PollBackoff.DEFAULT_THRESHOLD),
+                config.getDouble(BACKOFF_MULTIPLIER_CONFIG, PollBackoff.DEFAULT_MULTIPLIER),
+                config.getLong(BACKOFF_MAX_INTERVAL_MS_CONFIG, PollBackoff.DEFAULT_MAX_INTERVAL_MS));
+        final ProbeClientOptions clientOptions = ProbeClientOptions.builder()
+                .maxPoolSizePerHost(config.getInteger(PROBE_POOL_SIZE_PER_HOST_CONFIG, ProbeClientOptions.DEFAULT_MAX_POOL_SIZE_PER_HOST))
+                .keepAlive(config.getBoolean(PROBE_KEEP_ALIVE_CONFIG, true))
+                .idleTimeoutSeconds(config.getInteger(PROBE_IDLE_TIMEOUT_SECONDS_CONFIG, ProbeClientOptions.DEFAULT_IDLE_TIMEOUT_SECONDS))
+                .http2(config.getBoolean(PROBE_HTTP2_CONFIG, false))
+                .http2MultiplexingLimit(config.getInteger(PROBE_HTTP2_MULTIPLEXING_LIMIT_CONFIG, ProbeClientOptions.DEFAULT_HTTP2_MULTIPLEXING_LIMIT))
+                .maxBodyBytes(config.getInteger(PROBE_MAX_BODY_BYTES_CONFIG, Poller.DEFAULT_MAX_BODY_BYTES))
+                .build();
+        final HostLimiter hostLimiter = new HostLimiter(vertx,
+                config.getInteger(HOST_MAX_IN_FLIGHT_CONFIG, HostLimiter.DEFAULT_MAX_IN_FLIGHT_PER_HOST),
+                config.getDouble(HOST_RATE_PER_SECOND_CONFIG, HostLimiter.DEFAULT_RATE_PER_SECOND),
+                config.getInteger(HOST_BURST_CONFIG, HostLimiter.DEFAULT_BURST));
+        poller = new BackgroundPoller(vertx, apiPollerService, executor, timeouts, backoff, hostLimiter,
+                OverlapPolicy.parse(config.getString(OVERLAP_POLICY_CONFIG, OverlapPolicy.SKIP.name())),
+                clientOptions,
+                config.getInteger(STATUS_WRITE_BATCH_SIZE_CONFIG, StatusWriteBuffer.DEFAULT_MAX_BATCH_SIZE),
+                config.getLong(STATUS_WRITE_DELAY_MS_CONFIG, StatusWriteBuffer.DEFAULT_MAX_DELAY_MS));
+        apiPollerService.setListMapper(this::toListJson, LIST_LATENCY_MAX_AGE_MS);
+        final Map<HistoryResolution, Long> historyRetentions = new EnumMap<>(HistoryResolution.class);
+        for (HistoryResolution resolution : HistoryResolution.values()) {
+            historyRetentions.put(resolution, config.getLong(resolution.name().toLowerCase() + HISTORY_RETENTION_MS_CONFIG_SUFFIX, resolution.getDefaultRetentionMs()));
+        }
+        history = new PollHistoryRecorder(vertx, config.getLong(HISTORY_FLUSH_MS_CONFIG, PollHistoryRecorder.DEFAULT_FLUSH_MS), historyRetentions);
+        poller.addProbeListener(history::record);
+        shards = new ShardManager(vertx,
+                config.getString(INSTANCE_ID_CONFIG, UUID.randomUUID().toString()),
+                config.getBoolean(SHARDING_ENABLED_CONFIG, false),
+                config.getLong(LEASE_HEARTBEAT_MS_CONFIG, ShardManager.DEFAULT_HEARTBEAT_MS),
+                config.getLong(LEASE_TTL_MS_CONFIG, ShardManager.DEFAULT_LEASE_TTL_MS));
+        startupSpreadMs = config.getLong(STARTUP_SPREAD_MS_CONFIG, DEFAULT_STARTUP_SPREAD_MS);
+        scheduler = new PollScheduler(vertx, svc -> {
+            if (shards.owns(svc.getId())) {
+                // the next due time depends on the backoff recorded with the result
+                poller.pollService(svc).setHandler(polled -> scheduler.pollCompleted(svc));
+            }
+        }, backoff::intervalMs, config.getBoolean(POLL_STAGGERED_CONFIG, true), config.getLong(POLL_JITTER_MS_CONFIG, 0L));
+        broadcaster = new ServiceEventBroadcaster(vertx, config.getInteger(EVENT_CLIENT_BUFFER_BYTES_CONFIG, ServiceEventBroadcaster.DEFAULT_CLIENT_BUFFER_BYTES));
+        broadcaster.start();
+        registerGauges(executor);
+        final String registrySnapshotPath = config.getString(REGISTRY_SNAPSHOT_PATH_CONFIG);
+        registrySnapshot = registrySnapshotPath != null ? new RegistrySnapshot(vertx, registrySnapshotPath) : null;
+        warmStart()
+                .compose(warm -> apiPollerService.createDb()
+                        .compose(created -> history.start())
+                        // a warm registry is reconciled with the database instead of being loaded from it
+                        .compose(started -> warm ? reloadRegistry() : coldStart()))
+                .compose(scheduled -> shards.start())
+                .setHandler(started -> {
+                    if (started.failed()) {
+                        log.error("An error occurred while loading services to schedule", started.cause());
+                    }
+                    scheduler.start();
+                    if (shards.isEnabled()) {
+                        // services created or deleted through other instances are only seen by reloading the registry
+                        vertx.setPeriodic(config.getLong(REGISTRY_RELOAD_MS_CONFIG, DEFAULT_REGISTRY_RELOAD_MS), timerId -> reloadRegistry()
+                                .setHandler(reload -> {
+                                    if (reload.failed()) {
+                                        log.error("An error occurred while reloading services", reload.cause());
+                                    }
+                                }));
+                    }
+                    if (registrySnapshot != null) {
+                        vertx.setPeriodic(config.getLong(REGISTRY_SNAPSHOT_MS_CONFIG, RegistrySnapshot.DEFAULT_INTERVAL_MS), timerId -> writeRegistrySnapshot());
+                    }
+                });
 
         Router router = createRouter(vertx);
 
         vertx.createHttpServer()
                 .requestHandler(router)
-                .listen(8080, result -> {
+                .listen(config.getInteger(HTTP_PORT_CONFIG, DEFAULT_HTTP_PORT), result -> {
                     if (result.succeeded()) {
                         log.info("KRY code test service started");
                         startFuture.complete();
@@ -48,8 +246,109 @@ public class MainVerticle extends AbstractVerticle {
                 });
     }
 
+    @Override
+    public void stop(Future<Void> stopFuture) {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+        if (broadcaster != null) {
+            broadcaster.stop();
+        }
+        if (poller == null) {
+            stopFuture.complete();
+            return;
+        }
+        poller.flushStatuses()
+                .otherwiseEmpty()
+                .compose(flushed -> history.stop().otherwiseEmpty())
+                .compose(flushed -> shards.stop())
+                .compose(stopped -> registrySnapshot != null
+                        ? apiPollerService.writeSnapshot(registrySnapshot).otherwiseEmpty()
+                        : Future.<Boolean>succeededFuture())
+                .compose(written -> apiPollerService.close().otherwiseEmpty())
+                .setHandler(stopped -> stopFuture.complete());
+    }
+
+    /**
+     * Serves and schedules the services of the registry snapshot, if any, before the store is opened.
+     *
+     * @return whether the registry was preloaded
+     */
+    private Future<Boolean> warmStart() {
+        if (registrySnapshot == null) {
+            return Future.succeededFuture(false);
+        }
+        return registrySnapshot.read()
+                .map(services -> {
+                    if (services.isEmpty() || !apiPollerService.preload(services)) {
+                        return false;
+                    }
+                    // polls only start once the store is open and reconciled, their statuses would be overwritten by it
+                    services.forEach(svc -> scheduler.scheduleSpread(svc, startupSpreadMs));
+                    return true;
+                });
+    }
+
+    private Future<Void> coldStart() {
+        return apiPollerService.load()
+                .compose(loaded -> apiPollerService.getAll())
+                .map(services -> {
+                    services.forEach(svc -> scheduler.scheduleSpread(svc, startupSpreadMs));
+                    return null;
+                });
+    }
+
+    /**
+     * Reloads the registry from the database, scheduling the services added, rescheduling the ones whose
+     * definition changed and unscheduling the ones deleted since the registry was last loaded.
+     */
+    private Future<Void> reloadRegistry() {
+        return apiPollerService.getAll()
+                .compose(previous -> {
+                    final Map<String, Service> previousById = previous.stream()
+                            .collect(Collectors.toMap(Service::getId, svc -> svc));
+                    return apiPollerService.reload()
+                            .map(reloaded -> {
+                                final Set<String> unscheduled = scheduler.getScheduledIds();
+                                reloaded.forEach(svc -> {
+                                    if (!unscheduled.remove(svc.getId())) {
+                                        scheduler.scheduleSpread(svc, startupSpreadMs);
+                                    } else if (!sameDefinition(previousById.get(svc.getId()), svc)) {
+                                        // as on an update through the api, nothing learnt from the previous definition applies
+                                        poller.forget(svc.getId());
+                                        scheduler.scheduleSpread(svc, startupSpreadMs);
+                                    }
+                                });
+                                unscheduled.forEach(id -> {
+                                    scheduler.unschedule(id);
+                                    poller.forget(id);
+                                });
+                                return null;
+                            });
+                });
+    }
+
+    private static boolean sameDefinition(Service previous, Service service) {
+        return previous != null
+                && Objects.equals(previous.getUrl(), service.getUrl())
+                && previous.getPollIntervalMs() == service.getPollIntervalMs()
+                && previous.getProbeType() == service.getProbeType();
+    }
+
+    private void writeRegistrySnapshot() {
+        apiPollerService.writeSnapshot(registrySnapshot)
+                .setHandler(written -> {
+                    if (written.failed()) {
+                        log.warn("An error occurred while writing the registry snapshot", written.cause());
+                    }
+                });
+    }
+
     private Router createRouter(Vertx vertx) {
         Router router = Router.router(vertx);
+        registerRequestMetrics(router);
+        // reads its body as a stream, so it must come before the body handler
+        registerBulkImportRoute(router);
         router.route().handler(BodyHandler.create());
         registerRoutes(router);
 
@@ -58,28 +357,212 @@ public class MainVerticle extends AbstractVerticle {
 
     private void registerRoutes(Router router) {
         router.route("/*").handler(StaticHandler.create());
+        registerGetServiceEventsRoute(router);
         registerGetServiceRoute(router);
+        registerGetServiceLatencyRoute(router);
+        registerGetServiceHistoryRoute(router);
         registerPostServiceRoute(router);
         registerDeleteServiceRoute(router);
         registerUpdateServiceRoute(router);
+        registerGetSchedulerRoute(router);
+        registerGetPollerRoute(router);
+        registerGetRegistryRoute(router);
+        registerGetShardsRoute(router);
+        registerGetMetricsRoute(router);
     }
 
     private void registerGetServiceRoute(Router router) {
         router.get(SERVICES_BASE_API_PATH)
-                .handler(req ->
-                        apiPollerService.getAll()
-                                .setHandler(getAllServices -> {
-                                    if (getAllServices.failed()) {
-                                        errorResponse(req, HttpResponseStatus.INTERNAL_SERVER_ERROR, "An error occurred while getting all services");
-                                    } else {
-                                        List<JsonObject> jsonServices = ServiceMapper.toJsonObjects(getAllServices.result());
-                                        req.response()
-                                                .putHeader(CONTENT_TYPE, APPLICATION_JSON)
-                                                .setStatusCode(HttpResponseStatus.OK.code())
-                                                .end(new JsonArray(jsonServices).encode());
-                                    }
-                                })
-                );
+                .handler(req -> {
+                    final String accept = req.request().getHeader(ACCEPT);
+                    if (accept != null && accept.contains(APPLICATION_NDJSON)) {
+                        streamServices(req, true);
+                    } else if (Boolean.parseBoolean(req.request().getParam("stream"))) {
+                        streamServices(req, false);
+                    } else if (req.request().getParam("limit") != null || req.request().getParam("after") != null) {
+                        getServicesPage(req);
+                    } else {
+                        getAllServices(req);
+                    }
+                });
+    }
+
+    private void getAllServices(RoutingContext req) {
+        apiPollerService.getSnapshot()
+                .setHandler(getSnapshot -> {
+                    if (getSnapshot.failed()) {
+                        errorResponse(req, HttpResponseStatus.INTERNAL_SERVER_ERROR, "An error occurred while getting all services");
+                        return;
+                    }
+                    final ServiceListSnapshot snapshot = getSnapshot.result();
+                    req.response().putHeader(ETAG, snapshot.getEtag());
+                    if (matchesEtag(req.request().getHeader(IF_NONE_MATCH), snapshot.getEtag())) {
+                        req.response()
+                                .setStatusCode(HttpResponseStatus.NOT_MODIFIED.code())
+                                .end();
+                    } else {
+                        req.response()
+                                .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                                .setStatusCode(HttpResponseStatus.OK.code())
+                                .end(snapshot.getBody());
+                    }
+                });
+    }
+
+    private boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .anyMatch(candidate -> candidate.equals("*") || candidate.equals(etag));
+    }
+
+    private void getServicesPage(RoutingContext req) {
+        final String limitParam = req.request().getParam("limit");
+        final int limit;
+        try {
+            limit = limitParam != null ? Math.min(Integer.parseInt(limitParam), MAX_PAGE_LIMIT) : DEFAULT_PAGE_LIMIT;
+        } catch (NumberFormatException e) {
+            errorResponse(req, HttpResponseStatus.BAD_REQUEST, "limit parameter must be a number");
+            return;
+        }
+        apiPollerService.getPage(req.request().getParam("after"), limit)
+                .setHandler(getPage -> {
+                    if (getPage.failed()) {
+                        final HttpResponseStatus status = getPage.cause() instanceof IllegalArgumentException ? HttpResponseStatus.BAD_REQUEST : HttpResponseStatus.INTERNAL_SERVER_ERROR;
+                        errorResponse(req, status, "An error occurred while getting services: " + getPage.cause().getMessage());
+                        return;
+                    }
+                    final List<Service> services = getPage.result();
+                    if (services.size() == limit) {
+                        req.response().putHeader(NEXT_CURSOR_HEADER, services.get(services.size() - 1).getId());
+                    }
+                    req.response()
+                            .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                            .setStatusCode(HttpResponseStatus.OK.code())
+                            .end(new JsonArray(services.stream().map(this::toListJson).collect(Collectors.toList())).encode());
+                });
+    }
+
+    private void streamServices(RoutingContext req, boolean ndjson) {
+        final HttpServerResponse response = req.response()
+                .setChunked(true)
+                .putHeader(CONTENT_TYPE, ndjson ? APPLICATION_NDJSON : APPLICATION_JSON.toString())
+                .setStatusCode(HttpResponseStatus.OK.code());
+        if (!ndjson) {
+            response.write("[");
+        }
+        writeServicesChunk(response, null, ndjson);
+    }
+
+    private void writeServicesChunk(HttpServerResponse response, String afterId, boolean ndjson) {
+        if (response.closed()) {
+            return;
+        }
+        apiPollerService.getPage(afterId, STREAM_CHUNK_SIZE)
+                .setHandler(getPage -> {
+                    if (getPage.failed()) {
+                        log.error("An error occurred while streaming services", getPage.cause());
+                        response.close();
+                        return;
+                    }
+                    final List<Service> services = getPage.result();
+                    final Buffer chunk = Buffer.buffer();
+                    for (int i = 0; i < services.size(); i++) {
+                        if (!ndjson && (afterId != null || i > 0)) {
+                            chunk.appendString(",");
+                        }
+                        chunk.appendString(toListJson(services.get(i)).encode());
+                        if (ndjson) {
+                            chunk.appendString("\n");
+                        }
+                    }
+                    response.write(chunk);
+
+                    if (services.size() < STREAM_CHUNK_SIZE) {
+                        response.end(ndjson ? "" : "]");
+                        return;
+                    }
+                    final String lastId = services.get(services.size() - 1).getId();
+                    if (response.writeQueueFull()) {
+                        response.drainHandler(drained -> writeServicesChunk(response, lastId, ndjson));
+                    } else {
+                        vertx.runOnContext(next -> writeServicesChunk(response, lastId, ndjson));
+                    }
+                });
+    }
+
+    private void registerGetServiceLatencyRoute(Router router) {
+        router.get(SERVICES_BASE_API_PATH + "/:id/latency")
+                .handler(req -> {
+                    final String id = req.pathParam("id");
+
+                    apiPollerService.get(id)
+                            .setHandler(getRequest -> {
+                                if (getRequest.failed()) {
+                                    errorResponse(req, HttpResponseStatus.INTERNAL_SERVER_ERROR, "An error occurred while getting service latency: " + getRequest.cause().getMessage());
+                                } else if (getRequest.result() == null) {
+                                    errorResponse(req, HttpResponseStatus.NOT_FOUND, "Service not found");
+                                } else {
+                                    req.response()
+                                            .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                                            .setStatusCode(HttpResponseStatus.OK.code())
+                                            .end(poller.getLatencyRecorder().get(id).toJson()
+                                                    .put("timeout", poller.getTimeouts().toJson(id))
+                                                    .encode());
+                                }
+                            });
+                });
+    }
+
+    private void registerGetServiceHistoryRoute(Router router) {
+        router.get(SERVICES_BASE_API_PATH + "/:id/history")
+                .handler(req -> {
+                    final String id = req.pathParam("id");
+                    final long to;
+                    final long from;
+                    final HistoryResolution resolution;
+                    try {
+                        to = req.request().getParam("to") != null ? Long.parseLong(req.request().getParam("to")) : System.currentTimeMillis();
+                        from = req.request().getParam("from") != null ? Long.parseLong(req.request().getParam("from")) : to - DEFAULT_HISTORY_RANGE_MS;
+                        resolution = req.request().getParam("resolution") != null
+                                ? HistoryResolution.valueOf(req.request().getParam("resolution").toUpperCase())
+                                : history.resolutionFor(from, to);
+                    } catch (IllegalArgumentException e) {
+                        errorResponse(req, HttpResponseStatus.BAD_REQUEST, "Invalid history range: " + e.getMessage());
+                        return;
+                    }
+                    if (from >= to) {
+                        errorResponse(req, HttpResponseStatus.BAD_REQUEST, "History range must end after it starts");
+                        return;
+                    }
+                    if ((to - from) / resolution.getBucketMs() > PollHistoryRecorder.MAX_BUCKETS) {
+                        errorResponse(req, HttpResponseStatus.BAD_REQUEST, "History range is more than " + PollHistoryRecorder.MAX_BUCKETS + " buckets at resolution " + resolution);
+                        return;
+                    }
+
+                    apiPollerService.get(id)
+                            .compose(svc -> svc == null ? Future.<List<HistoryBucket>>succeededFuture() : history.find(id, resolution, from, to))
+                            .setHandler(historyRequest -> {
+                                if (historyRequest.failed()) {
+                                    errorResponse(req, HttpResponseStatus.INTERNAL_SERVER_ERROR, "An error occurred while getting service history: " + historyRequest.cause().getMessage());
+                                } else if (historyRequest.result() == null) {
+                                    errorResponse(req, HttpResponseStatus.NOT_FOUND, "Service not found");
+                                } else {
+                                    req.response()
+                                            .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                                            .setStatusCode(HttpResponseStatus.OK.code())
+                                            .end(HistoryMapper.toJsonObject(resolution, historyRequest.result()).encode());
+                                }
+                            });
+                });
+    }
+
+    private JsonObject toListJson(Service service) {
+        return ServiceMapper.toJsonObject(service)
+                .put(LATENCY, poller.getLatencyRecorder().summary(service.getId()))
+                .put(BACKOFF, poller.getBackoff().getState(service).toJson());
     }
 
     private void registerPostServiceRoute(Router router) {
@@ -90,11 +573,29 @@ public class MainVerticle extends AbstractVerticle {
                     if (!jsonBody.containsKey("url")) {
                         errorResponse(req, HttpResponseStatus.BAD_REQUEST, "url parameter is required");
                     }
-                    apiPollerService.create(jsonBody.getString("url"), jsonBody.getString("name", ""))
+                    final String url = jsonBody.getString("url");
+                    final String name = jsonBody.getString("name", "");
+                    final long pollIntervalMs = jsonBody.getLong(ServiceMapper.SERVICE_POLL_INTERVAL_MS, Service.DEFAULT_POLL_INTERVAL_MS);
+                    final ProbeType probeType;
+                    try {
+                        probeType = ServiceMapper.toProbeType(jsonBody, ProbeType.GET);
+                    } catch (IllegalArgumentException e) {
+                        errorResponse(req, HttpResponseStatus.BAD_REQUEST, e.getMessage());
+                        return;
+                    }
+                    apiPollerService.create(url, name, pollIntervalMs, probeType)
                             .setHandler(createRequest -> {
                                 if (createRequest.failed()) {
                                     errorResponse(req, HttpResponseStatus.INTERNAL_SERVER_ERROR, "An error occurred while creating service: " + createRequest.cause().getMessage());
                                 } else {
+                                    scheduler.schedule(Service.builder()
+                                            .id(createRequest.result())
+                                            .name(name)
+                                            .url(url)
+                                            .serviceStatus(ServiceStatus.UNKNOWN)
+                                            .pollIntervalMs(pollIntervalMs)
+                                            .probeType(probeType)
+                                            .build());
                                     req.response()
                                             .setStatusCode(HttpResponseStatus.CREATED.code())
                                             .setStatusMessage(createRequest.result())
@@ -111,7 +612,14 @@ public class MainVerticle extends AbstractVerticle {
                     final String id = req.pathParam("id");
 
                     apiPollerService.delete(id)
-                            .setHandler(updateResponseHandler(req, "An error occurred while deleting service: "));
+                            .setHandler(deleteRequest -> {
+                                if (deleteRequest.succeeded()) {
+                                    scheduler.unschedule(id);
+                                    poller.forget(id);
+                                    history.forget(id);
+                                }
+                                updateResponseHandler(req, "An error occurred while deleting service: ").handle(deleteRequest);
+                            });
                 });
     }
 
@@ -125,10 +633,230 @@ public class MainVerticle extends AbstractVerticle {
                     if (!jsonBody.containsKey("url")) {
                         errorResponse(req, HttpResponseStatus.BAD_REQUEST, "url parameter is required");
                     } else {
-                        final Service service = toService(id, req.getBodyAsJson());
+                        final Service service;
+                        try {
+                            service = toService(id, req.getBodyAsJson());
+                        } catch (IllegalArgumentException e) {
+                            errorResponse(req, HttpResponseStatus.BAD_REQUEST, e.getMessage());
+                            return;
+                        }
 
                         apiPollerService.update(service)
-                                .setHandler(updateResponseHandler(req, "An error occurred while updating service: "));
+                                .setHandler(updateRequest -> {
+                                    if (updateRequest.succeeded() && Boolean.TRUE.equals(updateRequest.result())) {
+                                        poller.forget(id);
+                                        rescheduleService(id);
+                                    }
+                                    updateResponseHandler(req, "An error occurred while updating service: ").handle(updateRequest);
+                                });
+                    }
+                });
+    }
+
+    private void registerGetServiceEventsRoute(Router router) {
+        router.get(EVENTS_API_PATH)
+                .handler(req -> broadcaster.subscribe(req.response()));
+        router.get(EVENTS_API_PATH + "/stats")
+                .handler(req -> req.response()
+                        .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                        .setStatusCode(HttpResponseStatus.OK.code())
+                        .end(broadcaster.getStats().toJson().encode())
+                );
+    }
+
+    private void registerBulkImportRoute(Router router) {
+        router.post(BULK_IMPORT_API_PATH)
+                .handler(req -> {
+                    final HttpServerRequest request = req.request();
+                    final String contentType = request.getHeader(CONTENT_TYPE);
+                    final BulkImport bulkImport = new BulkImport(apiPollerService, BulkImport.DEFAULT_BATCH_SIZE,
+                            svc -> scheduler.scheduleSpread(svc, startupSpreadMs));
+                    // the parser may report an error and still end, only the first of them answers
+                    final AtomicBoolean done = new AtomicBoolean();
+                    final Handler<Void> endHandler = end -> {
+                        if (done.compareAndSet(false, true)) {
+                            bulkImport.finish()
+                                    .setHandler(finish -> req.response()
+                                            .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                                            .setStatusCode(HttpResponseStatus.OK.code())
+                                            .end(finish.result().encode()));
+                        }
+                    };
+                    final Handler<Throwable> exceptionHandler = error -> {
+                        log.error("An error occurred while reading bulk import", error);
+                        if (done.compareAndSet(false, true)) {
+                            errorResponse(req, HttpResponseStatus.BAD_REQUEST, "Invalid bulk import body: " + error.getMessage());
+                        }
+                    };
+
+                    if (contentType != null && contentType.contains(APPLICATION_NDJSON)) {
+                        final RecordParser parser = RecordParser.newDelimited("\n", request);
+                        parser.exceptionHandler(exceptionHandler)
+                                .endHandler(endHandler)
+                                .handler(line -> {
+                                    if (line.toString().trim().isEmpty()) {
+                                        return;
+                                    }
+                                    try {
+                                        importRow(bulkImport, line.toJsonObject(), parser);
+                                    } catch (DecodeException e) {
+                                        bulkImport.reject("Invalid json: " + e.getMessage());
+                                    }
+                                });
+                    } else {
+                        final JsonParser parser = JsonParser.newParser(request).objectValueMode();
+                        parser.exceptionHandler(exceptionHandler)
+                                .endHandler(endHandler)
+                                .handler(event -> {
+                                    if (event.type() != JsonEventType.VALUE) {
+                                        return;
+                                    }
+                                    if (event.value() instanceof JsonObject) {
+                                        importRow(bulkImport, event.objectValue(), parser);
+                                    } else {
+                                        bulkImport.reject("Row must be a json object");
+                                    }
+                                });
+                    }
+                });
+    }
+
+    private void importRow(BulkImport bulkImport, JsonObject row, ReadStream<?> input) {
+        final Future<Void> added = bulkImport.add(row);
+        if (!added.isComplete()) {
+            input.pause();
+            added.setHandler(flushed -> input.resume());
+        }
+    }
+
+    private void registerGetSchedulerRoute(Router router) {
+        router.get(SCHEDULER_API_PATH)
+                .handler(req -> req.response()
+                        .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                        .setStatusCode(HttpResponseStatus.OK.code())
+                        .end(scheduler.getStats().toJson().encode())
+                );
+    }
+
+    private void registerGetPollerRoute(Router router) {
+        router.get(POLLER_API_PATH)
+                .handler(req -> req.response()
+                        .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                        .setStatusCode(HttpResponseStatus.OK.code())
+                        .end(poller.getStats().toJson().encode())
+                );
+        router.get(POLLER_API_PATH + "/hosts")
+                .handler(req -> {
+                    final Integer limit = hostsLimit(req);
+                    if (limit == null) {
+                        return;
+                    }
+                    req.response()
+                            .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                            .setStatusCode(HttpResponseStatus.OK.code())
+                            .end(poller.getConnections().hostsToJson(limit).encode());
+                });
+        router.get(POLLER_API_PATH + "/queues")
+                .handler(req -> {
+                    final Integer limit = hostsLimit(req);
+                    if (limit == null) {
+                        return;
+                    }
+                    req.response()
+                            .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                            .setStatusCode(HttpResponseStatus.OK.code())
+                            .end(poller.getHostLimiter().queuesToJson(limit).encode());
+                });
+    }
+
+    /**
+     * @return the limit parameter or null when it is invalid, after answering with a bad request
+     */
+    private Integer hostsLimit(RoutingContext req) {
+        final String limitParam = req.request().getParam("limit");
+        final int limit;
+        try {
+            limit = limitParam != null ? Integer.parseInt(limitParam) : DEFAULT_HOSTS_LIMIT;
+        } catch (NumberFormatException e) {
+            errorResponse(req, HttpResponseStatus.BAD_REQUEST, "limit parameter must be a number");
+            return null;
+        }
+        if (limit < 1) {
+            errorResponse(req, HttpResponseStatus.BAD_REQUEST, "limit parameter must be at least 1");
+            return null;
+        }
+        return limit;
+    }
+
+    private void registerGetRegistryRoute(Router router) {
+        router.get(REGISTRY_API_PATH)
+                .handler(req -> req.response()
+                        .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                        .setStatusCode(HttpResponseStatus.OK.code())
+                        .end(apiPollerService.getCacheStats().toJson().encode())
+                );
+    }
+
+    private void registerGetShardsRoute(Router router) {
+        router.get(SHARDS_API_PATH)
+                .handler(req -> req.response()
+                        .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                        .setStatusCode(HttpResponseStatus.OK.code())
+                        .end(shards.toJson().encode())
+                );
+    }
+
+    private void registerGetMetricsRoute(Router router) {
+        router.get(METRICS_PATH)
+                .handler(req -> req.response()
+                        .putHeader(CONTENT_TYPE, Metrics.CONTENT_TYPE)
+                        .setStatusCode(HttpResponseStatus.OK.code())
+                        .end(metrics.scrape())
+                );
+    }
+
+    /**
+     * Times every request from routing to the end of its response, labelled with the path of the route that answered it.
+     */
+    private void registerRequestMetrics(Router router) {
+        final Histogram requestDuration = metrics.histogram("http_request_duration_seconds", "Time to answer a REST request",
+                Histogram.LATENCY_BUCKETS, "method", "route", "status");
+        router.route().handler(req -> {
+            final long startedAt = System.nanoTime();
+            // the route answering is only known while it writes the response, not once the response has ended
+            final AtomicReference<String> route = new AtomicReference<>("unmatched");
+            req.addHeadersEndHandler(headersEnded -> {
+                if (req.currentRoute() != null && req.currentRoute().getPath() != null) {
+                    route.set(req.currentRoute().getPath());
+                }
+            });
+            req.addBodyEndHandler(ended -> requestDuration.observe((System.nanoTime() - startedAt) / 1e9,
+                    req.request().rawMethod(), route.get(), String.valueOf(req.response().getStatusCode())));
+            req.next();
+        });
+    }
+
+    // event loop confined stats are read on scrape, which runs on the event loop of this verticle
+    private void registerGauges(PollExecutor executor) {
+        metrics.gauge("poll_probes_in_flight", "Probes sent and not answered yet", () -> executor.getStats().getInFlight());
+        metrics.gauge("poll_probes_queued", "Probes waiting for an in flight slot", () -> executor.getStats().getQueued());
+        metrics.gauge("poll_scheduler_queue_depth", "Services scheduled for polling", () -> scheduler.getStats().getQueueDepth());
+        metrics.gauge("poll_scheduler_lag_seconds", "Delay of the last dispatched poll", () -> scheduler.getStats().getLagMs() / 1000.0);
+        metrics.gauge("poll_services_backing_off", "Services polled less often after failing repeatedly", () -> poller.getBackoff().countBackingOff());
+        metrics.gauge("poll_connections_open", "Probe connections open over all hosts", () -> poller.getConnections().getOpen());
+        metrics.gauge("poll_probes_host_queued", "Probes waiting for the limits of their host", () -> poller.getHostLimiter().getQueued());
+        metrics.gauge("poll_status_writes_pending", "Status transitions waiting to be written", () -> poller.getStats().getPendingStatusWrites());
+        metrics.gauge("registry_services", "Services in the registry", () -> apiPollerService.getCacheStats().getSize());
+        metrics.gauge("events_subscribers", "Connected event stream subscribers", () -> broadcaster.getStats().getSubscribers());
+    }
+
+    private void rescheduleService(String id) {
+        apiPollerService.get(id)
+                .setHandler(getRequest -> {
+                    if (getRequest.failed()) {
+                        log.error("An error occurred while rescheduling service {}", id, getRequest.cause());
+                    } else if (getRequest.result() != null) {
+                        scheduler.schedule(getRequest.result());
                     }
                 });
     }
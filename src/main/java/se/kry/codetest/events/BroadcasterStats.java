@@ -0,0 +1,22 @@
+package se.kry.codetest.events;
+
+import io.vertx.core.json.JsonObject;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@Builder
+@ToString
+public class BroadcasterStats {
+    private final int subscribers;
+    private final long eventsPublished;
+    private final long droppedSubscribers;
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("subscribers", subscribers)
+                .put("events_published", eventsPublished)
+                .put("dropped_subscribers", droppedSubscribers);
+    }
+}
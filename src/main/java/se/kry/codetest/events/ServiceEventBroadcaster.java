@@ -0,0 +1,106 @@
+package se.kry.codetest.events;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static io.vertx.core.http.HttpHeaders.CACHE_CONTROL;
+import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
+
+/**
+ * Pushes registry events to Server-Sent Events subscribers. Each event is encoded once for all
+ * subscribers, a subscriber whose write queue is over its buffer size is considered too slow and
+ * is disconnected instead of letting its backlog grow.
+ * <p>
+ * Must only be used from the event loop of the verticle that owns it.
+ */
+@Slf4j
+public class ServiceEventBroadcaster {
+    public static final int DEFAULT_CLIENT_BUFFER_BYTES = 64 * 1024;
+    public static final long HEARTBEAT_MS = 15 * 1000;
+    public static final String TEXT_EVENT_STREAM = "text/event-stream";
+
+    private static final Buffer HEARTBEAT = Buffer.buffer(": heartbeat\n\n");
+
+    private final Vertx vertx;
+    private final int clientBufferBytes;
+    private final Set<HttpServerResponse> subscribers = new LinkedHashSet<>();
+
+    private MessageConsumer<JsonObject> consumer;
+    private Long heartbeatTimerId;
+    private long eventsPublished;
+    private long droppedSubscribers;
+
+    public ServiceEventBroadcaster(Vertx vertx, int clientBufferBytes) {
+        this.vertx = vertx;
+        this.clientBufferBytes = clientBufferBytes;
+    }
+
+    public void start() {
+        consumer = vertx.eventBus().consumer(ServiceEvents.ADDRESS, message -> {
+            eventsPublished++;
+            broadcast(toFrame(message.body()));
+        });
+        heartbeatTimerId = vertx.setPeriodic(HEARTBEAT_MS, timerId -> broadcast(HEARTBEAT));
+    }
+
+    public void stop() {
+        if (consumer != null) {
+            consumer.unregister();
+            consumer = null;
+        }
+        if (heartbeatTimerId != null) {
+            vertx.cancelTimer(heartbeatTimerId);
+            heartbeatTimerId = null;
+        }
+        new ArrayList<>(subscribers).forEach(HttpServerResponse::close);
+        subscribers.clear();
+    }
+
+    public void subscribe(HttpServerResponse response) {
+        response.setChunked(true)
+                .setWriteQueueMaxSize(clientBufferBytes)
+                .putHeader(CONTENT_TYPE, TEXT_EVENT_STREAM)
+                .putHeader(CACHE_CONTROL, "no-cache")
+                .closeHandler(closed -> subscribers.remove(response))
+                .write(HEARTBEAT);
+        subscribers.add(response);
+    }
+
+    public BroadcasterStats getStats() {
+        return BroadcasterStats.builder()
+                .subscribers(subscribers.size())
+                .eventsPublished(eventsPublished)
+                .droppedSubscribers(droppedSubscribers)
+                .build();
+    }
+
+    private void broadcast(Buffer frame) {
+        for (HttpServerResponse response : new ArrayList<>(subscribers)) {
+            if (response.writeQueueFull()) {
+                log.warn("Dropping slow event subscriber");
+                subscribers.remove(response);
+                droppedSubscribers++;
+                response.close();
+            } else {
+                response.write(frame);
+            }
+        }
+    }
+
+    private static Buffer toFrame(JsonObject event) {
+        return Buffer.buffer()
+                .appendString("event: ")
+                .appendString(event.getString(ServiceEvents.EVENT_TYPE))
+                .appendString("\ndata: ")
+                .appendString(event.encode())
+                .appendString("\n\n");
+    }
+}
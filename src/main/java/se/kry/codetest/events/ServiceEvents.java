@@ -0,0 +1,59 @@
+package se.kry.codetest.events;
+
+import io.vertx.core.json.JsonObject;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import se.kry.codetest.mapper.ServiceMapper;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.util.Map;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class ServiceEvents {
+    public static final String ADDRESS = "se.kry.codetest.services.events";
+
+    public static final String EVENT_TYPE = "type";
+    public static final String EVENT_ID = "id";
+    public static final String EVENT_SERVICE = "service";
+    public static final String EVENT_STATUSES = "statuses";
+
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+    public static final String CLEARED = "cleared";
+    public static final String STATUSES = "statuses";
+
+    public static JsonObject created(Service service) {
+        return new JsonObject()
+                .put(EVENT_TYPE, CREATED)
+                .put(EVENT_ID, service.getId())
+                .put(EVENT_SERVICE, ServiceMapper.toJsonObject(service));
+    }
+
+    public static JsonObject updated(Service service) {
+        return new JsonObject()
+                .put(EVENT_TYPE, UPDATED)
+                .put(EVENT_ID, service.getId())
+                .put(EVENT_SERVICE, ServiceMapper.toJsonObject(service));
+    }
+
+    public static JsonObject deleted(String id) {
+        return new JsonObject()
+                .put(EVENT_TYPE, DELETED)
+                .put(EVENT_ID, id);
+    }
+
+    public static JsonObject cleared() {
+        return new JsonObject()
+                .put(EVENT_TYPE, CLEARED);
+    }
+
+    public static JsonObject statuses(Map<String, ServiceStatus> statuses) {
+        final JsonObject jsonStatuses = new JsonObject();
+        statuses.forEach((id, status) -> jsonStatuses.put(id, status.toString()));
+        return new JsonObject()
+                .put(EVENT_TYPE, STATUSES)
+                .put(EVENT_STATUSES, jsonStatuses);
+    }
+}
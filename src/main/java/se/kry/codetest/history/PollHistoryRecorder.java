@@ -0,0 +1,190 @@
+package se.kry.codetest.history;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.model.HistoryBucket;
+import se.kry.codetest.model.HistoryResolution;
+import se.kry.codetest.model.ProbeResult;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.repository.PollHistoryRepository;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rolls probe results up in minute, hour and day buckets. Results are aggregated per service and
+ * minute in memory and added to the stored buckets of every resolution on each flush, raw samples
+ * are never stored. The aggregates of a failed flush are kept for the next one, which is safe since a
+ * flush only adds to the stored buckets once its update transaction commits. Buckets older than the
+ * retention of their resolution are deleted.
+ * <p>
+ * Must only be used from the event loop of the verticle that owns it.
+ */
+@Slf4j
+public class PollHistoryRecorder {
+    public static final long DEFAULT_FLUSH_MS = 60 * 1000;
+    public static final int MAX_BUCKETS = 1440;
+
+    private final Vertx vertx;
+    private final PollHistoryRepository repository;
+    private final long flushMs;
+    private final Map<HistoryResolution, Long> retentions;
+
+    // pending aggregates of the current flush window, keyed by service id and minute
+    private Map<String, PendingBucket> pending = new HashMap<>();
+    private Long flushTimerId;
+
+    public PollHistoryRecorder(Vertx vertx, long flushMs, Map<HistoryResolution, Long> retentions) {
+        this.vertx = vertx;
+        this.repository = new PollHistoryRepository(vertx);
+        this.flushMs = flushMs;
+        this.retentions = new EnumMap<>(retentions);
+        for (HistoryResolution resolution : HistoryResolution.values()) {
+            this.retentions.putIfAbsent(resolution, resolution.getDefaultRetentionMs());
+        }
+    }
+
+    public Future<Boolean> start() {
+        return repository.createDb()
+                .map(created -> {
+                    flushTimerId = vertx.setPeriodic(flushMs, timerId -> flush());
+                    return created;
+                });
+    }
+
+    public Future<Integer> stop() {
+        if (flushTimerId != null) {
+            vertx.cancelTimer(flushTimerId);
+            flushTimerId = null;
+        }
+        return flush();
+    }
+
+    public void record(Service service, ProbeResult result) {
+        final long minute = HistoryResolution.MINUTE.bucketStart(System.currentTimeMillis());
+        pending.computeIfAbsent(service.getId() + "@" + minute, key -> new PendingBucket(service.getId(), minute))
+                .add(result);
+    }
+
+    public Future<Integer> forget(String serviceId) {
+        pending.values().removeIf(bucket -> bucket.serviceId.equals(serviceId));
+        return repository.deleteService(serviceId);
+    }
+
+    public Future<List<HistoryBucket>> find(String serviceId, HistoryResolution resolution, long from, long to) {
+        return repository.find(serviceId, resolution, from, to);
+    }
+
+    /**
+     * Finest resolution still retained at {@code from} that covers the range in at most {@link #MAX_BUCKETS} buckets.
+     */
+    public HistoryResolution resolutionFor(long from, long to) {
+        final long now = System.currentTimeMillis();
+        for (HistoryResolution resolution : HistoryResolution.values()) {
+            if (now - from <= retentions.get(resolution) && (to - from) / resolution.getBucketMs() <= MAX_BUCKETS) {
+                return resolution;
+            }
+        }
+        return HistoryResolution.DAY;
+    }
+
+    public Future<Integer> flush() {
+        if (pending.isEmpty()) {
+            return applyRetention();
+        }
+        final Map<String, PendingBucket> flushed = pending;
+        pending = new HashMap<>();
+
+        // several minutes of a service can fall in the same hour or day, merge them before writing
+        final Map<String, HistoryBucket> buckets = new HashMap<>();
+        flushed.values().forEach(minute -> {
+            for (HistoryResolution resolution : HistoryResolution.values()) {
+                final long bucketStart = resolution.bucketStart(minute.minute);
+                buckets.merge(minute.serviceId + "@" + resolution + "@" + bucketStart, minute.toBucket(resolution, bucketStart), PollHistoryRecorder::merge);
+            }
+        });
+
+        return repository.add(new ArrayList<>(buckets.values()))
+                .compose(added -> applyRetention().map(deleted -> added))
+                .otherwise(error -> {
+                    log.error("An error occurred while writing poll history of {} services", flushed.size(), error);
+                    flushed.forEach((key, minute) -> pending.merge(key, minute, PendingBucket::merge));
+                    return 0;
+                });
+    }
+
+    private Future<Integer> applyRetention() {
+        final long now = System.currentTimeMillis();
+        final List<Future> deletes = new ArrayList<>();
+        retentions.forEach((resolution, retentionMs) -> deletes.add(repository.deleteBefore(resolution, now - retentionMs)));
+        Future<Integer> retentionFuture = Future.future();
+        CompositeFuture.join(deletes)
+                .setHandler(deleted -> {
+                    if (deleted.failed()) {
+                        log.error("An error occurred while deleting expired poll history", deleted.cause());
+                    }
+                    retentionFuture.complete(0);
+                });
+        return retentionFuture;
+    }
+
+    private static HistoryBucket merge(HistoryBucket left, HistoryBucket right) {
+        return HistoryBucket.builder()
+                .serviceId(left.getServiceId())
+                .resolution(left.getResolution())
+                .bucketStart(left.getBucketStart())
+                .probes(left.getProbes() + right.getProbes())
+                .failures(left.getFailures() + right.getFailures())
+                .latencySumMs(left.getLatencySumMs() + right.getLatencySumMs())
+                .latencyMaxMs(Math.max(left.getLatencyMaxMs(), right.getLatencyMaxMs()))
+                .build();
+    }
+
+    private static class PendingBucket {
+        private final String serviceId;
+        private final long minute;
+        private long probes;
+        private long failures;
+        private long latencySumMs;
+        private long latencyMaxMs;
+
+        PendingBucket(String serviceId, long minute) {
+            this.serviceId = serviceId;
+            this.minute = minute;
+        }
+
+        PendingBucket merge(PendingBucket other) {
+            probes += other.probes;
+            failures += other.failures;
+            latencySumMs += other.latencySumMs;
+            latencyMaxMs = Math.max(latencyMaxMs, other.latencyMaxMs);
+            return this;
+        }
+
+        void add(ProbeResult result) {
+            probes++;
+            if (!result.isSuccess()) {
+                failures++;
+            }
+            latencySumMs += result.getTotalMs();
+            latencyMaxMs = Math.max(latencyMaxMs, result.getTotalMs());
+        }
+
+        HistoryBucket toBucket(HistoryResolution resolution, long bucketStart) {
+            return HistoryBucket.builder()
+                    .serviceId(serviceId)
+                    .resolution(resolution)
+                    .bucketStart(bucketStart)
+                    .probes(probes)
+                    .failures(failures)
+                    .latencySumMs(latencySumMs)
+                    .latencyMaxMs(latencyMaxMs)
+                    .build();
+        }
+    }
+}
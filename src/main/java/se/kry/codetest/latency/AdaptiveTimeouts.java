@@ -0,0 +1,102 @@
+package se.kry.codetest.latency;
+
+import io.vertx.core.json.JsonObject;
+import se.kry.codetest.model.ProbeResult;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Probe timeout of every service, derived from the p99 of its recent answered probes times a factor
+ * and clamped between a minimum and a maximum. Services with too few samples get the default timeout.
+ * <p>
+ * Timed out probes are recorded at the timeout they hit, so a service getting slower pushes its p99
+ * and timeout up by the factor until it answers in time again or reaches the maximum.
+ * <p>
+ * Must only be used from the event loop of the verticle that owns it.
+ */
+public class AdaptiveTimeouts {
+    public static final double DEFAULT_FACTOR = 3;
+    public static final long DEFAULT_MIN_TIMEOUT_MS = 250;
+    public static final long DEFAULT_MAX_TIMEOUT_MS = 10 * 1000;
+    static final int MIN_SAMPLES = 20;
+    // samples per window, the percentile is computed over the current and previous windows
+    static final int WINDOW_SIZE = 200;
+
+    private final boolean enabled;
+    private final long defaultTimeoutMs;
+    private final double factor;
+    private final long minTimeoutMs;
+    private final long maxTimeoutMs;
+    private final Map<String, Window> windows = new HashMap<>();
+
+    /**
+     * Timeouts always at the default one.
+     */
+    public AdaptiveTimeouts(long defaultTimeoutMs) {
+        this(false, defaultTimeoutMs, DEFAULT_FACTOR, DEFAULT_MIN_TIMEOUT_MS, DEFAULT_MAX_TIMEOUT_MS);
+    }
+
+    public AdaptiveTimeouts(boolean enabled, long defaultTimeoutMs, double factor, long minTimeoutMs, long maxTimeoutMs) {
+        if (minTimeoutMs > maxTimeoutMs) {
+            throw new IllegalArgumentException("Min timeout must not be above max timeout");
+        }
+        this.enabled = enabled;
+        this.defaultTimeoutMs = defaultTimeoutMs;
+        this.factor = factor;
+        this.minTimeoutMs = minTimeoutMs;
+        this.maxTimeoutMs = maxTimeoutMs;
+    }
+
+    public void record(String id, ProbeResult result) {
+        if (!enabled || !(result.isSuccess() || result.isTimedOut())) {
+            return;
+        }
+        windows.computeIfAbsent(id, key -> new Window()).record(result.getTotalMs());
+    }
+
+    public long timeoutMs(String id) {
+        final Window window = windows.get(id);
+        if (!enabled || window == null) {
+            return defaultTimeoutMs;
+        }
+        final LatencyHistogram recent = window.recent();
+        if (recent.getCount() < MIN_SAMPLES) {
+            return defaultTimeoutMs;
+        }
+        final long timeout = (long) Math.ceil(recent.percentile(99) * factor);
+        return Math.max(minTimeoutMs, Math.min(maxTimeoutMs, timeout));
+    }
+
+    public JsonObject toJson(String id) {
+        final Window window = windows.get(id);
+        return new JsonObject()
+                .put("timeout_ms", timeoutMs(id))
+                .put("samples", window == null ? 0 : window.recent().getCount())
+                .put("adaptive", enabled);
+    }
+
+    public void forget(String id) {
+        windows.remove(id);
+    }
+
+    private static class Window {
+        private LatencyHistogram previous = new LatencyHistogram();
+        private LatencyHistogram current = new LatencyHistogram();
+
+        void record(long valueMs) {
+            if (current.getCount() >= WINDOW_SIZE) {
+                previous = current;
+                current = new LatencyHistogram();
+            }
+            current.record(valueMs);
+        }
+
+        LatencyHistogram recent() {
+            final LatencyHistogram recent = new LatencyHistogram();
+            recent.add(previous);
+            recent.add(current);
+            return recent;
+        }
+    }
+}
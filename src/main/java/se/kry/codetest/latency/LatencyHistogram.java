@@ -0,0 +1,94 @@
+package se.kry.codetest.latency;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Fixed size histogram of millisecond latencies. Values below 8 ms get their own bucket, larger
+ * values are bucketed by power of two split in 4 sub-buckets, so a percentile is reported with at
+ * most 25% error whatever the number of recorded values. Values above {@link #HIGHEST_TRACKABLE_MS}
+ * are counted in the last bucket.
+ */
+public class LatencyHistogram {
+    public static final long HIGHEST_TRACKABLE_MS = (1 << 16) - 1;
+
+    private static final int LINEAR_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = bucketIndex(HIGHEST_TRACKABLE_MS) + 1;
+
+    private final int[] counts = new int[BUCKETS];
+    private long count;
+    private long max;
+
+    public void record(long valueMs) {
+        final long value = Math.max(0, valueMs);
+        counts[bucketIndex(Math.min(value, HIGHEST_TRACKABLE_MS))]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the values recorded in the other histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the highest value of the bucket holding the given percentile, 0 when nothing was recorded
+     */
+    public long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("count", count)
+                .put("p50", percentile(50))
+                .put("p95", percentile(95))
+                .put("p99", percentile(99))
+                .put("max", max);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 3) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        final int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 3;
+        final int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        final long lowest = (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,38 @@
+package se.kry.codetest.latency;
+
+import io.vertx.core.json.JsonObject;
+import se.kry.codetest.model.ProbeResult;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Latency histograms of every probed service.
+ * <p>
+ * Must only be used from the event loop of the verticle that owns it.
+ */
+public class LatencyRecorder {
+
+    private final Map<String, ServiceLatency> latencies = new HashMap<>();
+
+    public void record(String id, ProbeResult result) {
+        latencies.computeIfAbsent(id, key -> new ServiceLatency()).record(result);
+    }
+
+    /**
+     * @return the latencies of the service or empty histograms when it was never probed
+     */
+    public ServiceLatency get(String id) {
+        final ServiceLatency latency = latencies.get(id);
+        return latency != null ? latency : new ServiceLatency();
+    }
+
+    public JsonObject summary(String id) {
+        final ServiceLatency latency = latencies.get(id);
+        return latency != null ? latency.getTotal().toJson() : new LatencyHistogram().toJson();
+    }
+
+    public void forget(String id) {
+        latencies.remove(id);
+    }
+}
@@ -0,0 +1,29 @@
+package se.kry.codetest.latency;
+
+import io.vertx.core.json.JsonObject;
+import lombok.Getter;
+import se.kry.codetest.model.ProbeResult;
+
+@Getter
+public class ServiceLatency {
+    private final LatencyHistogram connect = new LatencyHistogram();
+    private final LatencyHistogram ttfb = new LatencyHistogram();
+    private final LatencyHistogram total = new LatencyHistogram();
+
+    public void record(ProbeResult result) {
+        if (result.getConnectMs() != ProbeResult.NOT_REACHED) {
+            connect.record(result.getConnectMs());
+        }
+        if (result.getTtfbMs() != ProbeResult.NOT_REACHED) {
+            ttfb.record(result.getTtfbMs());
+        }
+        total.record(result.getTotalMs());
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("connect", connect.toJson())
+                .put("ttfb", ttfb.toJson())
+                .put("total", total.toJson());
+    }
+}
@@ -0,0 +1,41 @@
+package se.kry.codetest.mapper;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import se.kry.codetest.model.HistoryBucket;
+import se.kry.codetest.model.HistoryResolution;
+
+import java.util.List;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class HistoryMapper {
+    public static final String HISTORY_RESOLUTION = "resolution";
+    public static final String HISTORY_BUCKETS = "buckets";
+    public static final String BUCKET_START = "start";
+    public static final String BUCKET_PROBES = "probes";
+    public static final String BUCKET_FAILURES = "failures";
+    public static final String BUCKET_AVAILABILITY = "availability";
+    public static final String BUCKET_LATENCY_AVG_MS = "latency_avg_ms";
+    public static final String BUCKET_LATENCY_MAX_MS = "latency_max_ms";
+
+    public static JsonObject toJsonObject(HistoryResolution resolution, List<HistoryBucket> buckets) {
+        final JsonArray jsonBuckets = new JsonArray();
+        buckets.forEach(bucket -> jsonBuckets.add(toJsonObject(bucket)));
+        return new JsonObject()
+                .put(HISTORY_RESOLUTION, resolution.name().toLowerCase())
+                .put(HISTORY_BUCKETS, jsonBuckets);
+    }
+
+    public static JsonObject toJsonObject(HistoryBucket bucket) {
+        final long probes = bucket.getProbes();
+        return new JsonObject()
+                .put(BUCKET_START, bucket.getBucketStart())
+                .put(BUCKET_PROBES, probes)
+                .put(BUCKET_FAILURES, bucket.getFailures())
+                .put(BUCKET_AVAILABILITY, probes == 0 ? null : (double) (probes - bucket.getFailures()) / probes)
+                .put(BUCKET_LATENCY_AVG_MS, probes == 0 ? null : bucket.getLatencySumMs() / probes)
+                .put(BUCKET_LATENCY_MAX_MS, bucket.getLatencyMaxMs());
+    }
+}
@@ -3,6 +3,7 @@ package se.kry.codetest.mapper;
 import io.vertx.core.json.JsonObject;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import se.kry.codetest.model.ProbeType;
 import se.kry.codetest.model.Service;
 
 import java.time.format.DateTimeFormatter;
@@ -17,25 +18,41 @@ public class ServiceMapper {
     public static final String SERVICE_NAME = "name";
     public static final String SERVICE_STATUS = "status";
     public static final String SERVICE_CREATION_DATE = "creation_date";
+    public static final String SERVICE_POLL_INTERVAL_MS = "poll_interval_ms";
+    public static final String SERVICE_PROBE_TYPE = "probe_type";
 
     public static List<JsonObject> toJsonObjects(List<Service> services) {
         return services.stream()
-                .map(svc ->
-                        new JsonObject()
-                                .put(SERVICE_ID, svc.getId())
-                                .put(SERVICE_URL, svc.getUrl())
-                                .put(SERVICE_NAME, svc.getName())
-                                .put(SERVICE_STATUS, svc.getServiceStatus().toString())
-                                .put(SERVICE_CREATION_DATE, svc.getCreationDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
-                )
+                .map(ServiceMapper::toJsonObject)
                 .collect(Collectors.toList());
     }
 
+    public static JsonObject toJsonObject(Service svc) {
+        return new JsonObject()
+                .put(SERVICE_ID, svc.getId())
+                .put(SERVICE_URL, svc.getUrl())
+                .put(SERVICE_NAME, svc.getName())
+                .put(SERVICE_STATUS, svc.getServiceStatus().toString())
+                .put(SERVICE_CREATION_DATE, svc.getCreationDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                .put(SERVICE_POLL_INTERVAL_MS, svc.effectivePollIntervalMs())
+                .put(SERVICE_PROBE_TYPE, svc.effectiveProbeType().name().toLowerCase());
+    }
+
     public static Service toService(String id, JsonObject jsonObject) {
         return Service.builder()
                 .id(id)
                 .name(jsonObject.getString(SERVICE_NAME, ""))
                 .url(jsonObject.getString(SERVICE_URL))
+                .pollIntervalMs(jsonObject.getLong(SERVICE_POLL_INTERVAL_MS, 0L))
+                .probeType(toProbeType(jsonObject, null))
                 .build();
     }
+
+    /**
+     * @throws IllegalArgumentException when the probe type is not a known one
+     */
+    public static ProbeType toProbeType(JsonObject jsonObject, ProbeType defaultProbeType) {
+        final Object probeType = jsonObject.getValue(SERVICE_PROBE_TYPE);
+        return probeType != null ? ProbeType.parse(probeType.toString()) : defaultProbeType;
+    }
 }
@@ -0,0 +1,34 @@
+package se.kry.codetest.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Counter extends Metric {
+
+    private final ConcurrentHashMap<List<String>, LongAdder> values = new ConcurrentHashMap<>();
+
+    Counter(String name, String help, String[] labelNames) {
+        super(name, help, "counter", labelNames);
+    }
+
+    public void inc(String... labelValues) {
+        add(1, labelValues);
+    }
+
+    public void add(long amount, String... labelValues) {
+        checkLabels(labelValues);
+        values.computeIfAbsent(Arrays.asList(labelValues), key -> new LongAdder()).add(amount);
+    }
+
+    public long get(String... labelValues) {
+        final LongAdder value = values.get(Arrays.asList(labelValues));
+        return value == null ? 0 : value.sum();
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        values.forEach((labelValues, value) -> writeSample(out, name, labelNames, labelValues, null, null, value.sum()));
+    }
+}
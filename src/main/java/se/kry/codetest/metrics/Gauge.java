@@ -0,0 +1,19 @@
+package se.kry.codetest.metrics;
+
+import java.util.Collections;
+import java.util.function.DoubleSupplier;
+
+class Gauge extends Metric {
+
+    private final DoubleSupplier value;
+
+    Gauge(String name, String help, DoubleSupplier value) {
+        super(name, help, "gauge", new String[0]);
+        this.value = value;
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        writeSample(out, name, labelNames, Collections.emptyList(), null, null, value.getAsDouble());
+    }
+}
@@ -0,0 +1,77 @@
+package se.kry.codetest.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in seconds with fixed cumulative buckets, as Prometheus expects them.
+ */
+public class Histogram extends Metric {
+    public static final double[] LATENCY_BUCKETS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final double[] buckets;
+    private final ConcurrentHashMap<List<String>, Child> children = new ConcurrentHashMap<>();
+
+    Histogram(String name, String help, double[] buckets, String[] labelNames) {
+        super(name, help, "histogram", labelNames);
+        this.buckets = buckets.clone();
+        Arrays.sort(this.buckets);
+    }
+
+    public void observe(double seconds, String... labelValues) {
+        checkLabels(labelValues);
+        children.computeIfAbsent(Arrays.asList(labelValues), key -> new Child(buckets.length)).observe(buckets, seconds);
+    }
+
+    public void observeMs(long millis, String... labelValues) {
+        observe(millis / 1000.0, labelValues);
+    }
+
+    public long count(String... labelValues) {
+        final Child child = children.get(Arrays.asList(labelValues));
+        return child == null ? 0 : child.count.sum();
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        children.forEach((labelValues, child) -> {
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += child.buckets[i].sum();
+                writeSample(out, name + "_bucket", labelNames, labelValues, "le", formatValue(buckets[i]), cumulative);
+            }
+            final long count = child.count.sum();
+            writeSample(out, name + "_bucket", labelNames, labelValues, "le", "+Inf", count);
+            writeSample(out, name + "_sum", labelNames, labelValues, null, null, child.sum.sum());
+            writeSample(out, name + "_count", labelNames, labelValues, null, null, count);
+        });
+    }
+
+    private static class Child {
+        // non cumulative, summed up when written
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Child(int size) {
+            buckets = new LongAdder[size];
+            for (int i = 0; i < size; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(double[] bounds, double value) {
+            for (int i = 0; i < bounds.length; i++) {
+                if (value <= bounds[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(value);
+        }
+    }
+}
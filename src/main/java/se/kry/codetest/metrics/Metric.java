@@ -0,0 +1,78 @@
+package se.kry.codetest.metrics;
+
+import java.util.List;
+
+abstract class Metric {
+    protected final String name;
+    private final String help;
+    private final String type;
+    protected final String[] labelNames;
+
+    Metric(String name, String help, String type, String[] labelNames) {
+        this.name = name;
+        this.help = help;
+        this.type = type;
+        this.labelNames = labelNames;
+    }
+
+    void write(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        writeSamples(out);
+    }
+
+    abstract void writeSamples(StringBuilder out);
+
+    void checkLabels(String[] labelValues) {
+        if (labelValues.length != labelNames.length) {
+            throw new IllegalArgumentException(name + " expects labels " + String.join(",", labelNames));
+        }
+    }
+
+    static void writeSample(StringBuilder out, String name, String[] labelNames, List<String> labelValues, String extraLabel, String extraValue, double value) {
+        out.append(name);
+        if (labelNames.length > 0 || extraLabel != null) {
+            out.append('{');
+            for (int i = 0; i < labelNames.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendLabel(out, labelNames[i], labelValues.get(i));
+            }
+            if (extraLabel != null) {
+                if (labelNames.length > 0) {
+                    out.append(',');
+                }
+                appendLabel(out, extraLabel, extraValue);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(formatValue(value)).append('\n');
+    }
+
+    static String formatValue(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        }
+        if (value == (long) value) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static void appendLabel(StringBuilder out, String labelName, String labelValue) {
+        out.append(labelName).append("=\"");
+        final String value = labelValue == null ? "" : labelValue;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,49 @@
+package se.kry.codetest.metrics;
+
+import io.vertx.core.Vertx;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the counters, gauges and histograms of a Vert.x instance, written in the Prometheus text format.
+ * Metrics are registered once by name, registering an existing name returns the registered metric.
+ */
+public class Metrics {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final Map<Vertx, Metrics> INSTANCES = new WeakHashMap<>();
+
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * Metrics shared by every component of the given Vert.x instance.
+     */
+    public static synchronized Metrics get(Vertx vertx) {
+        return INSTANCES.computeIfAbsent(vertx, key -> new Metrics());
+    }
+
+    public Counter counter(String name, String help, String... labelNames) {
+        return (Counter) metrics.computeIfAbsent(name, key -> new Counter(name, help, labelNames));
+    }
+
+    public Histogram histogram(String name, String help, double[] buckets, String... labelNames) {
+        return (Histogram) metrics.computeIfAbsent(name, key -> new Histogram(name, help, buckets, labelNames));
+    }
+
+    /**
+     * Registers a gauge read on every scrape, replacing the gauge previously registered under the same name.
+     * The supplier is called from the thread serving the scrape.
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        metrics.put(name, new Gauge(name, help, value));
+    }
+
+    public String scrape() {
+        final StringBuilder out = new StringBuilder();
+        metrics.values().forEach(metric -> metric.write(out));
+        return out.toString();
+    }
+}
@@ -0,0 +1,17 @@
+package se.kry.codetest.model;
+
+import lombok.*;
+
+@Getter
+@Builder
+@ToString
+@AllArgsConstructor
+public class HistoryBucket {
+    private final String serviceId;
+    private final HistoryResolution resolution;
+    private final long bucketStart;
+    private final long probes;
+    private final long failures;
+    private final long latencySumMs;
+    private final long latencyMaxMs;
+}
@@ -0,0 +1,20 @@
+package se.kry.codetest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public enum HistoryResolution {
+    MINUTE(60 * 1000L, 6 * 60 * 60 * 1000L),
+    HOUR(60 * 60 * 1000L, 7 * 24 * 60 * 60 * 1000L),
+    DAY(24 * 60 * 60 * 1000L, 365 * 24 * 60 * 60 * 1000L);
+
+    private final long bucketMs;
+    private final long defaultRetentionMs;
+
+    public long bucketStart(long timestamp) {
+        return Math.floorDiv(timestamp, bucketMs) * bucketMs;
+    }
+
+}
@@ -0,0 +1,19 @@
+package se.kry.codetest.model;
+
+import lombok.*;
+
+@Getter
+@Builder
+@ToString
+@AllArgsConstructor
+public class ProbeResult {
+    public static final long NOT_REACHED = -1;
+
+    private final boolean success;
+    private final boolean timedOut;
+    @Builder.Default
+    private final long connectMs = NOT_REACHED;
+    @Builder.Default
+    private final long ttfbMs = NOT_REACHED;
+    private final long totalMs;
+}
@@ -0,0 +1,21 @@
+package se.kry.codetest.model;
+
+public enum ProbeType {
+    // status code of a GET, reading at most a limited part of the body
+    GET,
+    // status code of a HEAD
+    HEAD,
+    // a TCP connection to the host and port of the url
+    TCP;
+
+    /**
+     * @throws IllegalArgumentException when the value is not a probe type
+     */
+    public static ProbeType parse(String value) {
+        try {
+            return valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid probe type " + value + ", expected get, head or tcp");
+        }
+    }
+}
@@ -5,15 +5,27 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Getter
-@Builder
+@Builder(toBuilder = true)
 @ToString
 @NoArgsConstructor
 @AllArgsConstructor
 public class Service {
+    public static final long DEFAULT_POLL_INTERVAL_MS = 60 * 1000;
+
     private String id;
     private String name;
     private String url;
     @With
     private ServiceStatus serviceStatus;
     private LocalDateTime creationDate;
+    private long pollIntervalMs;
+    private ProbeType probeType;
+
+    public long effectivePollIntervalMs() {
+        return pollIntervalMs > 0 ? pollIntervalMs : DEFAULT_POLL_INTERVAL_MS;
+    }
+
+    public ProbeType effectiveProbeType() {
+        return probeType != null ? probeType : ProbeType.GET;
+    }
 }
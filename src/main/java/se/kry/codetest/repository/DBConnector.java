@@ -1,43 +1,96 @@
 package se.kry.codetest.repository;
 
 import io.vertx.config.ConfigRetriever;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.ext.sql.ResultSet;
 import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
 import io.vertx.ext.sql.UpdateResult;
+import se.kry.codetest.metrics.Counter;
+import se.kry.codetest.metrics.Histogram;
+import se.kry.codetest.metrics.Metrics;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Runs reads on a pool of connections and sends every other statement to the {@link DatabaseWriterVerticle}
+ * of the database file, which owns its only write connection. Every statement is given a short fixed name
+ * by its caller, the name labels its metrics. Statements sent before the configuration is read wait for it.
+ */
 public class DBConnector {
 
+    public static final int DEFAULT_READ_POOL_SIZE = 8;
     private static final String DB_PATH = "poller.db";
+    // a write may wait behind a full transaction of large batches
+    private static final long WRITE_TIMEOUT_MS = 60 * 1000;
+    private final Vertx vertx;
+    // set once the configuration is read
     private SQLClient client;
+    private String dbPath;
+    private int writeBatchSize;
+    private final List<Handler<Void>> waitingForConfig = new ArrayList<>();
+    private final Histogram statementLatency;
+    private final Counter statementErrors;
+    private final Histogram poolWait;
 
     public DBConnector(Vertx vertx) {
+        this.vertx = vertx;
+        final Metrics metrics = Metrics.get(vertx);
+        this.statementLatency = metrics.histogram("db_statement_seconds", "Time to run a statement once a connection is acquired",
+                Histogram.LATENCY_BUCKETS, "kind", "statement");
+        this.statementErrors = metrics.counter("db_statement_errors_total", "Statements that failed", "kind", "statement");
+        this.poolWait = metrics.histogram("db_pool_wait_seconds", "Time waited for a connection of the JDBC pool", Histogram.LATENCY_BUCKETS);
 
         ConfigRetriever retriever = ConfigRetriever.create(vertx);
 
         retriever.getConfig(conf -> {
-            String dbPath = DB_PATH;
-            if (conf.succeeded() && conf.result().containsKey("db_path")) {
-                dbPath = conf.result().getString("db_path");
-            }
+            final JsonObject settings = conf.succeeded() ? conf.result() : new JsonObject();
+            dbPath = settings.getString("db_path", DB_PATH);
+            writeBatchSize = settings.getInteger("db_write_batch_size", DatabaseWriterVerticle.DEFAULT_MAX_BATCH_SIZE);
             JsonObject config = new JsonObject()
                     .put("url", "jdbc:sqlite:" + dbPath)
                     .put("driver_class", "org.sqlite.JDBC")
-                    .put("max_pool_size", 30);
+                    .put("max_pool_size", settings.getInteger("db_read_pool_size", DEFAULT_READ_POOL_SIZE));
 
-            client = JDBCClient.createShared(vertx, config);
+            final List<Handler<Void>> waiting;
+            synchronized (this) {
+                client = JDBCClient.createShared(vertx, config, "read:" + dbPath);
+                waiting = new ArrayList<>(waitingForConfig);
+                waitingForConfig.clear();
+            }
+            waiting.forEach(handler -> handler.handle(null));
         });
     }
 
-    public Future<ResultSet> query(String query) {
-        return query(query, new JsonArray());
+    private void whenConfigured(Handler<Void> handler) {
+        synchronized (this) {
+            if (client == null) {
+                waitingForConfig.add(handler);
+                return;
+            }
+        }
+        handler.handle(null);
+    }
+
+    public Future<ResultSet> query(String name, String query) {
+        return query(name, query, new JsonArray());
     }
 
-    public Future<ResultSet> query(String query, JsonArray params) {
+    /**
+     * Runs a SELECT or PRAGMA on the read pool, any other statement is a write.
+     */
+    public Future<ResultSet> query(String name, String query, JsonArray params) {
         if (query == null || query.isEmpty()) {
             return Future.failedFuture("Query is null or empty");
         }
@@ -45,23 +98,18 @@ public class DBConnector {
             query = query + ";";
         }
 
-        Future<ResultSet> queryResultFuture = Future.future();
-
-        client.queryWithParams(query, params, result -> {
-            if (result.failed()) {
-                queryResultFuture.fail(result.cause());
-            } else {
-                queryResultFuture.complete(result.result());
-            }
-        });
-        return queryResultFuture;
+        final String statement = query;
+        if (!isRead(statement)) {
+            return this.<JsonObject>write(DatabaseWriterVerticle.QUERY, name, statement, params).map(ResultSet::new);
+        }
+        return withConnection("query", name, (connection, done) -> connection.queryWithParams(statement, params, done));
     }
 
-    public Future<UpdateResult> update(String update) {
-        return update(update, new JsonArray());
+    public Future<UpdateResult> update(String name, String update) {
+        return update(name, update, new JsonArray());
     }
 
-    public Future<UpdateResult> update(String update, JsonArray params) {
+    public Future<UpdateResult> update(String name, String update, JsonArray params) {
         if (update == null || update.isEmpty()) {
             return Future.failedFuture("Update is null or empty");
         }
@@ -69,15 +117,84 @@ public class DBConnector {
             update = update + ";";
         }
 
-        Future<UpdateResult> queryResultFuture = Future.future();
+        return this.<JsonObject>write(DatabaseWriterVerticle.UPDATE, name, update, params).map(UpdateResult::new);
+    }
+
+    /**
+     * Runs the statement once per parameters, all or none of them are applied.
+     */
+    public Future<List<Integer>> batchUpdate(String name, String update, List<JsonArray> batchParams) {
+        if (update == null || update.isEmpty()) {
+            return Future.failedFuture("Update is null or empty");
+        }
+        if (batchParams.isEmpty()) {
+            return Future.succeededFuture(Collections.emptyList());
+        }
+
+        return this.<JsonArray>write(DatabaseWriterVerticle.BATCH, name, update, new JsonArray(batchParams))
+                .map(updated -> updated.stream()
+                        .map(count -> ((Number) count).intValue())
+                        .collect(Collectors.toList()));
+    }
+
+    private static boolean isRead(String statement) {
+        final String trimmed = statement.trim();
+        return trimmed.regionMatches(true, 0, "SELECT", 0, 6)
+                || trimmed.regionMatches(true, 0, "PRAGMA table_info", 0, 17);
+    }
 
-        client.updateWithParams(update, params, result -> {
-            if (result.failed()) {
-                queryResultFuture.fail(result.cause());
-            } else {
-                queryResultFuture.complete(result.result());
+    private <T> Future<T> write(String kind, String name, String statement, JsonArray params) {
+        Future<T> resultFuture = Future.future();
+        final JsonObject command = new JsonObject()
+                .put(DatabaseWriterVerticle.KIND, kind)
+                .put(DatabaseWriterVerticle.NAME, name)
+                .put(DatabaseWriterVerticle.STATEMENT, statement)
+                .put(DatabaseWriterVerticle.PARAMS, params);
+        whenConfigured(configured -> DatabaseWriterVerticle.whenDeployed(vertx, dbPath, writeBatchSize, deployed -> {
+            if (deployed.failed()) {
+                resultFuture.fail(deployed.cause());
+                return;
             }
+            vertx.eventBus().<T>send(deployed.result(), command, new DeliveryOptions().setSendTimeout(WRITE_TIMEOUT_MS), reply -> {
+                if (reply.failed()) {
+                    resultFuture.fail(reply.cause());
+                } else {
+                    resultFuture.complete(reply.result().body());
+                }
+            });
+        }));
+        return resultFuture;
+    }
+
+    /**
+     * Runs a statement on a connection of the pool, recording the time waited for the connection and the statement latency.
+     */
+    private <T> Future<T> withConnection(String kind, String name, BiConsumer<SQLConnection, Handler<AsyncResult<T>>> action) {
+        Future<T> resultFuture = Future.future();
+
+        whenConfigured(configured -> {
+            final long requestedAt = System.nanoTime();
+            client.getConnection(connectionResult -> {
+                final long acquiredAt = System.nanoTime();
+                poolWait.observe((acquiredAt - requestedAt) / 1e9);
+                if (connectionResult.failed()) {
+                    statementErrors.inc(kind, name);
+                    resultFuture.fail(connectionResult.cause());
+                    return;
+                }
+                final SQLConnection connection = connectionResult.result();
+                action.accept(connection, result -> {
+                    statementLatency.observe((System.nanoTime() - acquiredAt) / 1e9, kind, name);
+                    connection.close();
+                    if (result.failed()) {
+                        statementErrors.inc(kind, name);
+                        resultFuture.fail(result.cause());
+                    } else {
+                        resultFuture.complete(result.result());
+                    }
+                });
+            });
         });
-        return queryResultFuture;
+        return resultFuture;
     }
 }
@@ -0,0 +1,344 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.metrics.Counter;
+import se.kry.codetest.metrics.Histogram;
+import se.kry.codetest.metrics.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Owns the only write connection to a SQLite file, SQLite runs one writer at a time anyway.
+ * Statements are sent as commands on the event bus and queued, queued commands are run in one
+ * transaction of up to {@code maxBatchSize} commands and answered once it is committed. Each command
+ * runs in its own savepoint, so a failing command is rolled back alone.
+ */
+@Slf4j
+public class DatabaseWriterVerticle extends AbstractVerticle {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    static final String KIND = "kind";
+    static final String NAME = "name";
+    static final String STATEMENT = "statement";
+    static final String PARAMS = "params";
+    static final String QUERY = "query";
+    static final String UPDATE = "update";
+    static final String BATCH = "batch";
+
+    private static final String ADDRESS_PREFIX = "db.writer.";
+    private static final String STOPPED = "The database writer is stopped";
+    // kept in the file, answers the journal mode in use, which stays the old one where WAL is not supported
+    private static final String JOURNAL_MODE = "PRAGMA journal_mode=WAL";
+    // apply to the write connection
+    private static final List<String> PRAGMAS = Arrays.asList(
+            "PRAGMA synchronous=NORMAL",
+            "PRAGMA temp_store=MEMORY",
+            "PRAGMA cache_size=4000",
+            "PRAGMA wal_autocheckpoint=1000");
+    private static final double[] BATCH_BUCKETS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000};
+    private static final Map<Vertx, Map<String, Deployment>> DEPLOYMENTS = new WeakHashMap<>();
+
+    private final String dbPath;
+    private final int maxBatchSize;
+    private final ArrayDeque<Command> queue = new ArrayDeque<>();
+    // commands of the transaction being written, answered once it is committed or rolled back
+    private List<Command> writingBatch = Collections.emptyList();
+    private SQLClient client;
+    private SQLConnection connection;
+    private MessageConsumer<JsonObject> consumer;
+    private boolean writing;
+    private boolean stopped;
+    private Histogram statementLatency;
+    private Counter statementErrors;
+    private Histogram queueWait;
+    private Histogram transactionSize;
+
+    DatabaseWriterVerticle(String dbPath, int maxBatchSize) {
+        this.dbPath = dbPath;
+        // a transaction takes at least one command, otherwise the writer would commit empty ones forever
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    static String address(String dbPath) {
+        return ADDRESS_PREFIX + dbPath;
+    }
+
+    /**
+     * Deploys the writer of the database file once per Vert.x instance, the handler is called with its address once it is deployed.
+     */
+    static synchronized void whenDeployed(Vertx vertx, String dbPath, int maxBatchSize, Handler<AsyncResult<String>> handler) {
+        final Deployment deployment = DEPLOYMENTS.computeIfAbsent(vertx, key -> new HashMap<>())
+                .computeIfAbsent(dbPath, path -> {
+                    final Deployment deploying = new Deployment();
+                    vertx.deployVerticle(new DatabaseWriterVerticle(path, maxBatchSize), deployed -> {
+                        if (deployed.failed()) {
+                            // let the next write try again
+                            forget(vertx, path);
+                        }
+                        deploying.complete(deployed.map(id -> address(path)));
+                    });
+                    return deploying;
+                });
+        deployment.whenDone(handler);
+    }
+
+    private static synchronized void forget(Vertx vertx, String dbPath) {
+        final Map<String, Deployment> deployments = DEPLOYMENTS.get(vertx);
+        if (deployments != null) {
+            deployments.remove(dbPath);
+        }
+    }
+
+    @Override
+    public void start(Future<Void> startFuture) {
+        final Metrics metrics = Metrics.get(vertx);
+        statementLatency = metrics.histogram("db_statement_seconds", "Time to run a statement once a connection is acquired",
+                Histogram.LATENCY_BUCKETS, "kind", "statement");
+        statementErrors = metrics.counter("db_statement_errors_total", "Statements that failed", "kind", "statement");
+        queueWait = metrics.histogram("db_write_queue_seconds", "Time a write waited in the queue of the writer", Histogram.LATENCY_BUCKETS);
+        transactionSize = metrics.histogram("db_write_transaction_commands", "Writes committed together in one transaction", BATCH_BUCKETS);
+        metrics.gauge("db_write_queue_depth", "Writes waiting for the writer", queue::size);
+
+        client = JDBCClient.createNonShared(vertx, new JsonObject()
+                .put("url", "jdbc:sqlite:" + dbPath)
+                .put("driver_class", "org.sqlite.JDBC")
+                .put("max_pool_size", 1));
+        client.getConnection(connected -> {
+            if (connected.failed()) {
+                startFuture.fail(connected.cause());
+                return;
+            }
+            connection = connected.result();
+            enableWal().compose(enabled -> configure(0, Future.future())).compose(configured -> {
+                Future<Void> autoCommit = Future.future();
+                connection.setAutoCommit(false, autoCommit);
+                return autoCommit;
+            }).setHandler(configured -> {
+                if (configured.failed()) {
+                    startFuture.fail(configured.cause());
+                    return;
+                }
+                consumer = vertx.eventBus().localConsumer(address(dbPath), this::enqueue);
+                startFuture.complete();
+            });
+        });
+    }
+
+    @Override
+    public void stop(Future<Void> stopFuture) {
+        forget(vertx, dbPath);
+        stopped = true;
+        if (consumer != null) {
+            consumer.unregister();
+        }
+        // closing the connection rolls back the transaction being written
+        writingBatch.forEach(command -> command.message.fail(0, STOPPED));
+        writingBatch = Collections.emptyList();
+        queue.forEach(command -> command.message.fail(0, STOPPED));
+        queue.clear();
+        if (connection == null) {
+            client.close(stopFuture);
+            return;
+        }
+        connection.close(closed -> client.close(stopFuture));
+    }
+
+    private Future<Void> enableWal() {
+        Future<Void> enabled = Future.future();
+        connection.query(JOURNAL_MODE, done -> {
+            if (done.failed()) {
+                enabled.fail(done.cause());
+                return;
+            }
+            final List<JsonArray> results = done.result().getResults();
+            final String journalMode = results.isEmpty() ? null : results.get(0).getString(0);
+            if (!"wal".equalsIgnoreCase(journalMode)) {
+                log.warn("The journal mode of {} is {} instead of WAL, reads wait for the writer", dbPath, journalMode);
+            }
+            enabled.complete();
+        });
+        return enabled;
+    }
+
+    private Future<Void> configure(int index, Future<Void> configured) {
+        if (index == PRAGMAS.size()) {
+            configured.complete();
+            return configured;
+        }
+        connection.execute(PRAGMAS.get(index), done -> {
+            if (done.failed()) {
+                configured.fail(done.cause());
+            } else {
+                configure(index + 1, configured);
+            }
+        });
+        return configured;
+    }
+
+    private void enqueue(Message<JsonObject> message) {
+        queue.add(new Command(message, System.nanoTime()));
+        if (!writing) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() {
+        if (stopped || queue.isEmpty()) {
+            writing = false;
+            writingBatch = Collections.emptyList();
+            return;
+        }
+        writing = true;
+        final List<Command> batch = new ArrayList<>(Math.min(queue.size(), maxBatchSize));
+        writingBatch = batch;
+        final long startedAt = System.nanoTime();
+        while (!queue.isEmpty() && batch.size() < maxBatchSize) {
+            final Command command = queue.poll();
+            queueWait.observe((startedAt - command.enqueuedAt) / 1e9);
+            batch.add(command);
+        }
+        transactionSize.observe(batch.size());
+        run(batch, 0, () -> connection.commit(committed -> {
+            if (stopped) {
+                // already failed by stop
+                return;
+            }
+            if (committed.succeeded()) {
+                batch.forEach(Command::reply);
+                writeNext();
+                return;
+            }
+            log.error("An error occurred while committing {} writes", batch.size(), committed.cause());
+            connection.rollback(rolledBack -> {
+                if (stopped) {
+                    return;
+                }
+                batch.forEach(command -> command.message.fail(0, committed.cause().getMessage()));
+                writeNext();
+            });
+        }));
+    }
+
+    private void run(List<Command> batch, int index, Runnable done) {
+        if (index == batch.size()) {
+            done.run();
+            return;
+        }
+        final Command command = batch.get(index);
+        connection.execute("SAVEPOINT command", savepoint -> {
+            if (savepoint.failed()) {
+                command.failure = savepoint.cause();
+                run(batch, index + 1, done);
+                return;
+            }
+            execute(command, executed -> {
+                if (executed.succeeded()) {
+                    command.result = executed.result();
+                    connection.execute("RELEASE command", released -> run(batch, index + 1, done));
+                } else {
+                    command.failure = executed.cause();
+                    connection.execute("ROLLBACK TO command",
+                            rolledBack -> connection.execute("RELEASE command", released -> run(batch, index + 1, done)));
+                }
+            });
+        });
+    }
+
+    private void execute(Command command, Handler<AsyncResult<Object>> handler) {
+        final JsonObject body = command.message.body();
+        final String kind = body.getString(KIND);
+        final String name = body.getString(NAME);
+        final String statement = body.getString(STATEMENT);
+        final JsonArray params = body.getJsonArray(PARAMS);
+        final long startedAt = System.nanoTime();
+        final Handler<AsyncResult<Object>> timed = result -> {
+            statementLatency.observe((System.nanoTime() - startedAt) / 1e9, kind, name);
+            if (result.failed()) {
+                statementErrors.inc(kind, name);
+            }
+            handler.handle(result);
+        };
+        switch (kind) {
+            case QUERY:
+                connection.queryWithParams(statement, params, result -> timed.handle(result.map(resultSet -> (Object) resultSet.toJson())));
+                break;
+            case UPDATE:
+                connection.updateWithParams(statement, params, result -> timed.handle(result.map(updateResult -> (Object) updateResult.toJson())));
+                break;
+            case BATCH:
+                final List<JsonArray> batchParams = new ArrayList<>(params.size());
+                for (int i = 0; i < params.size(); i++) {
+                    batchParams.add(params.getJsonArray(i));
+                }
+                connection.batchWithParams(statement, batchParams, result -> timed.handle(result.map(updated -> (Object) new JsonArray(updated))));
+                break;
+            default:
+                handler.handle(Future.failedFuture(new IllegalArgumentException("Unknown write kind " + kind)));
+        }
+    }
+
+    private static class Command {
+        private final Message<JsonObject> message;
+        private final long enqueuedAt;
+        private Object result;
+        private Throwable failure;
+
+        Command(Message<JsonObject> message, long enqueuedAt) {
+            this.message = message;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        void reply() {
+            if (failure != null) {
+                message.fail(0, failure.getMessage());
+            } else {
+                message.reply(result);
+            }
+        }
+    }
+
+    /**
+     * Result of the deployment of a writer, handlers registered before it completes are called once it does.
+     */
+    private static class Deployment {
+        private final List<Handler<AsyncResult<String>>> waiting = new ArrayList<>();
+        private AsyncResult<String> result;
+
+        synchronized void whenDone(Handler<AsyncResult<String>> handler) {
+            if (result == null) {
+                waiting.add(handler);
+                return;
+            }
+            handler.handle(result);
+        }
+
+        void complete(AsyncResult<String> deployed) {
+            final List<Handler<AsyncResult<String>>> handlers;
+            synchronized (this) {
+                result = deployed;
+                handlers = new ArrayList<>(waiting);
+                waiting.clear();
+            }
+            handlers.forEach(handler -> handler.handle(deployed));
+        }
+    }
+}
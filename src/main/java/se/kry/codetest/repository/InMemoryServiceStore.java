@@ -0,0 +1,92 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.Future;
+import se.kry.codetest.model.ProbeType;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the services in memory only, for tests and deployments that do not need them after a restart.
+ * Every call completes right away on the calling thread.
+ */
+public class InMemoryServiceStore implements ServiceStore {
+
+    private final ServiceTable table = new ServiceTable();
+
+    @Override
+    public Future<Boolean> createDb() {
+        return Future.succeededFuture(true);
+    }
+
+    @Override
+    public synchronized Future<Boolean> truncate() {
+        table.clear();
+        return Future.succeededFuture(true);
+    }
+
+    @Override
+    public synchronized Future<List<Service>> findAll() {
+        return Future.succeededFuture(table.all());
+    }
+
+    @Override
+    public synchronized Future<List<Service>> findPage(String afterId, int limit) {
+        return Future.succeededFuture(table.page(afterId, limit));
+    }
+
+    @Override
+    public synchronized Future<Service> findById(String id) {
+        return Future.succeededFuture(table.get(id));
+    }
+
+    @Override
+    public synchronized Future<String> save(String url, String name, ServiceStatus serviceStatus, long pollIntervalMs, ProbeType probeType) {
+        final Service service = ServiceTable.newService(url, name, serviceStatus, pollIntervalMs, probeType);
+        if (!table.insert(service)) {
+            return Future.failedFuture(new IllegalStateException(ServiceTable.DUPLICATE));
+        }
+        return Future.succeededFuture(service.getId());
+    }
+
+    @Override
+    public synchronized Future<List<Service>> saveAll(List<Service> services) {
+        final List<Service> saved = new ArrayList<>(services.size());
+        services.forEach(svc -> {
+            final Service service = ServiceTable.newService(svc.getUrl(), svc.getName(), ServiceStatus.UNKNOWN, svc.getPollIntervalMs(), svc.getProbeType());
+            saved.add(table.insert(service) ? service : null);
+        });
+        return Future.succeededFuture(saved);
+    }
+
+    @Override
+    public synchronized Future<Boolean> update(Service service) {
+        try {
+            return Future.succeededFuture(table.update(service) != null);
+        } catch (IllegalStateException e) {
+            return Future.failedFuture(e);
+        }
+    }
+
+    @Override
+    public synchronized Future<Boolean> updateStatus(String id, ServiceStatus status) {
+        return Future.succeededFuture(table.updateStatus(id, status));
+    }
+
+    @Override
+    public synchronized Future<Integer> updateStatuses(Map<String, ServiceStatus> statuses) {
+        final int updated = (int) statuses.entrySet()
+                .stream()
+                .filter(entry -> table.updateStatus(entry.getKey(), entry.getValue()))
+                .count();
+        return Future.succeededFuture(updated);
+    }
+
+    @Override
+    public synchronized Future<Boolean> delete(String id) {
+        return Future.succeededFuture(table.remove(id) != null);
+    }
+}
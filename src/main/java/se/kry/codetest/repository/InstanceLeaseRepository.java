@@ -0,0 +1,73 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.UpdateResult;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class InstanceLeaseRepository {
+
+    private final DBConnector connector;
+
+    public InstanceLeaseRepository(Vertx vertx) {
+        this.connector = new DBConnector(vertx);
+    }
+
+    public Future<Boolean> createDb() {
+        final Future<ResultSet> createDbQuery = connector.query("lease.create_table", "CREATE TABLE IF NOT EXISTS poller_instance (" +
+                "id CHAR(128) PRIMARY KEY NOT NULL UNIQUE," +
+                "heartbeat INTEGER NOT NULL " +
+                ")");
+
+        Future<Boolean> createDbFuture = Future.future();
+        createDbQuery.setHandler(createDbQueryResult -> {
+            if (createDbQueryResult.failed()) {
+                createDbFuture.fail(createDbQueryResult.cause());
+            } else {
+                createDbFuture.complete(true);
+            }
+        });
+
+        return createDbFuture;
+    }
+
+    public Future<Boolean> renew(String instanceId, long heartbeat) {
+        JsonArray jsonArray = new JsonArray();
+        jsonArray.add(instanceId);
+        jsonArray.add(heartbeat);
+        final Future<UpdateResult> renewQuery = connector.update("lease.renew", "INSERT OR REPLACE INTO poller_instance (id, heartbeat) VALUES(?,?)", jsonArray);
+
+        return renewQuery.map(renewResult -> renewResult.getUpdated() == 1);
+    }
+
+    public Future<List<String>> findAlive(long heartbeatAfter) {
+        JsonArray jsonArray = new JsonArray();
+        jsonArray.add(heartbeatAfter);
+        final Future<ResultSet> selectQuery = connector.query("lease.find_alive", "SELECT id FROM poller_instance WHERE heartbeat > ? ORDER BY id", jsonArray);
+
+        return selectQuery.map(queryResult -> queryResult.getRows()
+                .stream()
+                .map(row -> row.getString("id"))
+                .collect(Collectors.toList()));
+    }
+
+    public Future<Integer> deleteExpired(long heartbeatBefore) {
+        JsonArray jsonArray = new JsonArray();
+        jsonArray.add(heartbeatBefore);
+        final Future<UpdateResult> deleteQuery = connector.update("lease.delete_expired", "DELETE FROM poller_instance WHERE heartbeat <= ?", jsonArray);
+
+        return deleteQuery.map(UpdateResult::getUpdated);
+    }
+
+    public Future<Boolean> release(String instanceId) {
+        JsonArray jsonArray = new JsonArray();
+        jsonArray.add(instanceId);
+        final Future<UpdateResult> deleteQuery = connector.update("lease.release", "DELETE FROM poller_instance WHERE id = ?", jsonArray);
+
+        return deleteQuery.map(deleteResult -> deleteResult.getUpdated() == 1);
+    }
+}
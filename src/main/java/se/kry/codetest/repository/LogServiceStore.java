@@ -0,0 +1,736 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.model.ProbeType;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the services in memory and appends every change of a service definition to a log file, while
+ * statuses are written in place in a memory-mapped {@link ServiceLogIndex}. Writes complete on the calling
+ * thread once handed to the operating system, they survive a crash of the process and are forced to disk
+ * every {@code syncMs}, so up to that much can be lost on a power failure. The log is compacted when most
+ * of it is made of replaced or deleted definitions, calls only wait for the compacted log to replace it.
+ */
+@Slf4j
+public class LogServiceStore implements ServiceStore {
+    public static final long DEFAULT_SYNC_MS = 1000;
+    public static final long DEFAULT_COMPACT_INTERVAL_MS = 60 * 1000;
+
+    static final String LOG_FILE = "services.log";
+    static final String INDEX_FILE = "services.idx";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    // frame of a record: payload length and checksum
+    private static final int FRAME_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;
+    // logs smaller than this are never compacted
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+    private final Vertx vertx;
+    private final Path directory;
+    private final long syncMs;
+    private final long compactIntervalMs;
+    private final ServiceTable table = new ServiceTable();
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Map<Integer, String> idsBySlot = new HashMap<>();
+    // size of the record currently defining each service, to know how much of the log is still live
+    private final Map<String, Integer> recordBytes = new HashMap<>();
+    private final TreeSet<Integer> freeSlots = new TreeSet<>();
+    private int nextSlot;
+    private long liveBytes;
+    private FileChannel logFile;
+    private long logLength;
+    private ServiceLogIndex index;
+    private long syncTimer = -1;
+    private long compactTimer = -1;
+    private boolean compacting;
+    // a compaction started before a truncation is dropped
+    private long truncations;
+
+    public LogServiceStore(Vertx vertx, String directory, long syncMs, long compactIntervalMs) {
+        this.vertx = vertx;
+        this.directory = Paths.get(directory);
+        this.syncMs = syncMs;
+        this.compactIntervalMs = compactIntervalMs;
+    }
+
+    @Override
+    public Future<Boolean> createDb() {
+        Future<Boolean> openFuture = Future.future();
+        vertx.<Boolean>executeBlocking(opening -> {
+            try {
+                open();
+                opening.complete(true);
+            } catch (IOException e) {
+                opening.fail(e);
+            }
+        }, opened -> {
+            if (opened.succeeded()) {
+                syncTimer = vertx.setPeriodic(syncMs, timerId -> sync());
+                compactTimer = vertx.setPeriodic(compactIntervalMs, timerId -> compactIfNeeded());
+            }
+            openFuture.handle(opened);
+        });
+        return openFuture;
+    }
+
+    @Override
+    public Future<Void> close() {
+        vertx.cancelTimer(syncTimer);
+        vertx.cancelTimer(compactTimer);
+        Future<Void> closeFuture = Future.future();
+        vertx.<Void>executeBlocking(closing -> {
+            synchronized (this) {
+                try {
+                    if (logFile != null) {
+                        logFile.force(false);
+                        logFile.close();
+                        index.close();
+                    }
+                    closing.complete();
+                } catch (IOException e) {
+                    closing.fail(e);
+                }
+            }
+        }, closeFuture);
+        return closeFuture;
+    }
+
+    @Override
+    public synchronized Future<Boolean> truncate() {
+        try {
+            logFile.truncate(0);
+            logLength = 0;
+            truncations++;
+            index.reset();
+            table.clear();
+            slots.clear();
+            idsBySlot.clear();
+            recordBytes.clear();
+            freeSlots.clear();
+            nextSlot = 0;
+            liveBytes = 0;
+            return Future.succeededFuture(true);
+        } catch (IOException e) {
+            return Future.failedFuture(e);
+        }
+    }
+
+    @Override
+    public synchronized Future<List<Service>> findAll() {
+        return Future.succeededFuture(table.all());
+    }
+
+    @Override
+    public synchronized Future<List<Service>> findPage(String afterId, int limit) {
+        return Future.succeededFuture(table.page(afterId, limit));
+    }
+
+    @Override
+    public synchronized Future<Service> findById(String id) {
+        return Future.succeededFuture(table.get(id));
+    }
+
+    @Override
+    public synchronized Future<String> save(String url, String name, ServiceStatus serviceStatus, long pollIntervalMs, ProbeType probeType) {
+        final Service service = ServiceTable.newService(url, name, serviceStatus, pollIntervalMs, probeType);
+        try {
+            if (!insert(service)) {
+                return Future.failedFuture(new IllegalStateException(ServiceTable.DUPLICATE));
+            }
+            return Future.succeededFuture(service.getId());
+        } catch (IOException e) {
+            return Future.failedFuture(e);
+        }
+    }
+
+    @Override
+    public synchronized Future<List<Service>> saveAll(List<Service> services) {
+        final List<Service> saved = new ArrayList<>(services.size());
+        try {
+            for (Service svc : services) {
+                final Service service = ServiceTable.newService(svc.getUrl(), svc.getName(), ServiceStatus.UNKNOWN, svc.getPollIntervalMs(), svc.getProbeType());
+                saved.add(insert(service) ? service : null);
+            }
+            return Future.succeededFuture(saved);
+        } catch (IOException e) {
+            return Future.failedFuture(e);
+        }
+    }
+
+    @Override
+    public synchronized Future<Boolean> update(Service service) {
+        final Service stored = table.get(service.getId());
+        final Service updated;
+        try {
+            updated = table.update(service);
+        } catch (IllegalStateException e) {
+            return Future.failedFuture(e);
+        }
+        if (updated == null) {
+            return Future.succeededFuture(false);
+        }
+        try {
+            append(updated, slots.get(updated.getId()));
+            return Future.succeededFuture(true);
+        } catch (IOException e) {
+            table.remove(updated.getId());
+            table.put(stored);
+            return Future.failedFuture(e);
+        }
+    }
+
+    @Override
+    public synchronized Future<Boolean> updateStatus(String id, ServiceStatus status) {
+        try {
+            return Future.succeededFuture(writeStatus(id, status));
+        } catch (IOException e) {
+            return Future.failedFuture(e);
+        }
+    }
+
+    @Override
+    public synchronized Future<Integer> updateStatuses(Map<String, ServiceStatus> statuses) {
+        try {
+            int updated = 0;
+            for (Map.Entry<String, ServiceStatus> entry : statuses.entrySet()) {
+                if (writeStatus(entry.getKey(), entry.getValue())) {
+                    updated++;
+                }
+            }
+            return Future.succeededFuture(updated);
+        } catch (IOException e) {
+            return Future.failedFuture(e);
+        }
+    }
+
+    @Override
+    public synchronized Future<Boolean> delete(String id) {
+        final Integer slot = slots.get(id);
+        if (slot == null) {
+            return Future.succeededFuture(false);
+        }
+        try {
+            write(deleteRecord(slot));
+            index.setCoveredLogLength(logLength);
+            forget(id);
+            return Future.succeededFuture(true);
+        } catch (IOException e) {
+            return Future.failedFuture(e);
+        }
+    }
+
+    /**
+     * @return false when the url or name is already registered
+     */
+    private boolean insert(Service service) throws IOException {
+        if (!table.insert(service)) {
+            return false;
+        }
+        try {
+            append(service, allocateSlot(service.getId()));
+            return true;
+        } catch (IOException e) {
+            forget(service.getId());
+            throw e;
+        }
+    }
+
+    private boolean writeStatus(String id, ServiceStatus status) throws IOException {
+        final Integer slot = slots.get(id);
+        if (slot == null || !table.updateStatus(id, status)) {
+            return false;
+        }
+        index.setStatus(slot, status);
+        return true;
+    }
+
+    private int allocateSlot(String id) {
+        final Integer free = freeSlots.pollFirst();
+        final int slot = free != null ? free : nextSlot++;
+        slots.put(id, slot);
+        idsBySlot.put(slot, id);
+        return slot;
+    }
+
+    private void forget(String id) {
+        table.remove(id);
+        final Integer slot = slots.remove(id);
+        if (slot != null) {
+            idsBySlot.remove(slot);
+            index.free(slot);
+            freeSlots.add(slot);
+        }
+        final Integer bytes = recordBytes.remove(id);
+        if (bytes != null) {
+            liveBytes -= bytes;
+        }
+    }
+
+    private void append(Service service, int slot) throws IOException {
+        final ByteBuffer record = putRecord(slot, service);
+        final int bytes = record.remaining();
+        final long offset = write(record);
+        index.setOffset(slot, offset);
+        index.setStatus(slot, service.getServiceStatus());
+        index.setCoveredLogLength(logLength);
+        final Integer previous = recordBytes.put(service.getId(), bytes);
+        liveBytes += bytes - (previous != null ? previous : 0);
+    }
+
+    private long write(ByteBuffer record) throws IOException {
+        final long offset = logLength;
+        while (record.hasRemaining()) {
+            logLength += logFile.write(record, logLength);
+        }
+        return offset;
+    }
+
+    private void sync() {
+        final FileChannel syncedLog;
+        final ServiceLogIndex syncedIndex;
+        synchronized (this) {
+            syncedLog = logFile;
+            syncedIndex = index;
+        }
+        vertx.executeBlocking(syncing -> {
+            try {
+                syncedLog.force(false);
+                syncedIndex.force();
+                syncing.complete();
+            } catch (IOException e) {
+                syncing.fail(e);
+            }
+        }, false, synced -> {
+            // a compaction may have closed the synced log, it forced its own files
+            if (synced.failed() && syncedLog.isOpen()) {
+                log.error("An error occurred while syncing the service log", synced.cause());
+            }
+        });
+    }
+
+    private void compactIfNeeded() {
+        synchronized (this) {
+            if (logLength < MIN_COMPACT_BYTES || logLength < 2 * liveBytes) {
+                return;
+            }
+        }
+        vertx.executeBlocking(compacting -> {
+            try {
+                compact();
+                compacting.complete();
+            } catch (IOException e) {
+                compacting.fail(e);
+            }
+        }, false, compacted -> {
+            if (compacted.failed()) {
+                log.error("An error occurred while compacting the service log", compacted.cause());
+            }
+        });
+    }
+
+    /**
+     * Rewrites the log with only the records defining the current services, in the same slots.
+     */
+    void compact() throws IOException {
+        final Compaction compaction = writeCompaction();
+        if (compaction != null) {
+            swapCompaction(compaction);
+        }
+    }
+
+    /**
+     * Writes the records of the current services to a new file without holding the lock.
+     *
+     * @return null when a compaction is already running
+     */
+    Compaction writeCompaction() throws IOException {
+        final Map<Integer, Service> live = new HashMap<>();
+        final Compaction compaction;
+        synchronized (this) {
+            if (compacting) {
+                return null;
+            }
+            compacting = true;
+            idsBySlot.forEach((slot, id) -> live.put(slot, table.get(id)));
+            compaction = new Compaction(directory.resolve(LOG_FILE + ".compact"), logLength, truncations);
+        }
+        try (FileChannel compacted = FileChannel.open(compaction.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<Integer, Service> entry : live.entrySet()) {
+                final ByteBuffer record = putRecord(entry.getKey(), entry.getValue());
+                compaction.offsets.put(entry.getKey(), compaction.length);
+                while (record.hasRemaining()) {
+                    compaction.length += compacted.write(record);
+                }
+            }
+            compacted.force(true);
+            return compaction;
+        } catch (IOException e) {
+            synchronized (this) {
+                compacting = false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the records written since the compaction started to the compacted file, which then replaces the log.
+     * Only the records appended while the others were copied are copied under the lock, the new log and the index
+     * are forced once it is released.
+     */
+    void swapCompaction(Compaction compaction) throws IOException {
+        try {
+            final FileChannel swapped;
+            try (FileChannel compacted = FileChannel.open(compaction.path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                final long copied = copyTail(compaction, compacted);
+                compacted.force(true);
+                swapped = swap(compaction, compacted, copied);
+            }
+            if (swapped == null) {
+                return;
+            }
+            try {
+                swapped.force(false);
+                index.force();
+            } catch (ClosedChannelException e) {
+                // closed meanwhile, close forced it
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * Copies the records appended since the snapshot without holding the lock, the log is only appended to
+     * below its length until a truncation, which drops the compaction.
+     *
+     * @return the log position copied up to
+     */
+    private long copyTail(Compaction compaction, FileChannel compacted) throws IOException {
+        final FileChannel source;
+        final long copyTo;
+        synchronized (this) {
+            if (!logFile.isOpen() || truncations != compaction.truncations) {
+                return compaction.snapshotLength;
+            }
+            source = logFile;
+            copyTo = logLength;
+        }
+        try {
+            return transfer(source, compaction.snapshotLength, copyTo, compacted);
+        } catch (ClosedChannelException e) {
+            // closed meanwhile, the compaction is dropped by the swap
+            return compaction.snapshotLength;
+        }
+    }
+
+    /**
+     * @return the new log, or null when the compaction was dropped
+     */
+    private synchronized FileChannel swap(Compaction compaction, FileChannel compacted, long copied) throws IOException {
+        // closed or truncated meanwhile
+        if (!logFile.isOpen() || truncations != compaction.truncations) {
+            compacted.close();
+            Files.deleteIfExists(compaction.path);
+            return null;
+        }
+        final long before = logLength;
+        if (transfer(logFile, copied, logLength, compacted) < logLength) {
+            throw new IOException("The service log is shorter than its length " + logLength);
+        }
+        compacted.close();
+        final long tail = logLength - compaction.snapshotLength;
+        logFile.close();
+        Files.move(compaction.path, directory.resolve(LOG_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        logFile = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        for (Integer slot : idsBySlot.keySet()) {
+            // records of the tail moved with it, the others are the ones of the snapshot
+            final long offset = index.getOffset(slot);
+            index.setOffset(slot, offset >= compaction.snapshotLength
+                    ? compaction.length + offset - compaction.snapshotLength
+                    : compaction.offsets.get(slot));
+        }
+        logLength = compaction.length + tail;
+        index.setCoveredLogLength(logLength);
+        log.info("Compacted the service log from {} to {} bytes", before, logLength);
+        return logFile;
+    }
+
+    /**
+     * @return the position reached, short of {@code to} when the source was truncated meanwhile
+     */
+    private static long transfer(FileChannel source, long from, long to, FileChannel target) throws IOException {
+        long position = from;
+        while (position < to) {
+            final long transferred = source.transferTo(position, to - position, target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+        }
+        return position;
+    }
+
+    private synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        logFile = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = ServiceLogIndex.open(directory.resolve(INDEX_FILE));
+        final long size = logFile.size();
+        if (!index.isValid(size) || !loadIndexed()) {
+            log.warn("The service log index is missing or out of date, replaying the whole log with unknown statuses");
+            clearLoaded();
+            index.reset();
+            replay(0, size);
+        } else {
+            replay(index.getCoveredLogLength(), size);
+        }
+        index.setCoveredLogLength(logLength);
+        for (int slot = 0; slot < nextSlot; slot++) {
+            if (!idsBySlot.containsKey(slot)) {
+                freeSlots.add(slot);
+            }
+        }
+        log.info("Opened the service log with {} services", table.size());
+    }
+
+    /**
+     * Loads the services whose records are referenced by the index.
+     *
+     * @return false when a referenced record is not the one expected, the index then has to be rebuilt
+     */
+    private boolean loadIndexed() throws IOException {
+        for (int slot = 0; slot < index.getCapacity(); slot++) {
+            final long offset = index.getOffset(slot);
+            if (offset < 0) {
+                continue;
+            }
+            final Record record = read(offset);
+            if (record == null || record.type != PUT || record.slot != slot) {
+                return false;
+            }
+            load(record.service.withServiceStatus(index.getStatus(slot)), slot, record.bytes);
+        }
+        logLength = index.getCoveredLogLength();
+        return true;
+    }
+
+    /**
+     * Applies the records between the offsets, a record cut by a crash ends the log and is dropped.
+     */
+    private void replay(long from, long to) throws IOException {
+        long position = from;
+        while (position < to) {
+            final Record record = read(position);
+            if (record == null) {
+                log.warn("Dropping {} bytes of incomplete records at the end of the service log", to - position);
+                logFile.truncate(position);
+                break;
+            }
+            if (record.type == PUT) {
+                final String previous = idsBySlot.get(record.slot);
+                if (previous != null && !previous.equals(record.service.getId())) {
+                    unload(previous);
+                }
+                final Service stored = table.get(record.service.getId());
+                final ServiceStatus status = stored != null ? stored.getServiceStatus() : ServiceStatus.UNKNOWN;
+                load(record.service.withServiceStatus(status), record.slot, record.bytes);
+                index.setOffset(record.slot, position);
+                index.setStatus(record.slot, status);
+            } else {
+                final String deleted = idsBySlot.get(record.slot);
+                if (deleted != null) {
+                    unload(deleted);
+                }
+                index.free(record.slot);
+            }
+            position += record.bytes;
+        }
+        logLength = position;
+    }
+
+    private void load(Service service, int slot, int bytes) {
+        final Integer previousSlot = slots.get(service.getId());
+        if (previousSlot != null && previousSlot != slot) {
+            idsBySlot.remove(previousSlot);
+        }
+        table.remove(service.getId());
+        table.put(service);
+        slots.put(service.getId(), slot);
+        idsBySlot.put(slot, service.getId());
+        final Integer previous = recordBytes.put(service.getId(), bytes);
+        liveBytes += bytes - (previous != null ? previous : 0);
+        nextSlot = Math.max(nextSlot, slot + 1);
+    }
+
+    private void unload(String id) {
+        table.remove(id);
+        final Integer slot = slots.remove(id);
+        if (slot != null) {
+            idsBySlot.remove(slot);
+        }
+        final Integer bytes = recordBytes.remove(id);
+        if (bytes != null) {
+            liveBytes -= bytes;
+        }
+    }
+
+    private void clearLoaded() {
+        table.clear();
+        slots.clear();
+        idsBySlot.clear();
+        recordBytes.clear();
+        liveBytes = 0;
+        nextSlot = 0;
+    }
+
+    /**
+     * @return the record at the offset or null when it is incomplete or corrupted
+     */
+    private Record read(long offset) throws IOException {
+        final ByteBuffer frame = ByteBuffer.allocate(FRAME_BYTES);
+        if (readFully(frame, offset) < FRAME_BYTES) {
+            return null;
+        }
+        frame.flip();
+        final int length = frame.getInt();
+        final int checksum = frame.getInt();
+        if (length <= 0 || length > MAX_RECORD_BYTES) {
+            return null;
+        }
+        final ByteBuffer payload = ByteBuffer.allocate(length);
+        if (readFully(payload, offset + FRAME_BYTES) < length || checksum(payload.array()) != checksum) {
+            return null;
+        }
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+        final byte type = in.readByte();
+        final int slot = in.readInt();
+        if (type == DELETE) {
+            return new Record(type, slot, null, FRAME_BYTES + length);
+        }
+        final String id = in.readUTF();
+        final String name = in.readBoolean() ? in.readUTF() : null;
+        final String url = in.readUTF();
+        final long creationDate = in.readLong();
+        final long pollIntervalMs = in.readLong();
+        final byte probeType = in.readByte();
+        final Service service = Service.builder()
+                .id(id)
+                .name(name)
+                .url(url)
+                .serviceStatus(ServiceStatus.UNKNOWN)
+                .creationDate(LocalDateTime.ofInstant(Instant.ofEpochMilli(creationDate), ZoneId.systemDefault()))
+                .pollIntervalMs(pollIntervalMs)
+                .probeType(probeType >= 0 ? ProbeType.values()[probeType] : null)
+                .build();
+        return new Record(type, slot, service, FRAME_BYTES + length);
+    }
+
+    private int readFully(ByteBuffer buffer, long offset) throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            final int n = logFile.read(buffer, offset + read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    private static ByteBuffer putRecord(int slot, Service service) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(PUT);
+        out.writeInt(slot);
+        out.writeUTF(service.getId());
+        out.writeBoolean(service.getName() != null);
+        if (service.getName() != null) {
+            out.writeUTF(service.getName());
+        }
+        out.writeUTF(service.getUrl());
+        out.writeLong(service.getCreationDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        out.writeLong(service.getPollIntervalMs());
+        out.writeByte(service.getProbeType() != null ? service.getProbeType().ordinal() : -1);
+        return frame(bytes.toByteArray());
+    }
+
+    private static ByteBuffer deleteRecord(int slot) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(8);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(DELETE);
+        out.writeInt(slot);
+        return frame(bytes.toByteArray());
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        final ByteBuffer record = ByteBuffer.allocate(FRAME_BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putInt(checksum(payload));
+        record.put(payload);
+        record.flip();
+        return record;
+    }
+
+    private static int checksum(byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    static class Compaction {
+        private final Path path;
+        // length of the log when the services were copied, the records after it are appended as they are
+        private final long snapshotLength;
+        private final long truncations;
+        private final Map<Integer, Long> offsets = new HashMap<>();
+        private long length;
+
+        Compaction(Path path, long snapshotLength, long truncations) {
+            this.path = path;
+            this.snapshotLength = snapshotLength;
+            this.truncations = truncations;
+        }
+    }
+
+    private static class Record {
+        private final byte type;
+        private final int slot;
+        private final Service service;
+        private final int bytes;
+
+        Record(byte type, int slot, Service service, int bytes) {
+            this.type = type;
+            this.slot = slot;
+            this.service = service;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.UpdateResult;
+import se.kry.codetest.model.HistoryBucket;
+import se.kry.codetest.model.HistoryResolution;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class PollHistoryRepository {
+
+    private final DBConnector connector;
+
+    public PollHistoryRepository(Vertx vertx) {
+        this.connector = new DBConnector(vertx);
+    }
+
+    public Future<Boolean> createDb() {
+        final Future<ResultSet> createDbQuery = connector.query("history.create_table", "CREATE TABLE IF NOT EXISTS poll_history (" +
+                "service_id CHAR(128) NOT NULL," +
+                "resolution VARCHAR(12) NOT NULL," +
+                "bucket_start INTEGER NOT NULL," +
+                "probes INTEGER NOT NULL," +
+                "failures INTEGER NOT NULL," +
+                "latency_sum INTEGER NOT NULL," +
+                "latency_max INTEGER NOT NULL," +
+                "PRIMARY KEY (service_id, resolution, bucket_start)" +
+                ")");
+
+        Future<Boolean> createDbFuture = Future.future();
+        createDbQuery
+                .compose(created -> connector.query("history.create_index", "CREATE INDEX IF NOT EXISTS poll_history_retention ON poll_history (resolution, bucket_start)"))
+                .setHandler(createDbQueryResult -> {
+                    if (createDbQueryResult.failed()) {
+                        createDbFuture.fail(createDbQueryResult.cause());
+                    } else {
+                        createDbFuture.complete(true);
+                    }
+                });
+
+        return createDbFuture;
+    }
+
+    /**
+     * Adds the probes, failures and latencies of each bucket to the stored ones.
+     */
+    public Future<Integer> add(List<HistoryBucket> buckets) {
+        final List<JsonArray> insertParams = buckets.stream()
+                .map(bucket -> new JsonArray()
+                        .add(bucket.getServiceId())
+                        .add(bucket.getResolution())
+                        .add(bucket.getBucketStart()))
+                .collect(Collectors.toList());
+        final List<JsonArray> updateParams = buckets.stream()
+                .map(bucket -> new JsonArray()
+                        .add(bucket.getProbes())
+                        .add(bucket.getFailures())
+                        .add(bucket.getLatencySumMs())
+                        .add(bucket.getLatencyMaxMs())
+                        .add(bucket.getServiceId())
+                        .add(bucket.getResolution())
+                        .add(bucket.getBucketStart()))
+                .collect(Collectors.toList());
+
+        return connector.batchUpdate("history.insert_buckets", "INSERT OR IGNORE INTO poll_history (service_id, resolution, bucket_start, probes, failures, latency_sum, latency_max) VALUES(?,?,?,0,0,0,0)", insertParams)
+                .compose(inserted -> connector.batchUpdate("history.add_to_buckets", "UPDATE poll_history SET probes = probes + ?, failures = failures + ?, latency_sum = latency_sum + ?, latency_max = MAX(latency_max, ?) " +
+                        "WHERE service_id = ? AND resolution = ? AND bucket_start = ?", updateParams))
+                .map(updated -> updated.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    public Future<List<HistoryBucket>> find(String serviceId, HistoryResolution resolution, long from, long to) {
+        JsonArray jsonArray = new JsonArray();
+        jsonArray.add(serviceId);
+        jsonArray.add(resolution);
+        jsonArray.add(resolution.bucketStart(from));
+        jsonArray.add(to);
+        final Future<ResultSet> selectQuery = connector.query("history.find", "SELECT service_id, resolution, bucket_start, probes, failures, latency_sum, latency_max FROM poll_history " +
+                "WHERE service_id = ? AND resolution = ? AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start", jsonArray);
+
+        Future<List<HistoryBucket>> selectFuture = Future.future();
+        selectQuery.setHandler(queryResult -> {
+            if (queryResult.failed()) {
+                selectFuture.fail(queryResult.cause());
+            } else {
+                selectFuture.complete(queryResult.result()
+                        .getRows()
+                        .stream()
+                        .map(this::toHistoryBucket)
+                        .collect(Collectors.toList()));
+            }
+        });
+
+        return selectFuture;
+    }
+
+    public Future<Integer> deleteBefore(HistoryResolution resolution, long before) {
+        JsonArray jsonArray = new JsonArray();
+        jsonArray.add(resolution);
+        jsonArray.add(before);
+        final Future<UpdateResult> deleteQuery = connector.update("history.delete_before", "DELETE FROM poll_history WHERE resolution = ? AND bucket_start < ?", jsonArray);
+
+        return deleteQuery.map(UpdateResult::getUpdated);
+    }
+
+    public Future<Integer> deleteService(String serviceId) {
+        JsonArray jsonArray = new JsonArray();
+        jsonArray.add(serviceId);
+        final Future<UpdateResult> deleteQuery = connector.update("history.delete_service", "DELETE FROM poll_history WHERE service_id = ?", jsonArray);
+
+        return deleteQuery.map(UpdateResult::getUpdated);
+    }
+
+    private HistoryBucket toHistoryBucket(JsonObject row) {
+        return HistoryBucket.builder()
+                .serviceId(row.getString("service_id"))
+                .resolution(HistoryResolution.valueOf(row.getString("resolution")))
+                .bucketStart(row.getLong("bucket_start"))
+                .probes(row.getLong("probes"))
+                .failures(row.getLong("failures"))
+                .latencySumMs(row.getLong("latency_sum"))
+                .latencyMaxMs(row.getLong("latency_max"))
+                .build();
+    }
+}
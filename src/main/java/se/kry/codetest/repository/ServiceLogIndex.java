@@ -0,0 +1,128 @@
+package se.kry.codetest.repository;
+
+import se.kry.codetest.model.ServiceStatus;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Memory-mapped index of {@link LogServiceStore}: for each slot, the offset in the log of the record
+ * defining the service held in the slot and the last status of that service. Statuses are written in
+ * place, so status updates never grow the log. The header holds the length of the log the index is
+ * up to date with, records after it are replayed on open.
+ */
+class ServiceLogIndex {
+
+    private static final int MAGIC = 0x53564958;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int ENTRY_BYTES = 16;
+    private static final int MAGIC_POSITION = 0;
+    private static final int VERSION_POSITION = 4;
+    private static final int COVERED_LOG_LENGTH_POSITION = 8;
+    private static final int STATUS_FIELD = 8;
+    private static final int MIN_CAPACITY = 1024;
+
+    private final RandomAccessFile file;
+    private MappedByteBuffer buffer;
+    private int capacity;
+
+    private ServiceLogIndex(RandomAccessFile file) throws IOException {
+        this.file = file;
+        map(Math.max(MIN_CAPACITY, (int) ((file.length() - HEADER_BYTES) / ENTRY_BYTES)));
+    }
+
+    static ServiceLogIndex open(Path path) throws IOException {
+        return new ServiceLogIndex(new RandomAccessFile(path.toFile(), "rw"));
+    }
+
+    /**
+     * @return whether the index was written by this version and is not ahead of the log, which happens when the log was replaced
+     */
+    boolean isValid(long logLength) {
+        return buffer.getInt(MAGIC_POSITION) == MAGIC
+                && buffer.getInt(VERSION_POSITION) == VERSION
+                && getCoveredLogLength() <= logLength;
+    }
+
+    void reset() {
+        for (int position = 0; position < buffer.capacity(); position += Long.BYTES) {
+            buffer.putLong(position, 0);
+        }
+        buffer.putInt(MAGIC_POSITION, MAGIC);
+        buffer.putInt(VERSION_POSITION, VERSION);
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getCoveredLogLength() {
+        return buffer.getLong(COVERED_LOG_LENGTH_POSITION);
+    }
+
+    void setCoveredLogLength(long length) {
+        buffer.putLong(COVERED_LOG_LENGTH_POSITION, length);
+    }
+
+    /**
+     * @return the offset of the record of the slot, -1 when the slot is free
+     */
+    long getOffset(int slot) {
+        return slot < capacity ? buffer.getLong(position(slot)) - 1 : -1;
+    }
+
+    void setOffset(int slot, long offset) throws IOException {
+        ensureCapacity(slot);
+        buffer.putLong(position(slot), offset + 1);
+    }
+
+    ServiceStatus getStatus(int slot) {
+        final int status = buffer.get(position(slot) + STATUS_FIELD);
+        return status > 0 && status <= ServiceStatus.values().length ? ServiceStatus.values()[status - 1] : ServiceStatus.UNKNOWN;
+    }
+
+    void setStatus(int slot, ServiceStatus status) throws IOException {
+        ensureCapacity(slot);
+        buffer.put(position(slot) + STATUS_FIELD, (byte) (status.ordinal() + 1));
+    }
+
+    void free(int slot) {
+        if (slot < capacity) {
+            buffer.putLong(position(slot), 0);
+            buffer.put(position(slot) + STATUS_FIELD, (byte) 0);
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private void ensureCapacity(int slot) throws IOException {
+        if (slot >= capacity) {
+            map(Math.max(slot + 1, capacity * 2));
+        }
+    }
+
+    // the previous mapping, if any, is released once garbage collected
+    private void map(int entries) throws IOException {
+        final long length = HEADER_BYTES + (long) entries * ENTRY_BYTES;
+        if (file.length() < length) {
+            file.setLength(length);
+        }
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        capacity = entries;
+    }
+
+    private static int position(int slot) {
+        return HEADER_BYTES + slot * ENTRY_BYTES;
+    }
+}
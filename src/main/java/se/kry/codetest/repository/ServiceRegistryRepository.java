@@ -1,11 +1,14 @@
 package se.kry.codetest.repository;
 
 import com.fasterxml.uuid.Generators;
+import com.fasterxml.uuid.impl.TimeBasedGenerator;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.sql.ResultSet;
 import io.vertx.ext.sql.UpdateResult;
+import se.kry.codetest.model.ProbeType;
 import se.kry.codetest.model.Service;
 import se.kry.codetest.model.ServiceStatus;
 
@@ -13,10 +16,18 @@ import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
-public class ServiceRegistryRepository {
+/**
+ * SQLite engine of the {@link ServiceStore}.
+ */
+public class ServiceRegistryRepository implements ServiceStore {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final TimeBasedGenerator ID_GENERATOR = Generators.timeBasedGenerator();
 
     private final DBConnector connector;
 
@@ -24,29 +35,50 @@ public class ServiceRegistryRepository {
         this.connector = new DBConnector(vertx);
     }
 
+    @Override
     public Future<Boolean> createDb() {
-        final Future<ResultSet> createDbQuery = connector.query("CREATE TABLE IF NOT EXISTS service (" +
+        final Future<ResultSet> createDbQuery = connector.query("service.create_table", "CREATE TABLE IF NOT EXISTS service (" +
                 "id CHAR(128) PRIMARY KEY NOT NULL UNIQUE," +
                 "name VARCHAR(128) UNIQUE," +
                 "url VARCHAR(128) NOT NULL UNIQUE," +
                 "status VARCHAR(12) NOT NULL," +
-                "creation_date INTEGER NOT NULL " +
+                "creation_date INTEGER NOT NULL, " +
+                "poll_interval_ms INTEGER NOT NULL DEFAULT " + Service.DEFAULT_POLL_INTERVAL_MS + ", " +
+                "probe_type VARCHAR(8) NOT NULL DEFAULT '" + ProbeType.GET + "'" +
                 ")");
 
         Future<Boolean> createDbFuture = Future.future();
-        createDbQuery.setHandler(createDbQueryResult -> {
-            if (createDbQueryResult.failed()) {
-                createDbFuture.fail(createDbQueryResult.cause());
-            } else {
-                createDbFuture.complete(true);
-            }
-        });
+        createDbQuery
+                .compose(created -> addColumnIfMissing("poll_interval_ms", "INTEGER NOT NULL DEFAULT " + Service.DEFAULT_POLL_INTERVAL_MS))
+                .compose(added -> addColumnIfMissing("probe_type", "VARCHAR(8) NOT NULL DEFAULT '" + ProbeType.GET + "'"))
+                .setHandler(createDbQueryResult -> {
+                    if (createDbQueryResult.failed()) {
+                        createDbFuture.fail(createDbQueryResult.cause());
+                    } else {
+                        createDbFuture.complete(true);
+                    }
+                });
 
         return createDbFuture;
     }
 
+    private Future<Boolean> addColumnIfMissing(String column, String definition) {
+        return connector.query("service.table_info", "PRAGMA table_info(service)")
+                .compose(tableInfo -> {
+                    final boolean exists = tableInfo.getRows()
+                            .stream()
+                            .anyMatch(row -> column.equals(row.getString("name")));
+                    if (exists) {
+                        return Future.succeededFuture(false);
+                    }
+                    return connector.update("service.add_column", "ALTER TABLE service ADD COLUMN " + column + " " + definition)
+                            .map(altered -> true);
+                });
+    }
+
+    @Override
     public Future<Boolean> truncate() {
-        final Future<ResultSet> deleteQuery = connector.query("DELETE FROM service");
+        final Future<ResultSet> deleteQuery = connector.query("service.truncate", "DELETE FROM service");
 
         Future<Boolean> deleteFuture = Future.future();
         deleteQuery.setHandler(queryResult -> {
@@ -60,8 +92,22 @@ public class ServiceRegistryRepository {
         return deleteFuture;
     }
 
+    @Override
     public Future<List<Service>> findAll() {
-        final Future<ResultSet> selectQuery = connector.query("SELECT id, name, url, status, creation_date FROM service LIMIT 100");
+        Future<List<Service>> selectFuture = Future.future();
+        collectPages(null, new ArrayList<>(), selectFuture);
+        return selectFuture;
+    }
+
+    /**
+     * Keyset pagination ordered by id, {@code afterId} is the id of the last service of the previous page.
+     */
+    @Override
+    public Future<List<Service>> findPage(String afterId, int limit) {
+        JsonArray jsonArray = new JsonArray();
+        jsonArray.add(afterId != null ? afterId : "");
+        jsonArray.add(limit);
+        final Future<ResultSet> selectQuery = connector.query("service.find_page", "SELECT id, name, url, status, creation_date, poll_interval_ms, probe_type FROM service WHERE id > ? ORDER BY id LIMIT ?", jsonArray);
 
         Future<List<Service>> selectFuture = Future.future();
         selectQuery.setHandler(queryResult -> {
@@ -71,14 +117,8 @@ public class ServiceRegistryRepository {
                 final List<Service> services = queryResult.result()
                         .getRows()
                         .stream()
-                        .map(row -> new Service(
-                                        row.getString("id"),
-                                        row.getString("name"),
-                                        row.getString("url"),
-                                        ServiceStatus.valueOf(row.getString("status")),
-                                        LocalDateTime.ofInstant(Instant.ofEpochMilli(row.getLong("creation_date")), ZoneId.systemDefault())
-                                )
-                        ).collect(Collectors.toList());
+                        .map(this::toService)
+                        .collect(Collectors.toList());
                 selectFuture.complete(services);
             }
         });
@@ -86,15 +126,57 @@ public class ServiceRegistryRepository {
         return selectFuture;
     }
 
-    public Future<String> save(String url, String name, ServiceStatus serviceStatus) {
+    private void collectPages(String afterId, List<Service> services, Future<List<Service>> selectFuture) {
+        findPage(afterId, PAGE_SIZE)
+                .setHandler(pageResult -> {
+                    if (pageResult.failed()) {
+                        selectFuture.fail(pageResult.cause());
+                        return;
+                    }
+                    final List<Service> page = pageResult.result();
+                    services.addAll(page);
+                    if (page.size() < PAGE_SIZE) {
+                        selectFuture.complete(services);
+                    } else {
+                        collectPages(page.get(page.size() - 1).getId(), services, selectFuture);
+                    }
+                });
+    }
+
+    @Override
+    public Future<Service> findById(String id) {
+        final Future<ResultSet> selectQuery = connector.query("service.find_by_id", "SELECT id, name, url, status, creation_date, poll_interval_ms, probe_type FROM service WHERE id = ?", new JsonArray().add(id));
+
+        Future<Service> selectFuture = Future.future();
+        selectQuery.setHandler(queryResult -> {
+            if (queryResult.failed()) {
+                selectFuture.fail(queryResult.cause());
+            } else {
+                final Service service = queryResult.result()
+                        .getRows()
+                        .stream()
+                        .map(this::toService)
+                        .findFirst()
+                        .orElse(null);
+                selectFuture.complete(service);
+            }
+        });
+
+        return selectFuture;
+    }
+
+    @Override
+    public Future<String> save(String url, String name, ServiceStatus serviceStatus, long pollIntervalMs, ProbeType probeType) {
         JsonArray jsonArray = new JsonArray();
-        final String id = Generators.timeBasedGenerator().generate().toString();
+        final String id = ID_GENERATOR.generate().toString();
         jsonArray.add(id);
         jsonArray.add(name != null ? name : "");
         jsonArray.add(url);
         jsonArray.add(serviceStatus);
         jsonArray.add(Instant.now(Clock.systemDefaultZone()));
-        final Future<UpdateResult> saveQuery = connector.update("INSERT INTO service (id, name, url, status, creation_date) VALUES(?,?,?,?,?)", jsonArray);
+        jsonArray.add(pollIntervalMs);
+        jsonArray.add(probeType);
+        final Future<UpdateResult> saveQuery = connector.update("service.save", "INSERT INTO service (id, name, url, status, creation_date, poll_interval_ms, probe_type) VALUES(?,?,?,?,?,?,?)", jsonArray);
 
         Future<String> saveFuture = Future.future();
         saveQuery.setHandler(saveResult -> {
@@ -108,34 +190,128 @@ public class ServiceRegistryRepository {
         return saveFuture;
     }
 
+    /**
+     * Inserts the services in one transaction, the result holds the saved service for each input
+     * position or null when it was ignored because its url or name is already registered.
+     */
+    @Override
+    public Future<List<Service>> saveAll(List<Service> services) {
+        final Instant now = Instant.now(Clock.systemDefaultZone());
+        final LocalDateTime creationDate = LocalDateTime.ofInstant(now, ZoneId.systemDefault());
+        final List<Service> toSave = new ArrayList<>(services.size());
+        final List<JsonArray> batchParams = new ArrayList<>(services.size());
+        services.forEach(svc -> {
+            final Service service = svc.toBuilder()
+                    .id(ID_GENERATOR.generate().toString())
+                    .serviceStatus(ServiceStatus.UNKNOWN)
+                    .creationDate(creationDate)
+                    .pollIntervalMs(svc.effectivePollIntervalMs())
+                    .probeType(svc.effectiveProbeType())
+                    .build();
+            toSave.add(service);
+            final JsonArray params = new JsonArray().add(service.getId());
+            if (service.getName() != null) {
+                params.add(service.getName());
+            } else {
+                params.addNull();
+            }
+            batchParams.add(params
+                    .add(service.getUrl())
+                    .add(service.getServiceStatus())
+                    .add(now)
+                    .add(service.getPollIntervalMs())
+                    .add(service.getProbeType()));
+        });
+        final Future<List<Integer>> saveQuery = connector.batchUpdate("service.save_all", "INSERT OR IGNORE INTO service (id, name, url, status, creation_date, poll_interval_ms, probe_type) VALUES(?,?,?,?,?,?,?)", batchParams);
+
+        Future<List<Service>> saveFuture = Future.future();
+        saveQuery.setHandler(saveResult -> {
+            if (saveResult.failed()) {
+                saveFuture.fail(saveResult.cause());
+            } else {
+                final List<Integer> inserted = saveResult.result();
+                final List<Service> saved = new ArrayList<>(toSave.size());
+                for (int i = 0; i < toSave.size(); i++) {
+                    saved.add(inserted.get(i) > 0 ? toSave.get(i) : null);
+                }
+                saveFuture.complete(saved);
+            }
+        });
+
+        return saveFuture;
+    }
+
+    @Override
     public Future<Boolean> update(Service service) {
         JsonArray jsonArray = new JsonArray();
         jsonArray.add(service.getUrl());
         jsonArray.add(service.getName());
         jsonArray.add(ServiceStatus.UNKNOWN);
+        if (service.getPollIntervalMs() > 0) {
+            jsonArray.add(service.getPollIntervalMs());
+        } else {
+            jsonArray.addNull();
+        }
+        if (service.getProbeType() != null) {
+            jsonArray.add(service.getProbeType());
+        } else {
+            jsonArray.addNull();
+        }
         jsonArray.add(service.getId());
-        final Future<UpdateResult> updateQuery = connector.update("UPDATE service SET url = ?, name = ?, status = ?  WHERE id = ?", jsonArray);
+        final Future<UpdateResult> updateQuery = connector.update("service.update", "UPDATE service SET url = ?, name = ?, status = ?, poll_interval_ms = COALESCE(?, poll_interval_ms), probe_type = COALESCE(?, probe_type) WHERE id = ?", jsonArray);
 
         return toBooleanFuture(updateQuery);
     }
 
+    @Override
     public Future<Boolean> updateStatus(String id, ServiceStatus status) {
         JsonArray jsonArray = new JsonArray();
         jsonArray.add(status);
         jsonArray.add(id);
-        final Future<UpdateResult> updateQuery = connector.update("UPDATE service SET status = ? WHERE id = ?", jsonArray);
+        final Future<UpdateResult> updateQuery = connector.update("service.update_status", "UPDATE service SET status = ? WHERE id = ?", jsonArray);
 
         return toBooleanFuture(updateQuery);
     }
 
+    @Override
+    public Future<Integer> updateStatuses(Map<String, ServiceStatus> statuses) {
+        final List<JsonArray> batchParams = statuses.entrySet()
+                .stream()
+                .map(entry -> new JsonArray().add(entry.getValue()).add(entry.getKey()))
+                .collect(Collectors.toList());
+        final Future<List<Integer>> updateQuery = connector.batchUpdate("service.update_statuses", "UPDATE service SET status = ? WHERE id = ?", batchParams);
+
+        Future<Integer> updateFuture = Future.future();
+        updateQuery.setHandler(updateResult -> {
+            if (updateResult.failed()) {
+                updateFuture.fail(updateResult.cause());
+            } else {
+                updateFuture.complete(updateResult.result().stream().mapToInt(Integer::intValue).sum());
+            }
+        });
+        return updateFuture;
+    }
+
+    @Override
     public Future<Boolean> delete(String id) {
         JsonArray jsonArray = new JsonArray();
         jsonArray.add(id);
-        final Future<UpdateResult> deleteQuery = connector.update("DELETE FROM service WHERE id = ?", jsonArray);
+        final Future<UpdateResult> deleteQuery = connector.update("service.delete", "DELETE FROM service WHERE id = ?", jsonArray);
 
         return toBooleanFuture(deleteQuery);
     }
 
+    private Service toService(JsonObject row) {
+        return Service.builder()
+                .id(row.getString("id"))
+                .name(row.getString("name"))
+                .url(row.getString("url"))
+                .serviceStatus(ServiceStatus.valueOf(row.getString("status")))
+                .creationDate(LocalDateTime.ofInstant(Instant.ofEpochMilli(row.getLong("creation_date")), ZoneId.systemDefault()))
+                .pollIntervalMs(row.getLong("poll_interval_ms"))
+                .probeType(ProbeType.valueOf(row.getString("probe_type")))
+                .build();
+    }
 
     private Future<Boolean> toBooleanFuture(Future<UpdateResult> updateQuery) {
         Future<Boolean> updateFuture = Future.future();
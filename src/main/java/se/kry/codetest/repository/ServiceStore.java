@@ -0,0 +1,69 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.Future;
+import se.kry.codetest.model.ProbeType;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of the service registry, see {@link ServiceStores} for the available engines.
+ * A service url is unique, and so is its name when set.
+ */
+public interface ServiceStore {
+
+    /**
+     * Creates or opens the storage, called once before any other method.
+     */
+    Future<Boolean> createDb();
+
+    Future<Boolean> truncate();
+
+    Future<List<Service>> findAll();
+
+    /**
+     * Keyset pagination ordered by id, {@code afterId} is the id of the last service of the previous page.
+     */
+    Future<List<Service>> findPage(String afterId, int limit);
+
+    /**
+     * @return the service or null when there is none with this id
+     */
+    Future<Service> findById(String id);
+
+    default Future<String> save(String url, String name, ServiceStatus serviceStatus) {
+        return save(url, name, serviceStatus, Service.DEFAULT_POLL_INTERVAL_MS, ProbeType.GET);
+    }
+
+    /**
+     * @return the id of the saved service, fails when its url or name is already registered
+     */
+    Future<String> save(String url, String name, ServiceStatus serviceStatus, long pollIntervalMs, ProbeType probeType);
+
+    /**
+     * Saves the services at once, the result holds the saved service for each input
+     * position or null when it was ignored because its url or name is already registered.
+     */
+    Future<List<Service>> saveAll(List<Service> services);
+
+    /**
+     * Replaces the url and name of the service and resets its status, a poll interval of 0
+     * or a null probe type keeps the stored one.
+     */
+    Future<Boolean> update(Service service);
+
+    Future<Boolean> updateStatus(String id, ServiceStatus status);
+
+    Future<Integer> updateStatuses(Map<String, ServiceStatus> statuses);
+
+    Future<Boolean> delete(String id);
+
+    /**
+     * Releases the storage, nothing can be called after.
+     */
+    default Future<Void> close() {
+        return Future.succeededFuture();
+    }
+}
@@ -0,0 +1,46 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Creates the {@link ServiceStore} selected by {@code storage_engine}: {@code sqlite} (default) in the database
+ * file shared with the history and leases, {@code memory}, or {@code log} in the {@code storage_path} directory.
+ * Only {@code sqlite} is seen by other instances, the others cannot be sharded.
+ */
+public final class ServiceStores {
+    public static final String STORAGE_ENGINE_CONFIG = "storage_engine";
+    public static final String STORAGE_PATH_CONFIG = "storage_path";
+    public static final String STORAGE_LOG_SYNC_MS_CONFIG = "storage_log_sync_ms";
+    public static final String STORAGE_LOG_COMPACT_INTERVAL_MS_CONFIG = "storage_log_compact_interval_ms";
+    public static final String SQLITE = "sqlite";
+    public static final String MEMORY = "memory";
+    public static final String LOG = "log";
+    public static final String DEFAULT_STORAGE_PATH = "poller-data";
+
+    private ServiceStores() {
+    }
+
+    /**
+     * @throws IllegalArgumentException when the engine is unknown, or local to the instance while sharded
+     */
+    public static ServiceStore create(Vertx vertx, JsonObject config, boolean sharded) {
+        final String engine = config.getString(STORAGE_ENGINE_CONFIG, SQLITE).toLowerCase();
+        if (sharded && !SQLITE.equals(engine)) {
+            throw new IllegalArgumentException("Storage engine " + engine + " is local to one instance, sharding needs sqlite");
+        }
+        switch (engine) {
+            case SQLITE:
+                return new ServiceRegistryRepository(vertx);
+            case MEMORY:
+                return new InMemoryServiceStore();
+            case LOG:
+                return new LogServiceStore(vertx,
+                        config.getString(STORAGE_PATH_CONFIG, DEFAULT_STORAGE_PATH),
+                        config.getLong(STORAGE_LOG_SYNC_MS_CONFIG, LogServiceStore.DEFAULT_SYNC_MS),
+                        config.getLong(STORAGE_LOG_COMPACT_INTERVAL_MS_CONFIG, LogServiceStore.DEFAULT_COMPACT_INTERVAL_MS));
+            default:
+                throw new IllegalArgumentException("Unknown storage engine " + engine + ", expected sqlite, memory or log");
+        }
+    }
+}
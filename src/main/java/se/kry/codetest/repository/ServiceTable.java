@@ -0,0 +1,149 @@
+package se.kry.codetest.repository;
+
+import com.fasterxml.uuid.Generators;
+import com.fasterxml.uuid.impl.TimeBasedGenerator;
+import se.kry.codetest.model.ProbeType;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Services held in memory with the constraints of the SQL table: unique id, url and name, services without a name never conflict.
+ * Not thread safe, the engines using it synchronize its access.
+ */
+class ServiceTable {
+    static final String DUPLICATE = "A service with this url or name is already registered";
+
+    private static final TimeBasedGenerator ID_GENERATOR = Generators.timeBasedGenerator();
+
+    private final TreeMap<String, Service> byId = new TreeMap<>();
+    private final Map<String, String> idsByUrl = new HashMap<>();
+    private final Map<String, String> idsByName = new HashMap<>();
+
+    /**
+     * New service with a generated id, not added to the table yet.
+     */
+    static Service newService(String url, String name, ServiceStatus serviceStatus, long pollIntervalMs, ProbeType probeType) {
+        return Service.builder()
+                .id(ID_GENERATOR.generate().toString())
+                .name(name)
+                .url(url)
+                .serviceStatus(serviceStatus)
+                .creationDate(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS))
+                .pollIntervalMs(pollIntervalMs > 0 ? pollIntervalMs : Service.DEFAULT_POLL_INTERVAL_MS)
+                .probeType(probeType != null ? probeType : ProbeType.GET)
+                .build();
+    }
+
+    /**
+     * @return false, leaving the table unchanged, when the id, url or name is already used
+     */
+    boolean insert(Service service) {
+        if (byId.containsKey(service.getId()) || conflicts(service, null)) {
+            return false;
+        }
+        put(service);
+        return true;
+    }
+
+    /**
+     * Applies {@link ServiceStore#update(Service)}, returns the stored service or null when there is none with this id.
+     *
+     * @throws IllegalStateException when the url or name is used by another service
+     */
+    Service update(Service service) {
+        final Service stored = byId.get(service.getId());
+        if (stored == null) {
+            return null;
+        }
+        if (conflicts(service, service.getId())) {
+            throw new IllegalStateException(DUPLICATE);
+        }
+        final Service updated = stored.toBuilder()
+                .url(service.getUrl())
+                .name(service.getName())
+                .serviceStatus(ServiceStatus.UNKNOWN)
+                .pollIntervalMs(service.getPollIntervalMs() > 0 ? service.getPollIntervalMs() : stored.getPollIntervalMs())
+                .probeType(service.getProbeType() != null ? service.getProbeType() : stored.getProbeType())
+                .build();
+        remove(stored.getId());
+        put(updated);
+        return updated;
+    }
+
+    boolean updateStatus(String id, ServiceStatus status) {
+        final Service stored = byId.get(id);
+        if (stored == null) {
+            return false;
+        }
+        byId.put(id, stored.withServiceStatus(status));
+        return true;
+    }
+
+    /**
+     * Adds or replaces a service without checking constraints, used when replaying stored services.
+     */
+    void put(Service service) {
+        byId.put(service.getId(), service);
+        idsByUrl.put(service.getUrl(), service.getId());
+        if (service.getName() != null) {
+            idsByName.put(service.getName(), service.getId());
+        }
+    }
+
+    Service remove(String id) {
+        final Service removed = byId.remove(id);
+        if (removed != null) {
+            idsByUrl.remove(removed.getUrl());
+            if (removed.getName() != null) {
+                idsByName.remove(removed.getName());
+            }
+        }
+        return removed;
+    }
+
+    Service get(String id) {
+        return byId.get(id);
+    }
+
+    List<Service> all() {
+        return new ArrayList<>(byId.values());
+    }
+
+    List<Service> page(String afterId, int limit) {
+        final List<Service> page = new ArrayList<>(Math.min(limit, byId.size()));
+        for (Service service : (afterId != null ? byId.tailMap(afterId, false) : byId).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(service);
+        }
+        return page;
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    void clear() {
+        byId.clear();
+        idsByUrl.clear();
+        idsByName.clear();
+    }
+
+    private boolean conflicts(Service service, String ownId) {
+        final String urlOwner = idsByUrl.get(service.getUrl());
+        if (urlOwner != null && !urlOwner.equals(ownId)) {
+            return true;
+        }
+        final String nameOwner = service.getName() != null ? idsByName.get(service.getName()) : null;
+        return nameOwner != null && !nameOwner.equals(ownId);
+    }
+}
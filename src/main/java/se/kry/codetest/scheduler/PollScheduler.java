@@ -0,0 +1,244 @@
+package se.kry.codetest.scheduler;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.metrics.Counter;
+import se.kry.codetest.metrics.Histogram;
+import se.kry.codetest.metrics.Metrics;
+import se.kry.codetest.model.Service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps every registered service in a queue ordered by its next due time and hands
+ * each one to the due handler when its own poll interval has elapsed.
+ * <p>
+ * When staggered, each service is polled at a fixed phase of its interval on the wall clock, derived
+ * from a hash of its id, so services sharing an interval are spread over it instead of being polled
+ * together, and stay on the same phase across restarts. An optional random jitter of up to
+ * {@code jitterMs} is added to every due time.
+ * <p>
+ * Must only be used from the event loop of the verticle that owns it.
+ */
+@Slf4j
+public class PollScheduler {
+    public static final long DEFAULT_TICK_MS = 100;
+
+    private final Vertx vertx;
+    private final Handler<Service> dueHandler;
+    private final ToLongFunction<Service> intervalFunction;
+    private final LongSupplier clock;
+    private final long tickMs;
+    private final boolean staggered;
+    private final long jitterMs;
+    private final Histogram tickDuration;
+    private final Histogram dispatchLag;
+    private final Counter overrunCounter;
+
+    private final PriorityQueue<ScheduledPoll> queue = new PriorityQueue<>(Comparator.comparingLong(ScheduledPoll::getDueAt));
+    // latest entry per service id, older entries left in the queue are skipped when they come due
+    private final Map<String, ScheduledPoll> scheduled = new HashMap<>();
+
+    private Long timerId;
+    private long lagMs;
+    private long maxLagMs;
+    private long dispatched;
+    private long overruns;
+
+    public PollScheduler(Vertx vertx, Handler<Service> dueHandler) {
+        this(vertx, dueHandler, Service::effectivePollIntervalMs);
+    }
+
+    /**
+     * @param intervalFunction delay until the next poll of a service, asked each time the service is dispatched
+     *                         and again when {@link #pollCompleted(Service) its poll completed}
+     */
+    public PollScheduler(Vertx vertx, Handler<Service> dueHandler, ToLongFunction<Service> intervalFunction) {
+        this(vertx, dueHandler, intervalFunction, false, 0);
+    }
+
+    public PollScheduler(Vertx vertx, Handler<Service> dueHandler, ToLongFunction<Service> intervalFunction, boolean staggered, long jitterMs) {
+        this(vertx, dueHandler, intervalFunction, staggered, jitterMs, System::currentTimeMillis, DEFAULT_TICK_MS);
+    }
+
+    PollScheduler(Vertx vertx, Handler<Service> dueHandler, LongSupplier clock, long tickMs) {
+        this(vertx, dueHandler, Service::effectivePollIntervalMs, clock, tickMs);
+    }
+
+    PollScheduler(Vertx vertx, Handler<Service> dueHandler, ToLongFunction<Service> intervalFunction, LongSupplier clock, long tickMs) {
+        this(vertx, dueHandler, intervalFunction, false, 0, clock, tickMs);
+    }
+
+    PollScheduler(Vertx vertx, Handler<Service> dueHandler, ToLongFunction<Service> intervalFunction, boolean staggered, long jitterMs,
+                  LongSupplier clock, long tickMs) {
+        this.vertx = vertx;
+        this.dueHandler = dueHandler;
+        this.intervalFunction = intervalFunction;
+        this.staggered = staggered;
+        this.jitterMs = jitterMs;
+        this.clock = clock;
+        this.tickMs = tickMs;
+        final Metrics metrics = Metrics.get(vertx);
+        this.tickDuration = metrics.histogram("poll_scheduler_tick_seconds", "Time to dispatch the polls due on a scheduler tick", Histogram.LATENCY_BUCKETS);
+        this.dispatchLag = metrics.histogram("poll_scheduler_dispatch_lag_seconds", "Delay between the due time of a poll and its dispatch", Histogram.LATENCY_BUCKETS);
+        this.overrunCounter = metrics.counter("poll_scheduler_overruns_total", "Polls dispatched after their next one was already due");
+    }
+
+    public void start() {
+        if (timerId == null) {
+            timerId = vertx.setPeriodic(tickMs, id -> tick());
+        }
+    }
+
+    public void stop() {
+        if (timerId != null) {
+            vertx.cancelTimer(timerId);
+            timerId = null;
+        }
+    }
+
+    /**
+     * Schedules the service to be polled right away, replacing any pending schedule for the same id.
+     */
+    public void schedule(Service service) {
+        schedule(service, 0);
+    }
+
+    public void schedule(Service service, long delayMs) {
+        enqueue(new ScheduledPoll(service, clock.getAsLong() + delayMs));
+    }
+
+    /**
+     * Schedules the service at an offset within {@code windowMs} derived from its id, so scheduling
+     * many services at once spreads their first polls over the window instead of sending them together.
+     */
+    public void scheduleSpread(Service service, long windowMs) {
+        final long slotAt = clock.getAsLong() + (windowMs > 0 ? phaseOf(service.getId(), windowMs) : 0);
+        enqueue(new ScheduledPoll(service, slotAt, slotAt + jitter(windowMs)));
+    }
+
+    public void unschedule(String id) {
+        scheduled.remove(id);
+    }
+
+    public boolean isScheduled(String id) {
+        return scheduled.containsKey(id);
+    }
+
+    public Set<String> getScheduledIds() {
+        return new HashSet<>(scheduled.keySet());
+    }
+
+    public SchedulerStats getStats() {
+        return SchedulerStats.builder()
+                .queueDepth(scheduled.size())
+                .lagMs(lagMs)
+                .maxLagMs(maxLagMs)
+                .dispatched(dispatched)
+                .overruns(overruns)
+                .build();
+    }
+
+    void tick() {
+        final long startedAt = System.nanoTime();
+        final long now = clock.getAsLong();
+        ScheduledPoll next;
+        while ((next = queue.peek()) != null && next.getDueAt() <= now) {
+            queue.poll();
+            final Service service = next.getService();
+            if (scheduled.get(service.getId()) != next) {
+                continue;
+            }
+
+            lagMs = now - next.getDueAt();
+            maxLagMs = Math.max(maxLagMs, lagMs);
+            dispatched++;
+            dispatchLag.observeMs(lagMs);
+
+            final long intervalMs = intervalFunction.applyAsLong(service);
+            long nextSlotAt = nextSlot(service, next.getSlotAt(), intervalMs);
+            if (nextSlotAt <= now) {
+                // too far behind to catch up, restart the cadence from now instead of bursting
+                overruns++;
+                overrunCounter.inc();
+                nextSlotAt = nextSlot(service, now, intervalMs);
+            }
+            // provisional until the poll completes, in case it never reports back
+            enqueue(new ScheduledPoll(service, nextSlotAt, nextSlotAt + jitter(intervalMs), next.getSlotAt()));
+
+            try {
+                dueHandler.handle(service);
+            } catch (RuntimeException e) {
+                log.error("An error occurred while dispatching poll for service {}", service.getId(), e);
+            }
+        }
+        tickDuration.observe((System.nanoTime() - startedAt) / 1e9);
+    }
+
+    /**
+     * Asks the interval function again once the poll dispatched for the service completed, so an interval
+     * depending on the poll result, like a backoff, applies to the very next poll instead of the one after.
+     * Does nothing if the service was rescheduled or unscheduled in the meantime.
+     */
+    public void pollCompleted(Service service) {
+        final ScheduledPoll pending = scheduled.get(service.getId());
+        if (pending == null || !pending.isProvisional()) {
+            return;
+        }
+        final long now = clock.getAsLong();
+        final Service scheduledService = pending.getService();
+        final long intervalMs = intervalFunction.applyAsLong(scheduledService);
+        long nextSlotAt = nextSlot(scheduledService, pending.getDispatchedSlotAt(), intervalMs);
+        if (nextSlotAt <= now) {
+            nextSlotAt = nextSlot(scheduledService, now, intervalMs);
+        }
+        if (nextSlotAt != pending.getSlotAt()) {
+            enqueue(new ScheduledPoll(scheduledService, nextSlotAt, nextSlotAt + jitter(intervalMs)));
+        }
+    }
+
+    /**
+     * Slot following the one at {@code slotAt}. Staggered slots are on the phase of the service, the
+     * first one more than half an interval after {@code slotAt}, so a poll off its phase (new service,
+     * startup) is followed by one on its phase without polling twice in a row or skipping a whole interval.
+     */
+    long nextSlot(Service service, long slotAt, long intervalMs) {
+        if (!staggered) {
+            return slotAt + intervalMs;
+        }
+        final long baseMs = service.effectivePollIntervalMs();
+        final long phase = phaseOf(service.getId(), baseMs);
+        final long earliest = slotAt + intervalMs - baseMs / 2 + 1;
+        return earliest + Math.floorMod(phase - earliest, baseMs);
+    }
+
+    private long jitter(long boundMs) {
+        final long bound = Math.min(jitterMs, boundMs / 2);
+        return bound > 0 ? ThreadLocalRandom.current().nextLong(bound) : 0;
+    }
+
+    static long phaseOf(String id, long periodMs) {
+        // murmur3 finalizer, String.hashCode alone puts similar ids on close phases
+        long hash = id.hashCode();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return Math.floorMod(hash, periodMs);
+    }
+
+    private void enqueue(ScheduledPoll scheduledPoll) {
+        scheduled.put(scheduledPoll.getService().getId(), scheduledPoll);
+        queue.add(scheduledPoll);
+    }
+}
@@ -0,0 +1,28 @@
+package se.kry.codetest.scheduler;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import se.kry.codetest.model.Service;
+
+@Getter
+@AllArgsConstructor
+class ScheduledPoll {
+    private final Service service;
+    // slot of the poll on the cadence of the service, before jitter
+    private final long slotAt;
+    private final long dueAt;
+    // slot of the dispatched poll this one follows, until its interval is re-evaluated with the poll result
+    private final Long dispatchedSlotAt;
+
+    ScheduledPoll(Service service, long slotAt, long dueAt) {
+        this(service, slotAt, dueAt, null);
+    }
+
+    ScheduledPoll(Service service, long dueAt) {
+        this(service, dueAt, dueAt);
+    }
+
+    boolean isProvisional() {
+        return dispatchedSlotAt != null;
+    }
+}
@@ -0,0 +1,26 @@
+package se.kry.codetest.scheduler;
+
+import io.vertx.core.json.JsonObject;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@Builder
+@ToString
+public class SchedulerStats {
+    private final int queueDepth;
+    private final long lagMs;
+    private final long maxLagMs;
+    private final long dispatched;
+    private final long overruns;
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("queue_depth", queueDepth)
+                .put("lag_ms", lagMs)
+                .put("max_lag_ms", maxLagMs)
+                .put("dispatched", dispatched)
+                .put("overruns", overruns);
+    }
+}
@@ -3,11 +3,23 @@ package se.kry.codetest.service;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.latency.AdaptiveTimeouts;
+import se.kry.codetest.latency.LatencyRecorder;
+import se.kry.codetest.metrics.Counter;
+import se.kry.codetest.metrics.Histogram;
+import se.kry.codetest.metrics.Metrics;
+import se.kry.codetest.model.ProbeResult;
 import se.kry.codetest.model.Service;
 import se.kry.codetest.model.ServiceStatus;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 import static se.kry.codetest.model.ServiceStatus.FAILED;
 import static se.kry.codetest.model.ServiceStatus.OK;
@@ -17,15 +29,145 @@ public class BackgroundPoller {
 
     private final Poller poller;
     private final ServiceRegistry apiPollerService;
+    private final PollExecutor executor;
+    private final StatusWriteBuffer statusWriter;
+    private final AdaptiveTimeouts timeouts;
+    private final PollBackoff backoff;
+    private final HostLimiter hostLimiter;
+    private final OverlapPolicy overlapPolicy;
+    // pending poll per service id, a service is never probed twice at the same time
+    private final Map<String, Future<Service>> inFlight = new HashMap<>();
+    // ids whose pending probe was forgotten, it completes without recording anything
+    private final Set<String> stalePolls = new HashSet<>();
+    private final Map<String, FollowUp> followUps = new HashMap<>();
+    private final Counter overlapCounter;
+    private long overlaps;
+    private final Counter probeCounter;
+    private final Histogram probeDuration;
+    private final LatencyRecorder latencyRecorder = new LatencyRecorder();
+    private final List<BiConsumer<Service, ProbeResult>> probeListeners = new ArrayList<>();
+    // last status persisted per service id, only transitions are written
+    private final Map<String, ServiceStatus> lastKnownStatuses = new HashMap<>();
+    private long statusWrites;
+    private long statusWritesAvoided;
+    // host probed per service id and number of services per host, the connections of a host no longer probed are forgotten
+    private final Map<String, String> hostsById = new HashMap<>();
+    private final Map<String, Integer> servicesPerHost = new HashMap<>();
 
-    public BackgroundPoller(Vertx vertx) {
-        this.poller = new Poller(vertx);
-        this.apiPollerService = new ServiceRegistry(vertx);
+    public BackgroundPoller(Vertx vertx, ServiceRegistry apiPollerService, PollExecutor executor, AdaptiveTimeouts timeouts,
+                            PollBackoff backoff, HostLimiter hostLimiter, OverlapPolicy overlapPolicy,
+                            ProbeClientOptions clientOptions, int statusWriteBatchSize, long statusWriteDelayMs) {
+        this.poller = new Poller(vertx, clientOptions);
+        this.apiPollerService = apiPollerService;
+        this.executor = executor;
+        this.timeouts = timeouts;
+        this.backoff = backoff;
+        this.hostLimiter = hostLimiter;
+        this.overlapPolicy = overlapPolicy;
+        this.statusWriter = new StatusWriteBuffer(vertx, apiPollerService, statusWriteBatchSize, statusWriteDelayMs);
+        final Metrics metrics = Metrics.get(vertx);
+        this.probeCounter = probeCounter(metrics);
+        this.probeDuration = probeDuration(metrics);
+        this.overlapCounter = overlapCounter(metrics);
     }
 
     BackgroundPoller(Poller poller, ServiceRegistry apiPollerService) {
+        this(poller, apiPollerService, new PollExecutor(), new AdaptiveTimeouts(Poller.DEFAULT_TIMEOUT_MS), new PollBackoff(),
+                OverlapPolicy.SKIP, StatusWriteBuffer.writeThrough(apiPollerService));
+    }
+
+    BackgroundPoller(Poller poller, ServiceRegistry apiPollerService, PollExecutor executor, AdaptiveTimeouts timeouts, PollBackoff backoff,
+                     OverlapPolicy overlapPolicy, StatusWriteBuffer statusWriter) {
         this.poller = poller;
         this.apiPollerService = apiPollerService;
+        this.executor = executor;
+        this.timeouts = timeouts;
+        this.backoff = backoff;
+        this.hostLimiter = HostLimiter.unlimited();
+        this.overlapPolicy = overlapPolicy;
+        this.statusWriter = statusWriter;
+        final Metrics metrics = new Metrics();
+        this.probeCounter = probeCounter(metrics);
+        this.probeDuration = probeDuration(metrics);
+        this.overlapCounter = overlapCounter(metrics);
+    }
+
+    private static Counter probeCounter(Metrics metrics) {
+        return metrics.counter("poll_probes_total", "Completed probes by result, success, failure or timeout", "result");
+    }
+
+    private static Counter overlapCounter(Metrics metrics) {
+        return metrics.counter("poll_overlaps_total", "Polls of a service whose previous probe was still pending, by overlap policy", "policy");
+    }
+
+    private static Histogram probeDuration(Metrics metrics) {
+        return metrics.histogram("poll_probe_duration_seconds", "Total time of a probe", Histogram.LATENCY_BUCKETS);
+    }
+
+    public Future<Integer> flushStatuses() {
+        return statusWriter.flush();
+    }
+
+    public PollerStats getStats() {
+        return PollerStats.builder()
+                .executor(executor.getStats())
+                .statusWrites(statusWrites)
+                .statusWritesAvoided(statusWritesAvoided)
+                .pendingStatusWrites(statusWriter.getPending())
+                .backingOff(backoff.countBackingOff())
+                .connections(poller.getConnections().toJson())
+                .hostLimits(hostLimiter.toJson())
+                .overlapPolicy(overlapPolicy)
+                .overlaps(overlaps)
+                .pendingServices(inFlight.size())
+                .build();
+    }
+
+    /**
+     * Drops the last known status of a service whose stored status was changed or removed outside the poller.
+     * A probe of the service still pending is discarded once it completes, polls in the meantime
+     * go through the {@link OverlapPolicy} as usual.
+     */
+    public void forget(String id) {
+        if (inFlight.containsKey(id)) {
+            stalePolls.add(id);
+        }
+        releaseHost(hostsById.remove(id));
+        lastKnownStatuses.remove(id);
+        latencyRecorder.forget(id);
+        timeouts.forget(id);
+        backoff.forget(id);
+        final FollowUp followUp = followUps.remove(id);
+        if (followUp != null) {
+            followUp.result.complete(followUp.service);
+        }
+    }
+
+    public LatencyRecorder getLatencyRecorder() {
+        return latencyRecorder;
+    }
+
+    public AdaptiveTimeouts getTimeouts() {
+        return timeouts;
+    }
+
+    public PollBackoff getBackoff() {
+        return backoff;
+    }
+
+    public ProbeConnections getConnections() {
+        return poller.getConnections();
+    }
+
+    public HostLimiter getHostLimiter() {
+        return hostLimiter;
+    }
+
+    /**
+     * Registers a listener called with the result of every completed probe.
+     */
+    public void addProbeListener(BiConsumer<Service, ProbeResult> listener) {
+        probeListeners.add(listener);
     }
 
     public Future<List<Future<Service>>> pollServices() {
@@ -44,19 +186,119 @@ public class BackgroundPoller {
         return future;
     }
 
-    private Future<Service> pollService(Service svc) {
+    /**
+     * Probes the service unless its previous probe is still pending, in which case the
+     * {@link OverlapPolicy} decides between sharing the pending result or probing again after it.
+     */
+    public Future<Service> pollService(Service svc) {
+        final Future<Service> pending = inFlight.get(svc.getId());
+        if (pending == null) {
+            return startPoll(svc);
+        }
+        overlaps++;
+        overlapCounter.inc(overlapPolicy.name().toLowerCase());
+        if (overlapPolicy == OverlapPolicy.SKIP) {
+            return pending;
+        }
+        final FollowUp followUp = followUps.get(svc.getId());
+        if (followUp != null) {
+            // probe the latest definition of the service
+            followUp.service = svc;
+            return followUp.result;
+        }
+        final FollowUp queued = new FollowUp(svc);
+        followUps.put(svc.getId(), queued);
+        return queued.result;
+    }
+
+    private Future<Service> startPoll(Service svc) {
+        Future<Service> polled = Future.future();
+        inFlight.put(svc.getId(), polled);
+        probeService(svc).setHandler(done -> {
+            inFlight.remove(svc.getId());
+            stalePolls.remove(svc.getId());
+            polled.handle(done);
+            final FollowUp followUp = followUps.remove(svc.getId());
+            if (followUp != null) {
+                startPoll(followUp.service).setHandler(followUp.result);
+            }
+        });
+        return polled;
+    }
+
+    private Future<Service> probeService(Service svc) {
         Future<Service> future = Future.future();
 
-        poller.pollService(svc.getUrl())
+        final String host = Poller.hostKey(svc.getUrl());
+        trackHost(svc.getId(), host);
+        // wait for the host limits before taking one of the global in flight slots
+        hostLimiter.submit(host,
+                () -> executor.submit(() -> poller.probe(svc.getUrl(), svc.effectiveProbeType(), timeouts.timeoutMs(svc.getId()))))
                 .setHandler(pollRequest -> {
+                            if (stalePolls.contains(svc.getId())) {
+                                // forgotten while probing, the result may be of a definition that no longer exists
+                                future.complete(svc);
+                                return;
+                            }
                             if (pollRequest.failed()) {
                                 log.error("An error occurred while polling service {}", svc.toString(), pollRequest.cause());
+                                probeCounter.inc("failure");
+                            } else {
+                                final ProbeResult result = pollRequest.result();
+                                probeCounter.inc(result.isSuccess() ? "success" : result.isTimedOut() ? "timeout" : "failure");
+                                probeDuration.observeMs(result.getTotalMs());
+                                latencyRecorder.record(svc.getId(), pollRequest.result());
+                                timeouts.record(svc.getId(), pollRequest.result());
+                                probeListeners.forEach(listener -> listener.accept(svc, pollRequest.result()));
                             }
-                            ServiceStatus status = Boolean.TRUE.equals(pollRequest.result()) ? OK : FAILED;
-                            apiPollerService.updateStatus(svc.getId(), status);
+                            ServiceStatus status = pollRequest.succeeded() && pollRequest.result().isSuccess() ? OK : FAILED;
+                            backoff.record(svc.getId(), status == OK);
+                            writeStatus(svc, status);
                             future.complete(svc.withServiceStatus(status));
                         }
                 );
         return future;
     }
+
+    private void trackHost(String id, String host) {
+        final String previous = hostsById.put(id, host);
+        if (Objects.equals(previous, host)) {
+            return;
+        }
+        if (host != null) {
+            servicesPerHost.merge(host, 1, Integer::sum);
+        }
+        releaseHost(previous);
+    }
+
+    private void releaseHost(String host) {
+        if (host == null) {
+            return;
+        }
+        if (servicesPerHost.computeIfPresent(host, (key, services) -> services > 1 ? services - 1 : null) == null) {
+            poller.getConnections().forget(host);
+        }
+    }
+
+    private void writeStatus(Service svc, ServiceStatus status) {
+        ServiceStatus previous = lastKnownStatuses.put(svc.getId(), status);
+        if (previous == null) {
+            previous = svc.getServiceStatus();
+        }
+        if (previous == status) {
+            statusWritesAvoided++;
+        } else {
+            statusWrites++;
+            statusWriter.write(svc.getId(), status);
+        }
+    }
+
+    private static class FollowUp {
+        private final Future<Service> result = Future.future();
+        private Service service;
+
+        FollowUp(Service service) {
+            this.service = service;
+        }
+    }
 }
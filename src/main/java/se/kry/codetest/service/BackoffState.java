@@ -0,0 +1,22 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.json.JsonObject;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@Builder
+@ToString
+public class BackoffState {
+    private final boolean backingOff;
+    private final int consecutiveFailures;
+    private final long intervalMs;
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("backing_off", backingOff)
+                .put("consecutive_failures", consecutiveFailures)
+                .put("interval_ms", intervalMs);
+    }
+}
@@ -0,0 +1,129 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.mapper.ServiceMapper;
+import se.kry.codetest.model.ProbeType;
+import se.kry.codetest.model.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static se.kry.codetest.mapper.ServiceMapper.SERVICE_ID;
+import static se.kry.codetest.mapper.ServiceMapper.SERVICE_NAME;
+import static se.kry.codetest.mapper.ServiceMapper.SERVICE_POLL_INTERVAL_MS;
+import static se.kry.codetest.mapper.ServiceMapper.SERVICE_URL;
+
+/**
+ * Validates rows as they are read and saves the valid ones in batches of {@code batchSize}.
+ * <p>
+ * Rows must be added one batch at a time: when {@link #add(JsonObject)} returns a future that is not
+ * complete yet, the caller pauses its input until it completes.
+ */
+@Slf4j
+public class BulkImport {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final ServiceRegistry apiPollerService;
+    private final int batchSize;
+    private final Handler<Service> createdHandler;
+
+    private final JsonArray report = new JsonArray();
+    private List<Service> pending = new ArrayList<>();
+    private List<Integer> pendingRows = new ArrayList<>();
+    private int rows;
+    private int created;
+    private int failed;
+
+    public BulkImport(ServiceRegistry apiPollerService, int batchSize, Handler<Service> createdHandler) {
+        this.apiPollerService = apiPollerService;
+        this.batchSize = batchSize;
+        this.createdHandler = createdHandler;
+    }
+
+    public Future<Void> add(JsonObject row) {
+        final int index = rows++;
+        final String url;
+        final long pollIntervalMs;
+        final ProbeType probeType;
+        try {
+            url = row.getString(SERVICE_URL);
+            pollIntervalMs = row.getLong(SERVICE_POLL_INTERVAL_MS, Service.DEFAULT_POLL_INTERVAL_MS);
+            probeType = ServiceMapper.toProbeType(row, ProbeType.GET);
+        } catch (ClassCastException e) {
+            reject(index, "Invalid field type");
+            return Future.succeededFuture();
+        } catch (IllegalArgumentException e) {
+            reject(index, e.getMessage());
+            return Future.succeededFuture();
+        }
+        final String validationError = apiPollerService.validate(url, pollIntervalMs);
+        if (validationError != null) {
+            reject(index, validationError);
+            return Future.succeededFuture();
+        }
+
+        pending.add(Service.builder()
+                .url(url)
+                // unnamed services are stored without a name, an empty one would conflict with the next unnamed row
+                .name(row.getValue(SERVICE_NAME) instanceof String ? row.getString(SERVICE_NAME) : null)
+                .pollIntervalMs(pollIntervalMs)
+                .probeType(probeType)
+                .build());
+        pendingRows.add(index);
+        return pending.size() >= batchSize ? flush() : Future.succeededFuture();
+    }
+
+    public void reject(String error) {
+        reject(rows++, error);
+    }
+
+    public Future<JsonObject> finish() {
+        return flush().map(flushed -> new JsonObject()
+                .put("rows", rows)
+                .put("created", created)
+                .put("failed", failed)
+                .put("results", report));
+    }
+
+    private void reject(int index, String error) {
+        failed++;
+        report.add(new JsonObject().put("row", index).put("error", error));
+    }
+
+    private Future<Void> flush() {
+        if (pending.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        final List<Service> batch = pending;
+        final List<Integer> batchRows = pendingRows;
+        pending = new ArrayList<>();
+        pendingRows = new ArrayList<>();
+
+        Future<Void> flushFuture = Future.future();
+        apiPollerService.createAll(batch)
+                .setHandler(createRequest -> {
+                    if (createRequest.failed()) {
+                        log.error("An error occurred while importing {} services", batch.size(), createRequest.cause());
+                        batchRows.forEach(index -> reject(index, "An error occurred while saving service: " + createRequest.cause().getMessage()));
+                    } else {
+                        final List<Service> saved = createRequest.result();
+                        for (int i = 0; i < saved.size(); i++) {
+                            final Service service = saved.get(i);
+                            if (service == null) {
+                                reject(batchRows.get(i), "Service url or name already registered");
+                            } else {
+                                created++;
+                                report.add(new JsonObject().put("row", batchRows.get(i)).put(SERVICE_ID, service.getId()));
+                                createdHandler.handle(service);
+                            }
+                        }
+                    }
+                    flushFuture.complete();
+                });
+        return flushFuture;
+    }
+}
@@ -0,0 +1,189 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Limits the probes sent to each host to {@code maxInFlightPerHost} at the same time and to a rate of
+ * {@code ratePerSecond} with bursts of {@code burst} (token bucket). Probes over the limits wait in a
+ * FIFO queue per host, a limit of 0 or less disables it.
+ * <p>
+ * Must only be used from the event loop of the verticle that owns it.
+ */
+public class HostLimiter {
+    public static final int DEFAULT_MAX_IN_FLIGHT_PER_HOST = 8;
+    public static final double DEFAULT_RATE_PER_SECOND = 10;
+    public static final int DEFAULT_BURST = 10;
+
+    private final Vertx vertx;
+    private final int maxInFlightPerHost;
+    private final double ratePerSecond;
+    private final int burst;
+    private final LongSupplier nanoClock;
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+
+    private long delayed;
+
+    public HostLimiter(Vertx vertx, int maxInFlightPerHost, double ratePerSecond, int burst) {
+        this(vertx, maxInFlightPerHost, ratePerSecond, burst, System::nanoTime);
+    }
+
+    HostLimiter(Vertx vertx, int maxInFlightPerHost, double ratePerSecond, int burst, LongSupplier nanoClock) {
+        this.vertx = vertx;
+        this.maxInFlightPerHost = maxInFlightPerHost;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, burst);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Limiter letting every probe through right away.
+     */
+    public static HostLimiter unlimited() {
+        return new HostLimiter(null, 0, 0, 1);
+    }
+
+    public <T> Future<T> submit(String host, Supplier<Future<T>> task) {
+        if (host == null || (maxInFlightPerHost <= 0 && ratePerSecond <= 0)) {
+            return task.get();
+        }
+        Future<T> result = Future.future();
+        final HostQueue queue = hosts.computeIfAbsent(host, key -> new HostQueue(nanoClock.getAsLong()));
+        final Runnable queued = () -> run(host, queue, task, result);
+        queue.tasks.add(queued);
+        drain(host, queue);
+        // still at the tail when the host is saturated, counted once however many drains it waits for
+        if (queue.tasks.peekLast() == queued) {
+            delayed++;
+        }
+        return result;
+    }
+
+    public int getQueued() {
+        return hosts.values().stream().mapToInt(queue -> queue.tasks.size()).sum();
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("max_in_flight_per_host", maxInFlightPerHost)
+                .put("rate_per_second", ratePerSecond)
+                .put("burst", burst)
+                .put("hosts", hosts.size())
+                .put("queued", getQueued())
+                .put("delayed", delayed);
+    }
+
+    /**
+     * @return the hosts with the most queued probes, at most {@code limit}
+     */
+    public JsonArray queuesToJson(int limit) {
+        final JsonArray json = new JsonArray();
+        hosts.entrySet()
+                .stream()
+                .sorted(Comparator.comparingInt((Map.Entry<String, HostQueue> entry) -> entry.getValue().tasks.size()).reversed())
+                .limit(limit)
+                .forEach(entry -> json.add(new JsonObject()
+                        .put("host", entry.getKey())
+                        .put("queued", entry.getValue().tasks.size())
+                        .put("in_flight", entry.getValue().inFlight)));
+        return json;
+    }
+
+    private <T> void run(String host, HostQueue queue, Supplier<Future<T>> task, Future<T> result) {
+        queue.inFlight++;
+        Future<T> taskFuture;
+        try {
+            taskFuture = task.get();
+        } catch (RuntimeException e) {
+            taskFuture = Future.failedFuture(e);
+        }
+        taskFuture.setHandler(done -> {
+            queue.inFlight--;
+            result.handle(done);
+            drain(host, queue);
+        });
+    }
+
+    private void drain(String host, HostQueue queue) {
+        // tasks completing synchronously re-enter here, the outer loop picks up the next one
+        if (queue.draining) {
+            return;
+        }
+        queue.draining = true;
+        try {
+            while (!queue.tasks.isEmpty() && (maxInFlightPerHost <= 0 || queue.inFlight < maxInFlightPerHost)) {
+                final long waitMs = queue.acquire();
+                if (waitMs > 0) {
+                    if (queue.timerId == null) {
+                        queue.timerId = vertx.setTimer(waitMs, id -> {
+                            queue.timerId = null;
+                            drain(host, queue);
+                        });
+                    }
+                    return;
+                }
+                queue.tasks.poll().run();
+            }
+            if (queue.tasks.isEmpty() && queue.inFlight == 0 && queue.timerId == null && queue.isFull()) {
+                hosts.remove(host, queue);
+            }
+        } finally {
+            queue.draining = false;
+        }
+    }
+
+    private class HostQueue {
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+        private int inFlight;
+        private boolean draining;
+        private Long timerId;
+        private double tokens = burst;
+        private long refilledAt;
+
+        HostQueue(long now) {
+            this.refilledAt = now;
+        }
+
+        /**
+         * Takes a token when one is available.
+         *
+         * @return 0 when a token was taken, otherwise the milliseconds until the next one
+         */
+        long acquire() {
+            if (ratePerSecond <= 0) {
+                return 0;
+            }
+            refill();
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / ratePerSecond * 1000));
+        }
+
+        boolean isFull() {
+            if (ratePerSecond <= 0) {
+                return true;
+            }
+            refill();
+            return tokens >= burst;
+        }
+
+        private void refill() {
+            final long now = nanoClock.getAsLong();
+            tokens = Math.min(burst, tokens + (now - refilledAt) / (double) TimeUnit.SECONDS.toNanos(1) * ratePerSecond);
+            refilledAt = now;
+        }
+    }
+}
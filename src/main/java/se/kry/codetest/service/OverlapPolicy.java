@@ -0,0 +1,22 @@
+package se.kry.codetest.service;
+
+/**
+ * What to do with a poll of a service whose previous probe is still pending.
+ */
+public enum OverlapPolicy {
+    // drop the poll, its caller gets the result of the pending probe
+    SKIP,
+    // probe again once the pending probe completes, overlapping polls share that one follow up probe
+    QUEUE;
+
+    /**
+     * @throws IllegalArgumentException when the value is not a policy
+     */
+    public static OverlapPolicy parse(String value) {
+        try {
+            return valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid overlap policy " + value + ", expected skip or queue");
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package se.kry.codetest.service;
+
+import se.kry.codetest.model.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stretches the poll interval of services failing repeatedly. Once a service failed {@code threshold}
+ * times in a row, its interval is multiplied by {@code multiplier} on each further failure, up to
+ * {@code maxIntervalMs}. The first successful probe brings it back to its own interval.
+ * <p>
+ * Must only be used from the event loop of the verticle that owns it.
+ */
+public class PollBackoff {
+    public static final int DEFAULT_THRESHOLD = 2;
+    public static final double DEFAULT_MULTIPLIER = 2;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 60 * 60 * 1000;
+
+    private final boolean enabled;
+    private final int threshold;
+    private final double multiplier;
+    private final long maxIntervalMs;
+    // consecutive failures of services failing, services answering have no entry
+    private final Map<String, Integer> failures = new HashMap<>();
+
+    /**
+     * Backoff disabled, services are always polled on their own interval.
+     */
+    public PollBackoff() {
+        this(false, DEFAULT_THRESHOLD, DEFAULT_MULTIPLIER, DEFAULT_MAX_INTERVAL_MS);
+    }
+
+    public PollBackoff(boolean enabled, int threshold, double multiplier, long maxIntervalMs) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Backoff threshold must be at least 1");
+        }
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("Backoff multiplier must be at least 1");
+        }
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.multiplier = multiplier;
+        this.maxIntervalMs = maxIntervalMs;
+    }
+
+    public void record(String id, boolean success) {
+        if (success) {
+            failures.remove(id);
+        } else {
+            failures.merge(id, 1, Integer::sum);
+        }
+    }
+
+    public long intervalMs(Service service) {
+        final long baseMs = service.effectivePollIntervalMs();
+        final int failed = failures.getOrDefault(service.getId(), 0);
+        if (!enabled || failed < threshold) {
+            return baseMs;
+        }
+        final double stretched = baseMs * Math.pow(multiplier, failed - threshold + 1);
+        return (long) Math.min(stretched, Math.max(baseMs, maxIntervalMs));
+    }
+
+    public BackoffState getState(Service service) {
+        final long intervalMs = intervalMs(service);
+        return BackoffState.builder()
+                .backingOff(intervalMs > service.effectivePollIntervalMs())
+                .consecutiveFailures(failures.getOrDefault(service.getId(), 0))
+                .intervalMs(intervalMs)
+                .build();
+    }
+
+    /**
+     * @return number of services failing at least {@code threshold} times in a row
+     */
+    public int countBackingOff() {
+        if (!enabled) {
+            return 0;
+        }
+        return (int) failures.values().stream().filter(failed -> failed >= threshold).count();
+    }
+
+    public void forget(String id) {
+        failures.remove(id);
+    }
+}
@@ -0,0 +1,81 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.Future;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Supplier;
+
+/**
+ * Runs probes with a global limit on the number in flight, extra probes wait in a FIFO queue.
+ * <p>
+ * Must only be used from the event loop of the verticle that owns it.
+ */
+public class PollExecutor {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    private final int maxInFlight;
+    private final Deque<Runnable> queue = new ArrayDeque<>();
+
+    private int inFlight;
+    private long completed;
+    private boolean draining;
+
+    public PollExecutor() {
+        this(DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public PollExecutor(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Max in flight polls must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    public <T> Future<T> submit(Supplier<Future<T>> task) {
+        Future<T> result = Future.future();
+        queue.add(() -> run(task, result));
+        drain();
+        return result;
+    }
+
+    public PollExecutorStats getStats() {
+        return PollExecutorStats.builder()
+                .maxInFlight(maxInFlight)
+                .queued(queue.size())
+                .inFlight(inFlight)
+                .completed(completed)
+                .build();
+    }
+
+    private <T> void run(Supplier<Future<T>> task, Future<T> result) {
+        inFlight++;
+        Future<T> taskFuture;
+        try {
+            taskFuture = task.get();
+        } catch (RuntimeException e) {
+            taskFuture = Future.failedFuture(e);
+        }
+        taskFuture.setHandler(done -> {
+            inFlight--;
+            completed++;
+            result.handle(done);
+            drain();
+        });
+    }
+
+    private void drain() {
+        // tasks completing synchronously re-enter here, the outer loop picks up the next one
+        if (draining) {
+            return;
+        }
+        draining = true;
+        try {
+            while (inFlight < maxInFlight && !queue.isEmpty()) {
+                queue.poll().run();
+            }
+        } finally {
+            draining = false;
+        }
+    }
+}
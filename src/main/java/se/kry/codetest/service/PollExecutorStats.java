@@ -0,0 +1,24 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.json.JsonObject;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@Builder
+@ToString
+public class PollExecutorStats {
+    private final int maxInFlight;
+    private final int queued;
+    private final int inFlight;
+    private final long completed;
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("max_in_flight", maxInFlight)
+                .put("queued", queued)
+                .put("in_flight", inFlight)
+                .put("completed", completed);
+    }
+}
@@ -2,22 +2,186 @@ package se.kry.codetest.service;
 
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
-import io.vertx.ext.web.client.WebClient;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.net.NetClient;
+import se.kry.codetest.model.ProbeResult;
+import se.kry.codetest.model.ProbeType;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class Poller {
     public static final int DEFAULT_TIMEOUT_MS = 3000;
-    private final WebClient webClient;
+    public static final int DEFAULT_MAX_BODY_BYTES = 64 * 1024;
+    private final Vertx vertx;
+    private final HttpClient httpClient;
+    private final NetClient netClient;
+    // bytes of a GET response read before the probe stops reading and drops the connection
+    private final int maxBodyBytes;
+    private final ProbeConnections connections = new ProbeConnections();
 
     public Poller(Vertx vertx) {
-        this.webClient = WebClient.create(vertx);
+        this(vertx, ProbeClientOptions.builder().build());
+    }
+
+    public Poller(Vertx vertx, ProbeClientOptions options) {
+        this.vertx = vertx;
+        this.httpClient = vertx.createHttpClient(options.toHttpClientOptions());
+        this.netClient = vertx.createNetClient();
+        this.maxBodyBytes = options.getMaxBodyBytes();
+    }
+
+    public ProbeConnections getConnections() {
+        return connections;
     }
 
     public Future<Boolean> pollService(String url) {
-        Future<Boolean> future = Future.future();
+        return probe(url).map(ProbeResult::isSuccess);
+    }
+
+    public Future<ProbeResult> probe(String url) {
+        return probe(url, ProbeType.GET, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Probes the url and times the connection, the first response byte and the end of the probe.
+     * HTTP probes succeed on a status code below 400, TCP probes once connected.
+     * The returned future never fails, an unreachable service gives an unsuccessful result.
+     */
+    public Future<ProbeResult> probe(String url, ProbeType probeType, long timeoutMs) {
+        switch (probeType) {
+            case TCP:
+                return connect(url, timeoutMs);
+            case HEAD:
+                return request(HttpMethod.HEAD, url, timeoutMs);
+            default:
+                return request(HttpMethod.GET, url, timeoutMs);
+        }
+    }
+
+    private Future<ProbeResult> request(HttpMethod method, String url, long timeoutMs) {
+        Future<ProbeResult> future = Future.future();
+        final ProbeTimer timer = new ProbeTimer();
 
-        webClient.getAbs(url)
-                .timeout(DEFAULT_TIMEOUT_MS)
-                .send(req -> future.complete(req.succeeded()));
+        final HttpClientRequest request;
+        final String host = hostKey(url);
+        try {
+            request = httpClient.requestAbs(method, url);
+        } catch (RuntimeException e) {
+            future.complete(timer.failed(false));
+            return future;
+        }
+        connections.onRequest(host);
+        request.setTimeout(timeoutMs)
+                .setFollowRedirects(true)
+                .connectionHandler(connection -> {
+                    timer.connected();
+                    connections.onConnection(host, connection);
+                })
+                .exceptionHandler(error -> future.tryComplete(timer.failed(error instanceof TimeoutException)))
+                .handler(response -> {
+                    timer.firstByte();
+                    connections.onResponse(host, response.version());
+                    final boolean success = response.statusCode() < 400;
+                    final long[] read = {0};
+                    response.exceptionHandler(error -> future.tryComplete(timer.failed(error instanceof TimeoutException)))
+                            .endHandler(end -> future.tryComplete(timer.result(success, false)))
+                            .handler(chunk -> {
+                                read[0] += chunk.length();
+                                if (read[0] > maxBodyBytes && future.tryComplete(timer.result(success, false))) {
+                                    // the status is known, drop the connection instead of downloading the rest
+                                    request.reset();
+                                }
+                            });
+                })
+                .end();
         return future;
     }
+
+    /**
+     * @return host and port the url points to, or null when it is not a valid url
+     */
+    public static String hostKey(String url) {
+        try {
+            final URI uri = URI.create(url);
+            if (uri.getHost() == null) {
+                return null;
+            }
+            return uri.getHost() + ":" + port(uri);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int port(URI uri) {
+        return uri.getPort() != -1 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    private Future<ProbeResult> connect(String url, long timeoutMs) {
+        Future<ProbeResult> future = Future.future();
+        final ProbeTimer timer = new ProbeTimer();
+
+        final String host;
+        final int port;
+        try {
+            final URI uri = URI.create(url);
+            host = uri.getHost();
+            port = port(uri);
+        } catch (IllegalArgumentException e) {
+            future.complete(timer.failed(false));
+            return future;
+        }
+        if (host == null) {
+            future.complete(timer.failed(false));
+            return future;
+        }
+
+        final long timerId = vertx.setTimer(timeoutMs, id -> future.tryComplete(timer.failed(true)));
+        netClient.connect(port, host, connection -> {
+            vertx.cancelTimer(timerId);
+            if (connection.failed()) {
+                future.tryComplete(timer.failed(false));
+                return;
+            }
+            timer.connected();
+            future.tryComplete(timer.result(true, false));
+            connection.result().close();
+        });
+        return future;
+    }
+
+    private static class ProbeTimer {
+        private final long start = System.nanoTime();
+        private long connectMs = ProbeResult.NOT_REACHED;
+        private long ttfbMs = ProbeResult.NOT_REACHED;
+
+        void connected() {
+            connectMs = elapsedMs();
+        }
+
+        void firstByte() {
+            ttfbMs = elapsedMs();
+        }
+
+        ProbeResult failed(boolean timedOut) {
+            return result(false, timedOut);
+        }
+
+        ProbeResult result(boolean success, boolean timedOut) {
+            return ProbeResult.builder()
+                    .success(success)
+                    .timedOut(timedOut)
+                    .connectMs(connectMs)
+                    .ttfbMs(ttfbMs)
+                    .totalMs(elapsedMs())
+                    .build();
+        }
+
+        private long elapsedMs() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
 }
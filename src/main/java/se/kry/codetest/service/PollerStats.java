@@ -0,0 +1,35 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.json.JsonObject;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@Builder
+@ToString
+public class PollerStats {
+    private final PollExecutorStats executor;
+    private final long statusWrites;
+    private final long statusWritesAvoided;
+    private final int pendingStatusWrites;
+    private final int backingOff;
+    private final JsonObject connections;
+    private final JsonObject hostLimits;
+    private final OverlapPolicy overlapPolicy;
+    private final long overlaps;
+    private final int pendingServices;
+
+    public JsonObject toJson() {
+        return executor.toJson()
+                .put("status_writes", statusWrites)
+                .put("status_writes_avoided", statusWritesAvoided)
+                .put("pending_status_writes", pendingStatusWrites)
+                .put("backing_off", backingOff)
+                .put("connections", connections)
+                .put("host_limits", hostLimits)
+                .put("overlap_policy", overlapPolicy.name().toLowerCase())
+                .put("overlaps", overlaps)
+                .put("pending_services", pendingServices);
+    }
+}
@@ -0,0 +1,52 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Arrays;
+
+/**
+ * Connection settings of the probes. Connections are pooled per host and port, kept alive between
+ * probes and closed after being idle for {@code idleTimeoutSeconds}.
+ */
+@Getter
+@Builder
+@ToString
+public class ProbeClientOptions {
+    public static final int DEFAULT_MAX_POOL_SIZE_PER_HOST = 4;
+    public static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 90;
+    public static final int DEFAULT_HTTP2_MULTIPLEXING_LIMIT = 100;
+
+    @Builder.Default
+    private final int maxPoolSizePerHost = DEFAULT_MAX_POOL_SIZE_PER_HOST;
+    @Builder.Default
+    private final boolean keepAlive = true;
+    @Builder.Default
+    private final int idleTimeoutSeconds = DEFAULT_IDLE_TIMEOUT_SECONDS;
+    // HTTP/2 through ALPN on https and h2c upgrade on http, falling back to HTTP/1.1 for targets without it
+    @Builder.Default
+    private final boolean http2 = false;
+    @Builder.Default
+    private final int http2MultiplexingLimit = DEFAULT_HTTP2_MULTIPLEXING_LIMIT;
+    @Builder.Default
+    private final int maxBodyBytes = Poller.DEFAULT_MAX_BODY_BYTES;
+
+    public HttpClientOptions toHttpClientOptions() {
+        final HttpClientOptions options = new HttpClientOptions()
+                .setMaxPoolSize(maxPoolSizePerHost)
+                .setKeepAlive(keepAlive)
+                .setIdleTimeout(idleTimeoutSeconds);
+        if (http2) {
+            options.setProtocolVersion(HttpVersion.HTTP_2)
+                    .setUseAlpn(true)
+                    .setAlpnVersions(Arrays.asList(HttpVersion.HTTP_2, HttpVersion.HTTP_1_1))
+                    .setHttp2ClearTextUpgrade(true)
+                    .setHttp2MaxPoolSize(1)
+                    .setHttp2MultiplexingLimit(http2MultiplexingLimit);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,121 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.http.HttpConnection;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Usage of the probe connection pools per host, to see how often probes reuse a kept alive connection.
+ * <p>
+ * Must only be used from the event loop of the verticle that owns it.
+ */
+public class ProbeConnections {
+
+    private final Map<String, HostConnections> hosts = new HashMap<>();
+    private final Set<HttpConnection> known = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    void onRequest(String host) {
+        final HostConnections hostConnections = hosts.computeIfAbsent(host, key -> new HostConnections());
+        hostConnections.requests++;
+        hostConnections.forgotten = false;
+    }
+
+    /**
+     * Called with the connection a request was sent on, counts it as opened the first time it is seen.
+     */
+    void onConnection(String host, HttpConnection connection) {
+        if (!known.add(connection)) {
+            return;
+        }
+        final HostConnections hostConnections = hosts.computeIfAbsent(host, key -> new HostConnections());
+        hostConnections.opened++;
+        hostConnections.open++;
+        connection.closeHandler(closed -> {
+            known.remove(connection);
+            hostConnections.open--;
+            if (hostConnections.forgotten && hostConnections.open == 0) {
+                hosts.remove(host, hostConnections);
+            }
+        });
+    }
+
+    void onResponse(String host, HttpVersion version) {
+        if (version == HttpVersion.HTTP_2) {
+            hosts.computeIfAbsent(host, key -> new HostConnections()).http2Requests++;
+        }
+    }
+
+    /**
+     * Drops the usage of a host no service probes anymore, once its last connection is closed.
+     */
+    public void forget(String host) {
+        final HostConnections hostConnections = hosts.get(host);
+        if (hostConnections == null) {
+            return;
+        }
+        if (hostConnections.open == 0) {
+            hosts.remove(host);
+        } else {
+            hostConnections.forgotten = true;
+        }
+    }
+
+    public JsonObject toJson() {
+        long open = 0;
+        long opened = 0;
+        long requests = 0;
+        for (HostConnections hostConnections : hosts.values()) {
+            open += hostConnections.open;
+            opened += hostConnections.opened;
+            requests += hostConnections.requests;
+        }
+        return new JsonObject()
+                .put("hosts", hosts.size())
+                .put("connections_open", open)
+                .put("connections_opened", opened)
+                .put("requests", requests)
+                .put("reuse_rate", requests == 0 ? 0 : Math.max(0, (double) (requests - opened) / requests));
+    }
+
+    /**
+     * @return the hosts with the most requests, at most {@code limit}
+     */
+    public JsonArray hostsToJson(int limit) {
+        final JsonArray json = new JsonArray();
+        hosts.entrySet()
+                .stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, HostConnections> entry) -> entry.getValue().requests).reversed())
+                .limit(limit)
+                .forEach(entry -> json.add(entry.getValue().toJson().put("host", entry.getKey())));
+        return json;
+    }
+
+    public long getOpen() {
+        return hosts.values().stream().mapToLong(hostConnections -> hostConnections.open).sum();
+    }
+
+    private static class HostConnections {
+        private long open;
+        private long opened;
+        private long requests;
+        private long http2Requests;
+        // no service probes the host anymore, dropped when its last connection closes
+        private boolean forgotten;
+
+        JsonObject toJson() {
+            return new JsonObject()
+                    .put("connections_open", open)
+                    .put("connections_opened", opened)
+                    .put("requests", requests)
+                    .put("http2_requests", http2Requests);
+        }
+    }
+}
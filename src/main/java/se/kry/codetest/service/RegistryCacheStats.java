@@ -0,0 +1,28 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.json.JsonObject;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@Builder
+@ToString
+public class RegistryCacheStats {
+    private final int size;
+    private final long hits;
+    private final long misses;
+
+    public double getHitRate() {
+        final long reads = hits + misses;
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("size", size)
+                .put("hits", hits)
+                .put("misses", misses)
+                .put("hit_rate", getHitRate());
+    }
+}
@@ -0,0 +1,205 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.model.ProbeType;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary copy of the registry, statuses included, written periodically so a restarted instance can serve and
+ * schedule the services it knew about before the store is even opened. The file is replaced atomically and read
+ * through a memory mapping; a missing, unreadable or corrupted snapshot reads as empty.
+ * Must only be used from the event loop of the verticle that owns it.
+ */
+@Slf4j
+public class RegistrySnapshot {
+    public static final long DEFAULT_INTERVAL_MS = 60 * 1000;
+
+    private static final int MAGIC = 0x53565253;
+    private static final int VERSION = 1;
+    // magic, version, written at, number of services, checksum of the services
+    private static final int HEADER_BYTES = 24;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final Vertx vertx;
+    private final Path path;
+    private long writtenVersion = -1;
+    private boolean writing;
+
+    public RegistrySnapshot(Vertx vertx, String path) {
+        this.vertx = vertx;
+        this.path = Paths.get(path);
+    }
+
+    public Future<List<Service>> read() {
+        Future<List<Service>> resultFuture = Future.future();
+        vertx.<List<Service>>executeBlocking(reading -> {
+            try {
+                reading.complete(readFile());
+            } catch (NoSuchFileException e) {
+                reading.complete(Collections.emptyList());
+            } catch (IOException | RuntimeException e) {
+                log.warn("Ignoring unreadable registry snapshot {}", path, e);
+                reading.complete(Collections.emptyList());
+            }
+        }, resultFuture);
+        return resultFuture;
+    }
+
+    /**
+     * Replaces the snapshot with the services, unless the registry is still at the version last written or a write is running.
+     *
+     * @return whether the snapshot was written
+     */
+    public Future<Boolean> write(long version, List<Service> services) {
+        if (version == writtenVersion || writing) {
+            return Future.succeededFuture(false);
+        }
+        writing = true;
+        Future<Boolean> resultFuture = Future.future();
+        vertx.<Boolean>executeBlocking(writingFile -> {
+            try {
+                writeFile(services);
+                writingFile.complete(true);
+            } catch (IOException e) {
+                writingFile.fail(e);
+            }
+        }, written -> {
+            writing = false;
+            if (written.succeeded()) {
+                writtenVersion = version;
+            }
+            resultFuture.handle(written);
+        });
+        return resultFuture;
+    }
+
+    private List<Service> readFile() throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a registry snapshot of version " + VERSION);
+        }
+        final long writtenAt = buffer.getLong();
+        final int count = buffer.getInt();
+        final int checksum = buffer.getInt();
+        final ByteBuffer body = buffer.slice();
+        if (checksum(body.duplicate()) != checksum) {
+            throw new IOException("Registry snapshot checksum mismatch");
+        }
+        final List<Service> services = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            services.add(readService(body));
+        }
+        log.info("Read {} services from the registry snapshot written {} ms ago", count, System.currentTimeMillis() - writtenAt);
+        return services;
+    }
+
+    private void writeFile(List<Service> services) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES + services.size() * 128);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(services.size());
+        out.writeInt(0);
+        for (Service service : services) {
+            writeService(out, service);
+        }
+        final ByteBuffer snapshot = ByteBuffer.wrap(bytes.toByteArray());
+        snapshot.putInt(HEADER_BYTES - Integer.BYTES, checksum(ByteBuffer.wrap(snapshot.array(), HEADER_BYTES, snapshot.capacity() - HEADER_BYTES)));
+
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (snapshot.hasRemaining()) {
+                channel.write(snapshot);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeService(DataOutputStream out, Service service) throws IOException {
+        writeString(out, service.getId());
+        writeString(out, service.getName());
+        writeString(out, service.getUrl());
+        out.writeByte(service.getServiceStatus() != null ? service.getServiceStatus().ordinal() : -1);
+        out.writeLong(service.getCreationDate() != null
+                ? service.getCreationDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : NO_DATE);
+        out.writeLong(service.getPollIntervalMs());
+        out.writeByte(service.getProbeType() != null ? service.getProbeType().ordinal() : -1);
+    }
+
+    private static Service readService(ByteBuffer in) {
+        final String id = readString(in);
+        final String name = readString(in);
+        final String url = readString(in);
+        final byte status = in.get();
+        final long creationDate = in.getLong();
+        final long pollIntervalMs = in.getLong();
+        final byte probeType = in.get();
+        return Service.builder()
+                .id(id)
+                .name(name)
+                .url(url)
+                .serviceStatus(status >= 0 ? ServiceStatus.values()[status] : ServiceStatus.UNKNOWN)
+                .creationDate(creationDate != NO_DATE
+                        ? LocalDateTime.ofInstant(Instant.ofEpochMilli(creationDate), ZoneId.systemDefault())
+                        : null)
+                .pollIntervalMs(pollIntervalMs)
+                .probeType(probeType >= 0 ? ProbeType.values()[probeType] : null)
+                .build();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static String readString(ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] encoded = new byte[length];
+        in.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer body) {
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+}
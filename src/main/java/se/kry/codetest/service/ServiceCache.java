@@ -0,0 +1,99 @@
+package se.kry.codetest.service;
+
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of the registry by id and by url, ordered by id for keyset pagination.
+ */
+class ServiceCache {
+
+    private final NavigableMap<String, Service> servicesById = new TreeMap<>();
+    private final Map<String, Service> servicesByUrl = new HashMap<>();
+    // bumped on every change, lets readers tell whether something derived from the cache is stale
+    private long version;
+
+    synchronized void putAll(List<Service> services) {
+        services.forEach(svc -> {
+            if (!servicesById.containsKey(svc.getId())) {
+                put(svc);
+            }
+        });
+        version++;
+    }
+
+    synchronized void replaceAll(List<Service> services) {
+        servicesById.clear();
+        servicesByUrl.clear();
+        services.forEach(this::put);
+        version++;
+    }
+
+    synchronized void put(Service service) {
+        final Service previous = servicesById.put(service.getId(), service);
+        if (previous != null) {
+            servicesByUrl.remove(previous.getUrl());
+        }
+        servicesByUrl.put(service.getUrl(), service);
+        version++;
+    }
+
+    synchronized boolean updateStatus(String id, ServiceStatus status) {
+        final Service service = servicesById.get(id);
+        if (service == null) {
+            return false;
+        }
+        put(service.withServiceStatus(status));
+        return true;
+    }
+
+    synchronized void remove(String id) {
+        final Service previous = servicesById.remove(id);
+        if (previous != null) {
+            servicesByUrl.remove(previous.getUrl());
+            version++;
+        }
+    }
+
+    synchronized void clear() {
+        servicesById.clear();
+        servicesByUrl.clear();
+        version++;
+    }
+
+    synchronized Service get(String id) {
+        return servicesById.get(id);
+    }
+
+    synchronized Service getByUrl(String url) {
+        return servicesByUrl.get(url);
+    }
+
+    synchronized List<Service> values() {
+        return new ArrayList<>(servicesById.values());
+    }
+
+    synchronized List<Service> page(String afterId, int limit) {
+        final Map<String, Service> tail = afterId != null ? servicesById.tailMap(afterId, false) : servicesById;
+        return tail.values()
+                .stream()
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    synchronized int size() {
+        return servicesById.size();
+    }
+}
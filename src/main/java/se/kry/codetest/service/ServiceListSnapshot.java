@@ -0,0 +1,17 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.buffer.Buffer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Encoded JSON array of the whole registry at a given cache version.
+ */
+@Getter
+@AllArgsConstructor
+public class ServiceListSnapshot {
+    private final long version;
+    private final long builtAt;
+    private final String etag;
+    private final Buffer body;
+}
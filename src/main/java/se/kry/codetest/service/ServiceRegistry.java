@@ -2,43 +2,248 @@ package se.kry.codetest.service;
 
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import se.kry.codetest.events.ServiceEvents;
+import se.kry.codetest.mapper.ServiceMapper;
+import se.kry.codetest.model.ProbeType;
 import se.kry.codetest.model.Service;
 import se.kry.codetest.model.ServiceStatus;
 import se.kry.codetest.repository.ServiceRegistryRepository;
+import se.kry.codetest.repository.ServiceStore;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 public class ServiceRegistry {
 
+    public static final long MIN_POLL_INTERVAL_MS = 1000;
+
     private final Pattern pattern = Pattern.compile("http(s?):\\/\\/(www\\.)?[a-zA-Z0-9\\-\\.\\/]*");
-    private final ServiceRegistryRepository repository;
+    private final ServiceStore repository;
+    private final EventBus eventBus;
+    private final ServiceCache cache = new ServiceCache();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private Future<Void> loadFuture;
+    // distinguishes versions of this process from the ones of a previous run in etags
+    private final long epoch = System.currentTimeMillis();
+    // advances on every rebuild of the list, including the ones only refreshing derived content
+    private final AtomicLong snapshotGeneration = new AtomicLong();
+    private volatile ServiceListSnapshot snapshot;
+    private volatile Function<Service, JsonObject> listMapper = ServiceMapper::toJsonObject;
+    private volatile long snapshotMaxAgeMs = Long.MAX_VALUE;
 
     public ServiceRegistry(Vertx vertx) {
-        this.repository = new ServiceRegistryRepository(vertx);
+        this(vertx, new ServiceRegistryRepository(vertx));
+    }
+
+    public ServiceRegistry(Vertx vertx, ServiceStore repository) {
+        this.repository = repository;
+        this.eventBus = vertx.eventBus();
+    }
+
+    /**
+     * Loads the registry in memory, reads are then served from memory and writes go through to the database.
+     */
+    public synchronized Future<Void> load() {
+        if (loadFuture == null || loadFuture.failed()) {
+            loadFuture = Future.future();
+            final Future<Void> loading = loadFuture;
+            repository.findAll()
+                    .setHandler(findAllRequest -> {
+                        if (findAllRequest.failed()) {
+                            loading.fail(findAllRequest.cause());
+                        } else {
+                            cache.putAll(findAllRequest.result());
+                            loading.complete();
+                        }
+                    });
+        }
+        return loadFuture;
+    }
+
+    /**
+     * Serves the services, from a {@link RegistrySnapshot}, until the registry is reloaded from the database.
+     *
+     * @return false when the registry was already loaded, the services are then ignored
+     */
+    public synchronized boolean preload(List<Service> services) {
+        if (loadFuture != null && !loadFuture.failed()) {
+            return false;
+        }
+        cache.putAll(services);
+        loadFuture = Future.succeededFuture();
+        return true;
+    }
+
+    /**
+     * Writes the registry to the snapshot, unless nothing changed since the snapshot was last written.
+     */
+    public synchronized Future<Boolean> writeSnapshot(RegistrySnapshot registrySnapshot) {
+        if (loadFuture == null || !loadFuture.succeeded()) {
+            return Future.succeededFuture(false);
+        }
+        // read the version before the services so the snapshot is never labelled newer than its content
+        final long version = cache.getVersion();
+        return registrySnapshot.write(version, cache.values());
+    }
+
+    /**
+     * Replaces the in-memory registry with the database content, picking up changes made by other instances.
+     */
+    public Future<List<Service>> reload() {
+        return repository.findAll()
+                .map(services -> {
+                    cache.replaceAll(services);
+                    return services;
+                });
+    }
+
+    public RegistryCacheStats getCacheStats() {
+        return RegistryCacheStats.builder()
+                .size(cache.size())
+                .hits(cacheHits.get())
+                .misses(cacheMisses.get())
+                .build();
     }
 
     public Future<Boolean> deleteAll() {
-        return repository.truncate();
+        return repository.truncate()
+                .map(truncated -> {
+                    cache.clear();
+                    eventBus.publish(ServiceEvents.ADDRESS, ServiceEvents.cleared());
+                    return truncated;
+                });
     }
 
     public Future<List<Service>> getAll() {
-        return repository.findAll();
+        return whenLoaded().map(loaded -> cache.values());
+    }
+
+    /**
+     * Sets how services are written in list snapshots. Snapshots are rebuilt when the registry changes
+     * or when they are older than {@code maxAgeMs}, for content derived from something else than the registry.
+     */
+    public void setListMapper(Function<Service, JsonObject> listMapper, long maxAgeMs) {
+        this.listMapper = listMapper;
+        this.snapshotMaxAgeMs = maxAgeMs;
+        this.snapshot = null;
+    }
+
+    /**
+     * Encoded list of all services, only re-encoded when the registry changed since the last call.
+     */
+    public Future<ServiceListSnapshot> getSnapshot() {
+        return whenLoaded().map(loaded -> {
+            final ServiceListSnapshot current = snapshot;
+            final long now = System.currentTimeMillis();
+            // read the version before the services so a snapshot is never labelled newer than its content
+            final long version = cache.getVersion();
+            if (current != null && current.getVersion() == version && now - current.getBuiltAt() < snapshotMaxAgeMs) {
+                return current;
+            }
+            final JsonArray services = new JsonArray();
+            cache.values().forEach(svc -> services.add(listMapper.apply(svc)));
+            final long generation = snapshotGeneration.incrementAndGet();
+            final String etag = "\"" + epoch + "-" + version + "-" + generation + "\"";
+            final ServiceListSnapshot rebuilt = new ServiceListSnapshot(version, now, etag, services.toBuffer());
+            snapshot = rebuilt;
+            return rebuilt;
+        });
+    }
+
+    public Future<List<Service>> getPage(String afterId, int limit) {
+        if (limit < 1) {
+            return Future.failedFuture(new IllegalArgumentException("Page limit must be at least 1"));
+        }
+        return whenLoaded().map(loaded -> cache.page(afterId, limit));
+    }
+
+    public Future<Service> get(String id) {
+        if (id == null) {
+            return Future.failedFuture(new IllegalArgumentException("Id to get service must not be null"));
+        }
+        return whenLoaded().map(loaded -> countLookup(cache.get(id)));
+    }
+
+    public Future<Service> getByUrl(String url) {
+        if (url == null) {
+            return Future.failedFuture(new IllegalArgumentException("Url to get service must not be null"));
+        }
+        return whenLoaded().map(loaded -> countLookup(cache.getByUrl(url)));
     }
 
     public Future<String> create(String url, String name) {
-        if (url != null && pattern.matcher(url).matches()) {
-            return repository.save(url, name, ServiceStatus.UNKNOWN);
-        } else {
-            return Future.failedFuture(new IllegalArgumentException("Invalid url format"));
+        return create(url, name, Service.DEFAULT_POLL_INTERVAL_MS, ProbeType.GET);
+    }
+
+    public Future<String> create(String url, String name, long pollIntervalMs, ProbeType probeType) {
+        final String validationError = validate(url, pollIntervalMs);
+        if (validationError != null) {
+            return Future.failedFuture(new IllegalArgumentException(validationError));
+        }
+        return repository.save(url, name, ServiceStatus.UNKNOWN, pollIntervalMs, probeType)
+                .compose(id -> repository.findById(id)
+                        .map(created -> {
+                            if (created != null) {
+                                cache.put(created);
+                                eventBus.publish(ServiceEvents.ADDRESS, ServiceEvents.created(created));
+                            }
+                            return id;
+                        }));
+    }
+
+    /**
+     * Saves already validated services at once, see {@link ServiceStore#saveAll(List)}.
+     */
+    public Future<List<Service>> createAll(List<Service> services) {
+        if (services.isEmpty()) {
+            return Future.succeededFuture(Collections.emptyList());
         }
+        return repository.saveAll(services)
+                .map(saved -> {
+                    saved.stream()
+                            .filter(Objects::nonNull)
+                            .forEach(created -> {
+                                cache.put(created);
+                                eventBus.publish(ServiceEvents.ADDRESS, ServiceEvents.created(created));
+                            });
+                    return saved;
+                });
+    }
+
+    /**
+     * @return why the service can not be registered or null when it is valid
+     */
+    String validate(String url, long pollIntervalMs) {
+        if (url == null || !pattern.matcher(url).matches()) {
+            return "Invalid url format";
+        }
+        if (pollIntervalMs < MIN_POLL_INTERVAL_MS) {
+            return "Poll interval must be at least " + MIN_POLL_INTERVAL_MS + " ms";
+        }
+        return null;
     }
 
     public Future<Boolean> delete(String id) {
         if (id == null) {
             return Future.failedFuture(new IllegalArgumentException("Id to delete service must not be null"));
         }
-        return repository.delete(id);
+        return repository.delete(id)
+                .map(deleted -> {
+                    cache.remove(id);
+                    if (Boolean.TRUE.equals(deleted)) {
+                        eventBus.publish(ServiceEvents.ADDRESS, ServiceEvents.deleted(id));
+                    }
+                    return deleted;
+                });
     }
 
     public Future<Boolean> updateStatus(String id, ServiceStatus status) {
@@ -49,18 +254,74 @@ public class ServiceRegistry {
             return Future.failedFuture(new IllegalArgumentException("Status to update service must not be null"));
         }
 
-        return repository.updateStatus(id, status);
+        return repository.updateStatus(id, status)
+                .map(updated -> {
+                    if (cache.updateStatus(id, status)) {
+                        eventBus.publish(ServiceEvents.ADDRESS, ServiceEvents.statuses(Collections.singletonMap(id, status)));
+                    }
+                    return updated;
+                });
+    }
+
+    public Future<Integer> updateStatuses(Map<String, ServiceStatus> statuses) {
+        if (statuses == null) {
+            return Future.failedFuture(new IllegalArgumentException("Statuses to update services must not be null"));
+        }
+        if (statuses.containsKey(null) || statuses.containsValue(null)) {
+            return Future.failedFuture(new IllegalArgumentException("Ids and statuses to update services must not be null"));
+        }
+
+        return repository.updateStatuses(statuses)
+                .map(updated -> {
+                    statuses.forEach(cache::updateStatus);
+                    eventBus.publish(ServiceEvents.ADDRESS, ServiceEvents.statuses(statuses));
+                    return updated;
+                });
     }
 
     public Future<Boolean> createDb() {
         return repository.createDb();
     }
 
+    public Future<Void> close() {
+        return repository.close();
+    }
+
     public Future<Boolean> update(Service service) {
-        if (service.getUrl() != null && pattern.matcher(service.getUrl()).matches()) {
-            return repository.update(service);
-        } else {
+        if (service.getUrl() == null || !pattern.matcher(service.getUrl()).matches()) {
             return Future.failedFuture(new IllegalArgumentException("Invalid url format"));
         }
+        if (service.getPollIntervalMs() != 0 && service.getPollIntervalMs() < MIN_POLL_INTERVAL_MS) {
+            return Future.failedFuture(new IllegalArgumentException("Poll interval must be at least " + MIN_POLL_INTERVAL_MS + " ms"));
+        }
+        return repository.update(service)
+                .map(updated -> {
+                    final Service cached = cache.get(service.getId());
+                    if (Boolean.TRUE.equals(updated) && cached != null) {
+                        final Service updatedService = cached.toBuilder()
+                                .url(service.getUrl())
+                                .name(service.getName())
+                                .serviceStatus(ServiceStatus.UNKNOWN)
+                                .pollIntervalMs(service.getPollIntervalMs() > 0 ? service.getPollIntervalMs() : cached.getPollIntervalMs())
+                                .probeType(service.getProbeType() != null ? service.getProbeType() : cached.getProbeType())
+                                .build();
+                        cache.put(updatedService);
+                        eventBus.publish(ServiceEvents.ADDRESS, ServiceEvents.updated(updatedService));
+                    }
+                    return updated;
+                });
+    }
+
+    private Future<Void> whenLoaded() {
+        return load();
+    }
+
+    private Service countLookup(Service cached) {
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheMisses.incrementAndGet();
+        }
+        return cached;
     }
 }
@@ -0,0 +1,102 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Write-behind buffer for probe results. Statuses are coalesced per service id and written
+ * in one batch transaction once the buffer holds {@code maxBatchSize} entries or the oldest
+ * pending entry is {@code maxDelayMs} old, whichever comes first.
+ * <p>
+ * Must only be used from the event loop of the verticle that owns it.
+ */
+@Slf4j
+public class StatusWriteBuffer {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    public static final long DEFAULT_MAX_DELAY_MS = 1000;
+    public static final long RETRY_DELAY_MS = 1000;
+
+    private final Vertx vertx;
+    private final ServiceRegistry apiPollerService;
+    private final int maxBatchSize;
+    private final long maxDelayMs;
+
+    private Map<String, ServiceStatus> pending = new LinkedHashMap<>();
+    private Long flushTimerId;
+
+    public StatusWriteBuffer(Vertx vertx, ServiceRegistry apiPollerService, int maxBatchSize, long maxDelayMs) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Status write batch size must be at least 1");
+        }
+        this.vertx = vertx;
+        this.apiPollerService = apiPollerService;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Buffer that writes every status as soon as it is received, a failed write is retried with the next one.
+     */
+    public static StatusWriteBuffer writeThrough(ServiceRegistry apiPollerService) {
+        return new StatusWriteBuffer(null, apiPollerService, 1, 0);
+    }
+
+    public void write(String id, ServiceStatus status) {
+        pending.put(id, status);
+        if (pending.size() >= maxBatchSize || maxDelayMs <= 0) {
+            flush();
+        } else if (flushTimerId == null) {
+            flushTimerId = vertx.setTimer(maxDelayMs, timerId -> {
+                flushTimerId = null;
+                flush();
+            });
+        }
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    public Future<Integer> flush() {
+        if (flushTimerId != null) {
+            vertx.cancelTimer(flushTimerId);
+            flushTimerId = null;
+        }
+        if (pending.isEmpty()) {
+            return Future.succeededFuture(0);
+        }
+
+        final Map<String, ServiceStatus> batch = pending;
+        pending = new LinkedHashMap<>();
+
+        Future<Integer> flushFuture = Future.future();
+        apiPollerService.updateStatuses(batch)
+                .setHandler(updateRequest -> {
+                    if (updateRequest.failed()) {
+                        log.error("An error occurred while writing {} service statuses", batch.size(), updateRequest.cause());
+                        // keep newer statuses received while this batch was in flight
+                        batch.forEach(pending::putIfAbsent);
+                        scheduleRetry();
+                        flushFuture.fail(updateRequest.cause());
+                    } else {
+                        flushFuture.complete(updateRequest.result());
+                    }
+                });
+        return flushFuture;
+    }
+
+    private void scheduleRetry() {
+        if (vertx == null || flushTimerId != null) {
+            return;
+        }
+        flushTimerId = vertx.setTimer(Math.max(maxDelayMs, RETRY_DELAY_MS), timerId -> {
+            flushTimerId = null;
+            flush();
+        });
+    }
+}
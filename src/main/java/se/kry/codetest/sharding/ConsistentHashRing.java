@@ -0,0 +1,53 @@
+package se.kry.codetest.sharding;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Maps keys to members so that adding or removing a member only moves the keys of that member.
+ */
+public class ConsistentHashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+    private final SortedMap<Integer, String> ring = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        members.forEach(member -> {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(member + "#" + i), member);
+            }
+        });
+    }
+
+    /**
+     * @return the member owning the key or null when the ring is empty
+     */
+    public String owner(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        final SortedMap<Integer, String> tail = ring.tailMap(hash(key));
+        return tail.isEmpty() ? ring.get(ring.firstKey()) : tail.get(tail.firstKey());
+    }
+
+    public boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    // FNV-1a followed by the murmur3 finalizer to spread close keys around the ring
+    static int hash(String key) {
+        int hash = 0x811c9dc5;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
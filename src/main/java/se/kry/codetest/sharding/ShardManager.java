@@ -0,0 +1,114 @@
+package se.kry.codetest.sharding;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.repository.InstanceLeaseRepository;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits the services between the poller instances sharing a database. Every instance renews a
+ * lease in the database, the instances with a live lease form a consistent hash ring of service
+ * ids and each one only polls the ids it owns on that ring.
+ * <p>
+ * When sharding is disabled this instance owns every service.
+ */
+@Slf4j
+public class ShardManager {
+    public static final long DEFAULT_HEARTBEAT_MS = 5 * 1000;
+    public static final long DEFAULT_LEASE_TTL_MS = 15 * 1000;
+
+    private final Vertx vertx;
+    private final InstanceLeaseRepository repository;
+    private final String instanceId;
+    private final boolean enabled;
+    private final long heartbeatMs;
+    private final long leaseTtlMs;
+
+    private volatile List<String> members = Collections.emptyList();
+    private volatile ConsistentHashRing ring = new ConsistentHashRing(Collections.emptyList(), 0);
+    private volatile long lastRenewal;
+    private Long heartbeatTimerId;
+
+    public ShardManager(Vertx vertx, String instanceId, boolean enabled, long heartbeatMs, long leaseTtlMs) {
+        this.vertx = vertx;
+        this.repository = new InstanceLeaseRepository(vertx);
+        this.instanceId = instanceId;
+        this.enabled = enabled;
+        this.heartbeatMs = heartbeatMs;
+        this.leaseTtlMs = leaseTtlMs;
+    }
+
+    /**
+     * Completes once this instance holds a lease and knows the other members.
+     */
+    public Future<Void> start() {
+        if (!enabled) {
+            return Future.succeededFuture();
+        }
+        return repository.createDb()
+                .compose(created -> heartbeat())
+                .map(joined -> {
+                    heartbeatTimerId = vertx.setPeriodic(heartbeatMs, timerId -> heartbeat());
+                    log.info("Instance {} joined shard members {}", instanceId, members);
+                    return null;
+                });
+    }
+
+    public Future<Boolean> stop() {
+        if (!enabled) {
+            return Future.succeededFuture(false);
+        }
+        if (heartbeatTimerId != null) {
+            vertx.cancelTimer(heartbeatTimerId);
+            heartbeatTimerId = null;
+        }
+        return repository.release(instanceId);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean owns(String serviceId) {
+        if (!enabled) {
+            return true;
+        }
+        // past its ttl our lease may already have been given away, stop polling until it is renewed
+        if (System.currentTimeMillis() - lastRenewal > leaseTtlMs) {
+            return false;
+        }
+        return instanceId.equals(ring.owner(serviceId));
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("enabled", enabled)
+                .put("instance_id", instanceId)
+                .put("members", new JsonArray(members));
+    }
+
+    private Future<Void> heartbeat() {
+        final long now = System.currentTimeMillis();
+        return repository.renew(instanceId, now)
+                .compose(renewed -> repository.findAlive(now - leaseTtlMs))
+                .map(alive -> {
+                    lastRenewal = now;
+                    if (!alive.equals(members)) {
+                        log.info("Shard members changed from {} to {}", members, alive);
+                        members = alive;
+                        ring = new ConsistentHashRing(alive, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+                        repository.deleteExpired(now - leaseTtlMs);
+                    }
+                    return (Void) null;
+                })
+                .otherwise(error -> {
+                    log.error("An error occurred while renewing lease of instance {}", instanceId, error);
+                    return null;
+                });
+    }
+}
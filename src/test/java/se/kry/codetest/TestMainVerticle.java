@@ -1,9 +1,12 @@
 package se.kry.codetest;
 
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.junit5.Timeout;
 import io.vertx.junit5.VertxExtension;
@@ -12,15 +15,36 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.mapper.ServiceMapper;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.repository.LogServiceStore;
+import se.kry.codetest.repository.ServiceStores;
+import se.kry.codetest.service.RegistrySnapshot;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static se.kry.codetest.MainVerticle.POLLER_API_PATH;
+import static se.kry.codetest.MainVerticle.SCHEDULER_API_PATH;
 import static se.kry.codetest.MainVerticle.SERVICES_BASE_API_PATH;
 
 @ExtendWith(VertxExtension.class)
 class TestMainVerticle {
 
+    private static final int WARM_START_PORT = 8081;
+
     @BeforeEach
     void deploy_verticle(Vertx vertx, VertxTestContext testContext) {
         DeploymentOptions deploymentOptions = new DeploymentOptions()
@@ -43,4 +67,121 @@ class TestMainVerticle {
                 }));
     }
 
+    @Test
+    @DisplayName("Answer 304 on path /service when the services did not change")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void not_modified(Vertx vertx, VertxTestContext testContext) {
+        final WebClient webClient = WebClient.create(vertx);
+
+        webClient.get(8080, "::1", SERVICES_BASE_API_PATH)
+                .send(response -> {
+                    final String etag = response.result().getHeader("ETag");
+                    webClient.get(8080, "::1", SERVICES_BASE_API_PATH)
+                            .putHeader("If-None-Match", etag)
+                            .send(conditional -> testContext.verify(() -> {
+                                assertNotNull(etag);
+                                assertEquals(304, conditional.result().statusCode());
+                                testContext.completeNow();
+                            }));
+                });
+    }
+
+    @Test
+    @DisplayName("Serve the registry snapshot, then reconcile and reschedule it with the store")
+    @Timeout(value = 20, timeUnit = TimeUnit.SECONDS)
+    void warm_start(Vertx vertx, VertxTestContext testContext) throws IOException {
+        final Path directory = Files.createTempDirectory("warm-start");
+        final String storagePath = directory.resolve("store").toString();
+        final String snapshotPath = directory.resolve("registry.snapshot").toString();
+        final LogServiceStore store = new LogServiceStore(vertx, storagePath, LogServiceStore.DEFAULT_SYNC_MS, LogServiceStore.DEFAULT_COMPACT_INTERVAL_MS);
+        final AtomicReference<String> changed = new AtomicReference<>();
+        final LocalDateTime creationDate = LocalDateTime.now();
+        final JsonObject config = new JsonObject()
+                .put("db_path", "/tmp/poller.db")
+                .put(MainVerticle.HTTP_PORT_CONFIG, WARM_START_PORT)
+                .put(ServiceStores.STORAGE_ENGINE_CONFIG, ServiceStores.LOG)
+                .put(ServiceStores.STORAGE_PATH_CONFIG, storagePath)
+                .put(MainVerticle.REGISTRY_SNAPSHOT_PATH_CONFIG, snapshotPath)
+                // first polls spread over an hour, none is due while the test runs
+                .put(MainVerticle.STARTUP_SPREAD_MS_CONFIG, 60 * 60 * 1000);
+
+        store.createDb()
+                .compose(created -> store.save("https://www.kry.se/health", "kry", ServiceStatus.UNKNOWN))
+                .compose(id -> {
+                    changed.set(id);
+                    return store.save("https://www.google.com", "google", ServiceStatus.UNKNOWN);
+                })
+                .compose(added -> store.close())
+                .compose(closed -> new RegistrySnapshot(vertx, snapshotPath).write(1, Arrays.asList(
+                        Service.builder().id(changed.get()).name("kry").url("https://www.kry.se").serviceStatus(ServiceStatus.OK)
+                                .creationDate(creationDate).build(),
+                        Service.builder().id("deleted").name("deleted").url("https://www.example.com").serviceStatus(ServiceStatus.OK)
+                                .creationDate(creationDate).build())))
+                .compose(written -> {
+                    Future<String> deployed = Future.future();
+                    vertx.deployVerticle(new MainVerticle(), new DeploymentOptions().setConfig(config), deployed);
+                    return deployed;
+                })
+                .compose(deployed -> awaitServices(vertx, WebClient.create(vertx), services -> services.stream()
+                        .map(service -> ((JsonObject) service).getString(ServiceMapper.SERVICE_URL))
+                        .collect(Collectors.toSet())
+                        .equals(new HashSet<>(Arrays.asList("https://www.kry.se/health", "https://www.google.com")))))
+                .compose(reconciled -> {
+                    Future<HttpResponse<Buffer>> schedulerStats = Future.future();
+                    WebClient.create(vertx).get(WARM_START_PORT, "::1", SCHEDULER_API_PATH).send(schedulerStats);
+                    return schedulerStats;
+                })
+                .setHandler(testContext.succeeding(schedulerStats -> testContext.verify(() -> {
+                    // the deleted service is unscheduled, the added one scheduled
+                    assertEquals(2, schedulerStats.bodyAsJsonObject().getInteger("queue_depth"));
+                    testContext.completeNow();
+                })));
+    }
+
+    /**
+     * Lists the services until they match, the registry is reconciled with the store after the verticle is deployed.
+     */
+    private static Future<JsonArray> awaitServices(Vertx vertx, WebClient webClient, Predicate<JsonArray> expected) {
+        Future<JsonArray> matching = Future.future();
+        webClient.get(WARM_START_PORT, "::1", SERVICES_BASE_API_PATH)
+                .send(response -> {
+                    if (response.failed()) {
+                        matching.fail(response.cause());
+                    } else if (expected.test(response.result().bodyAsJsonArray())) {
+                        matching.complete(response.result().bodyAsJsonArray());
+                    } else {
+                        vertx.setTimer(100, timerId -> awaitServices(vertx, webClient, expected).setHandler(matching));
+                    }
+                });
+        return matching;
+    }
+
+    @Test
+    @DisplayName("Refuse to start sharded on a storage engine local to the instance")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void sharded_local_storage(Vertx vertx, VertxTestContext testContext) {
+        DeploymentOptions deploymentOptions = new DeploymentOptions()
+                .setConfig(new JsonObject()
+                        .put(MainVerticle.SHARDING_ENABLED_CONFIG, true)
+                        .put(ServiceStores.STORAGE_ENGINE_CONFIG, ServiceStores.MEMORY));
+        vertx.deployVerticle(new MainVerticle(), deploymentOptions, testContext.failing(cause -> testContext.verify(() -> {
+            assertTrue(cause instanceof IllegalArgumentException);
+            testContext.completeNow();
+        })));
+    }
+
+    @Test
+    @DisplayName("Answer 400 on path /poller/hosts when the limit is negative or not a number")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void invalid_hosts_limit(Vertx vertx, VertxTestContext testContext) {
+        final WebClient webClient = WebClient.create(vertx);
+
+        webClient.get(8080, "::1", POLLER_API_PATH + "/hosts?limit=-1")
+                .send(negative -> webClient.get(8080, "::1", POLLER_API_PATH + "/queues?limit=many")
+                        .send(notANumber -> testContext.verify(() -> {
+                            assertEquals(400, negative.result().statusCode());
+                            assertEquals(400, notANumber.result().statusCode());
+                            testContext.completeNow();
+                        })));
+    }
 }
@@ -0,0 +1,97 @@
+package se.kry.codetest.events;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(VertxExtension.class)
+class ServiceEventBroadcasterTest {
+
+    private static HttpServerResponse subscriber() {
+        return Mockito.mock(HttpServerResponse.class, Answers.RETURNS_SELF);
+    }
+
+    private static ArgumentMatcher<Buffer> frame(String type) {
+        return buffer -> buffer.toString().startsWith("event: " + type + "\n");
+    }
+
+    @Test
+    @DisplayName("should send every event to every subscriber")
+    void testFanOut(Vertx vertx, VertxTestContext testContext) {
+        final ServiceEventBroadcaster broadcaster = new ServiceEventBroadcaster(vertx, ServiceEventBroadcaster.DEFAULT_CLIENT_BUFFER_BYTES);
+        final HttpServerResponse first = subscriber();
+        final HttpServerResponse second = subscriber();
+
+        final Context context = vertx.getOrCreateContext();
+        context.runOnContext(v -> {
+            broadcaster.start();
+            broadcaster.subscribe(first);
+            broadcaster.subscribe(second);
+            vertx.eventBus().publish(ServiceEvents.ADDRESS, ServiceEvents.deleted("1"));
+            vertx.eventBus().publish(ServiceEvents.ADDRESS, ServiceEvents.cleared());
+        });
+
+        testContext.verify(() -> {
+            verify(first, timeout(1000)).write(argThat(frame(ServiceEvents.DELETED)));
+            verify(first, timeout(1000)).write(argThat(frame(ServiceEvents.CLEARED)));
+            verify(second, timeout(1000)).write(argThat(frame(ServiceEvents.DELETED)));
+            verify(second, timeout(1000)).write(argThat(frame(ServiceEvents.CLEARED)));
+        });
+        context.runOnContext(v -> {
+            testContext.verify(() -> {
+                assertEquals(2, broadcaster.getStats().getEventsPublished());
+                assertEquals(2, broadcaster.getStats().getSubscribers());
+            });
+            broadcaster.stop();
+            testContext.completeNow();
+        });
+    }
+
+    @Test
+    @DisplayName("should disconnect a subscriber whose buffer is full and keep the others")
+    void testSlowSubscriber(Vertx vertx, VertxTestContext testContext) {
+        final int clientBufferBytes = 1024;
+        final ServiceEventBroadcaster broadcaster = new ServiceEventBroadcaster(vertx, clientBufferBytes);
+        final HttpServerResponse slow = subscriber();
+        final HttpServerResponse fast = subscriber();
+        Mockito.when(slow.writeQueueFull()).thenReturn(true);
+
+        final Context context = vertx.getOrCreateContext();
+        context.runOnContext(v -> {
+            broadcaster.start();
+            broadcaster.subscribe(slow);
+            broadcaster.subscribe(fast);
+            vertx.eventBus().publish(ServiceEvents.ADDRESS, ServiceEvents.deleted("1"));
+        });
+
+        testContext.verify(() -> {
+            verify(slow, timeout(1000)).setWriteQueueMaxSize(clientBufferBytes);
+            verify(fast, timeout(1000)).write(argThat(frame(ServiceEvents.DELETED)));
+            verify(slow, timeout(1000)).close();
+            verify(slow, never()).write(argThat(frame(ServiceEvents.DELETED)));
+        });
+        context.runOnContext(v -> {
+            testContext.verify(() -> {
+                assertEquals(1, broadcaster.getStats().getDroppedSubscribers());
+                assertEquals(1, broadcaster.getStats().getSubscribers());
+            });
+            broadcaster.stop();
+            testContext.completeNow();
+        });
+    }
+}
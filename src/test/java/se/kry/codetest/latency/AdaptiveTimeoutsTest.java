@@ -0,0 +1,74 @@
+package se.kry.codetest.latency;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import se.kry.codetest.model.ProbeResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveTimeoutsTest {
+
+    @Test
+    @DisplayName("should use the default timeout until enough probes were answered")
+    void testDefaultTimeout() {
+        final AdaptiveTimeouts timeouts = new AdaptiveTimeouts(true, 3000, 3, 250, 10000);
+
+        for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES - 1; i++) {
+            timeouts.record("a", answered(10));
+        }
+
+        assertEquals(3000, timeouts.timeoutMs("a"));
+        assertEquals(3000, timeouts.timeoutMs("unknown"));
+    }
+
+    @Test
+    @DisplayName("should derive the timeout from the p99 and clamp it")
+    void testClampedTimeout() {
+        final AdaptiveTimeouts timeouts = new AdaptiveTimeouts(true, 3000, 3, 250, 10000);
+
+        for (int i = 0; i < 100; i++) {
+            timeouts.record("fast", answered(10));
+            timeouts.record("medium", answered(400));
+            timeouts.record("slow", answered(5000));
+        }
+
+        assertEquals(250, timeouts.timeoutMs("fast"));
+        final long medium = timeouts.timeoutMs("medium");
+        assertTrue(medium >= 1200 && medium <= 1500, "timeout " + medium);
+        assertEquals(10000, timeouts.timeoutMs("slow"));
+    }
+
+    @Test
+    @DisplayName("should ignore refused probes and grow the timeout on timeouts")
+    void testFailures() {
+        final AdaptiveTimeouts timeouts = new AdaptiveTimeouts(true, 3000, 3, 250, 10000);
+        for (int i = 0; i < 100; i++) {
+            timeouts.record("a", answered(100));
+            timeouts.record("a", ProbeResult.builder().success(false).totalMs(1).build());
+        }
+        final long before = timeouts.timeoutMs("a");
+
+        for (int i = 0; i < 5; i++) {
+            timeouts.record("a", ProbeResult.builder().success(false).timedOut(true).totalMs(before).build());
+        }
+
+        assertTrue(timeouts.timeoutMs("a") > before);
+    }
+
+    @Test
+    @DisplayName("should always use the default timeout when disabled")
+    void testDisabled() {
+        final AdaptiveTimeouts timeouts = new AdaptiveTimeouts(3000);
+
+        for (int i = 0; i < 100; i++) {
+            timeouts.record("a", answered(10));
+        }
+
+        assertEquals(3000, timeouts.timeoutMs("a"));
+    }
+
+    private ProbeResult answered(long totalMs) {
+        return ProbeResult.builder().success(true).totalMs(totalMs).build();
+    }
+}
@@ -0,0 +1,51 @@
+package se.kry.codetest.latency;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("should report percentiles within the bucket precision")
+    void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertWithin(500, histogram.percentile(50));
+        assertWithin(950, histogram.percentile(95));
+        assertWithin(990, histogram.percentile(99));
+    }
+
+    @Test
+    @DisplayName("should keep small values exact and clamp values above the trackable range")
+    void testBounds() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        assertEquals(3, histogram.percentile(100));
+
+        histogram.record(10 * LatencyHistogram.HIGHEST_TRACKABLE_MS);
+        assertEquals(10 * LatencyHistogram.HIGHEST_TRACKABLE_MS, histogram.getMax());
+        assertTrue(histogram.percentile(100) >= LatencyHistogram.HIGHEST_TRACKABLE_MS);
+    }
+
+    @Test
+    @DisplayName("should map every value to a bucket containing it")
+    void testBuckets() {
+        for (long value = 0; value <= LatencyHistogram.HIGHEST_TRACKABLE_MS; value++) {
+            final int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.highestValueOf(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.highestValueOf(index - 1) < value);
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected * 1.25, "expected about " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,59 @@
+package se.kry.codetest.metrics;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class MetricsTest {
+
+    @Test
+    @DisplayName("should write counters and gauges in the prometheus text format")
+    void testCounterAndGauge(Vertx vertx) {
+        final Metrics metrics = Metrics.get(vertx);
+        final Counter counter = metrics.counter("probes_total", "Probes", "result");
+        counter.inc("success");
+        counter.add(2, "timeout");
+        metrics.gauge("in_flight", "In flight", () -> 3);
+
+        final String scrape = metrics.scrape();
+
+        assertTrue(scrape.contains("# TYPE probes_total counter\n"), scrape);
+        assertTrue(scrape.contains("probes_total{result=\"success\"} 1\n"), scrape);
+        assertTrue(scrape.contains("probes_total{result=\"timeout\"} 2\n"), scrape);
+        assertTrue(scrape.contains("# TYPE in_flight gauge\nin_flight 3\n"), scrape);
+    }
+
+    @Test
+    @DisplayName("should write cumulative histogram buckets")
+    void testHistogram(Vertx vertx) {
+        final Metrics metrics = Metrics.get(vertx);
+        final Histogram histogram = metrics.histogram("latency_seconds", "Latency", new double[]{0.1, 1}, "route");
+        histogram.observe(0.05, "/a");
+        histogram.observe(0.5, "/a");
+        histogram.observe(5, "/a");
+
+        final String scrape = metrics.scrape();
+
+        assertTrue(scrape.contains("latency_seconds_bucket{route=\"/a\",le=\"0.1\"} 1\n"), scrape);
+        assertTrue(scrape.contains("latency_seconds_bucket{route=\"/a\",le=\"1\"} 2\n"), scrape);
+        assertTrue(scrape.contains("latency_seconds_bucket{route=\"/a\",le=\"+Inf\"} 3\n"), scrape);
+        assertTrue(scrape.contains("latency_seconds_count{route=\"/a\"} 3\n"), scrape);
+    }
+
+    @Test
+    @DisplayName("should return the registered metric and check label values")
+    void testRegistration(Vertx vertx) {
+        final Metrics metrics = Metrics.get(vertx);
+        final Counter counter = metrics.counter("errors_total", "Errors", "kind");
+
+        assertSame(counter, metrics.counter("errors_total", "Errors", "kind"));
+        assertThrows(IllegalArgumentException.class, () -> counter.inc("query", "extra"));
+    }
+}
@@ -11,10 +11,13 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import se.kry.codetest.MainVerticle;
+import se.kry.codetest.model.ProbeType;
 import se.kry.codetest.model.Service;
 import se.kry.codetest.model.ServiceStatus;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -68,6 +71,28 @@ class ApiPollerRepositoryTest {
                 });
     }
 
+    @Test
+    @DisplayName("should update a batch of service statuses in database")
+    void testUpdateServiceStatuses(VertxTestContext testContext) {
+        final String url = "http://www.my-url.com/" + UUID.randomUUID().toString();
+        final String name = UUID.randomUUID().toString();
+
+        apiPollerRepository.save(url, name, ServiceStatus.UNKNOWN)
+                .setHandler(saveQuery ->
+                        testContext.verify(() -> assertNotNull(saveQuery.result()))
+                )
+                .compose(id -> {
+                    final Map<String, ServiceStatus> statuses = new HashMap<>();
+                    statuses.put(id, ServiceStatus.OK);
+                    statuses.put(UUID.randomUUID().toString(), ServiceStatus.FAILED);
+                    return apiPollerRepository.updateStatuses(statuses);
+                })
+                .setHandler(updateQuery -> {
+                    testContext.verify(() -> assertEquals(Integer.valueOf(1), updateQuery.result()));
+                    testContext.completeNow();
+                });
+    }
+
     @Test
     @DisplayName("should update a service in database")
     void testUpdateService(VertxTestContext testContext) {
@@ -134,4 +159,48 @@ class ApiPollerRepositoryTest {
                     testContext.completeNow();
                 });
     }
+
+    @Test
+    @DisplayName("should page through services in database")
+    void testFindPage(VertxTestContext testContext) {
+        final String url = "http://www.my-url.com/" + UUID.randomUUID().toString();
+        final String otherUrl = "http://www.my-url.com/" + UUID.randomUUID().toString();
+
+        apiPollerRepository.save(url, UUID.randomUUID().toString(), ServiceStatus.UNKNOWN)
+                .compose(id -> apiPollerRepository.save(otherUrl, UUID.randomUUID().toString(), ServiceStatus.UNKNOWN))
+                .compose(id -> apiPollerRepository.findPage(null, 1))
+                .compose(firstPage -> {
+                    testContext.verify(() -> assertEquals(1, firstPage.size()));
+                    return apiPollerRepository.findPage(firstPage.get(0).getId(), 10)
+                            .map(secondPage -> {
+                                testContext.verify(() -> {
+                                    assertEquals(1, secondPage.size());
+                                    assertNotEquals(firstPage.get(0).getId(), secondPage.get(0).getId());
+                                });
+                                return secondPage;
+                            });
+                })
+                .setHandler(pageQuery -> {
+                    testContext.verify(() -> assertTrue(pageQuery.succeeded()));
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should store the probe type of a service")
+    void testSaveProbeType(VertxTestContext testContext) {
+        final String url = "http://www.my-url.com/" + UUID.randomUUID().toString();
+
+        apiPollerRepository.save(url, UUID.randomUUID().toString(), ServiceStatus.UNKNOWN, 5000, ProbeType.TCP)
+                .compose(id -> apiPollerRepository.update(Service.builder().id(id).url(url).name("").build())
+                        .compose(updated -> apiPollerRepository.findById(id)))
+                .setHandler(findQuery -> {
+                    testContext.verify(() -> {
+                        assertTrue(findQuery.succeeded());
+                        assertEquals(ProbeType.TCP, findQuery.result().getProbeType());
+                        assertEquals(5000, findQuery.result().getPollIntervalMs());
+                    });
+                    testContext.completeNow();
+                });
+    }
 }
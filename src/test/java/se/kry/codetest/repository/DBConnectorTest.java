@@ -0,0 +1,100 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.UpdateResult;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class DBConnectorTest {
+
+    private DBConnector connector;
+    private String table;
+
+    @BeforeEach
+    void init(Vertx vertx, VertxTestContext testContext) {
+        connector = new DBConnector(vertx);
+        table = "connector_test_" + UUID.randomUUID().toString().replace("-", "");
+        connector.query("test.create_table", "CREATE TABLE " + table + " (id INTEGER PRIMARY KEY NOT NULL, value VARCHAR(16))")
+                .setHandler(testContext.succeeding(created -> testContext.completeNow()));
+    }
+
+    @Test
+    @DisplayName("should apply concurrent writes sent to the writer")
+    void testConcurrentWrites(VertxTestContext testContext) {
+        final List<Future> inserts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            inserts.add(connector.update("test.insert", "INSERT INTO " + table + " (id, value) VALUES(?,?)", new JsonArray().add(i).add("value-" + i)));
+        }
+
+        CompositeFuture.all(inserts)
+                .compose(inserted -> connector.query("test.count", "SELECT COUNT(*) AS count FROM " + table))
+                .setHandler(countQuery -> {
+                    testContext.verify(() -> {
+                        assertTrue(countQuery.succeeded());
+                        assertEquals(Integer.valueOf(50), countQuery.result().getRows().get(0).getInteger("count"));
+                    });
+                    connector.query("test.drop_table", "DROP TABLE " + table);
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should run reads sent before the configuration is read")
+    void testReadBeforeConfigured(Vertx vertx, VertxTestContext testContext) {
+        final DBConnector unconfigured = new DBConnector(vertx);
+
+        unconfigured.query("test.count", "SELECT COUNT(*) AS count FROM " + table)
+                .setHandler(countQuery -> {
+                    testContext.verify(() -> {
+                        assertTrue(countQuery.succeeded());
+                        assertEquals(Integer.valueOf(0), countQuery.result().getRows().get(0).getInteger("count"));
+                    });
+                    connector.query("test.drop_table", "DROP TABLE " + table);
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should only roll back the failing write of a transaction")
+    void testFailingWrite(VertxTestContext testContext) {
+        final Future<UpdateResult> first = connector.update("test.insert", "INSERT INTO " + table + " (id, value) VALUES(?,?)", new JsonArray().add(1).add("first"));
+        final Future<UpdateResult> duplicate = connector.update("test.insert", "INSERT INTO " + table + " (id, value) VALUES(?,?)", new JsonArray().add(1).add("duplicate"));
+        final Future<List<Integer>> batch = connector.batchUpdate("test.insert_batch", "INSERT INTO " + table + " (id, value) VALUES(?,?)",
+                Arrays.asList(new JsonArray().add(2).add("second"), new JsonArray().add(3).add("third")));
+
+        CompositeFuture.join(first, duplicate, batch)
+                .setHandler(writes -> {
+                    testContext.verify(() -> {
+                        assertTrue(first.succeeded());
+                        assertTrue(duplicate.failed());
+                        assertTrue(batch.succeeded());
+                    });
+                    connector.query("test.select", "SELECT value FROM " + table + " ORDER BY id")
+                            .setHandler(selectQuery -> {
+                                testContext.verify(() -> {
+                                    assertTrue(selectQuery.succeeded());
+                                    assertEquals(3, selectQuery.result().getNumRows());
+                                    assertEquals("first", selectQuery.result().getRows().get(0).getString("value"));
+                                });
+                                connector.query("test.drop_table", "DROP TABLE " + table);
+                                testContext.completeNow();
+                            });
+                });
+    }
+}
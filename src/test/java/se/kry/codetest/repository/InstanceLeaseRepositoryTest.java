@@ -0,0 +1,106 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class InstanceLeaseRepositoryTest {
+
+    private InstanceLeaseRepository repository;
+
+    @BeforeEach
+    void init(Vertx vertx, VertxTestContext testContext) {
+        repository = new InstanceLeaseRepository(vertx);
+        repository.createDb().setHandler(testContext.succeeding(created -> testContext.completeNow()));
+    }
+
+    @Test
+    @DisplayName("should only find instances whose lease was renewed recently")
+    void testFindAlive(VertxTestContext testContext) {
+        final String alive = "alive-" + UUID.randomUUID();
+        final String expired = "expired-" + UUID.randomUUID();
+        final long now = System.currentTimeMillis();
+
+        repository.renew(alive, now)
+                .compose(renewed -> repository.renew(expired, now - 60 * 1000))
+                .compose(renewed -> repository.findAlive(now - 15 * 1000))
+                .setHandler(findAlive -> {
+                    testContext.verify(() -> {
+                        assertTrue(findAlive.succeeded());
+                        assertTrue(findAlive.result().contains(alive));
+                        assertFalse(findAlive.result().contains(expired));
+                    });
+                    repository.release(alive)
+                            .compose(released -> repository.release(expired))
+                            .setHandler(released -> testContext.completeNow());
+                });
+    }
+
+    @Test
+    @DisplayName("should replace the lease of an instance on renewal and drop it on release")
+    void testRenewRelease(VertxTestContext testContext) {
+        final String instanceId = "instance-" + UUID.randomUUID();
+        final long now = System.currentTimeMillis();
+        final AtomicReference<List<String>> renewedAlive = new AtomicReference<>();
+
+        repository.renew(instanceId, now - 60 * 1000)
+                .compose(renewed -> repository.renew(instanceId, now))
+                .compose(renewed -> repository.findAlive(now - 15 * 1000))
+                .compose(alive -> {
+                    renewedAlive.set(alive);
+                    return repository.release(instanceId);
+                })
+                .compose(released -> repository.release(instanceId)
+                        .map(releasedAgain -> {
+                            testContext.verify(() -> {
+                                assertTrue(released);
+                                assertFalse(releasedAgain);
+                            });
+                            return releasedAgain;
+                        }))
+                .compose(released -> repository.findAlive(now - 15 * 1000))
+                .setHandler(findAlive -> {
+                    testContext.verify(() -> {
+                        assertTrue(findAlive.succeeded());
+                        assertEquals(1, renewedAlive.get().stream().filter(instanceId::equals).count());
+                        assertFalse(findAlive.result().contains(instanceId));
+                    });
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should delete expired leases only")
+    void testDeleteExpired(VertxTestContext testContext) {
+        final String alive = "alive-" + UUID.randomUUID();
+        final String expired = "expired-" + UUID.randomUUID();
+        final long now = System.currentTimeMillis();
+
+        repository.renew(alive, now)
+                .compose(renewed -> repository.renew(expired, now - 60 * 1000))
+                .compose(renewed -> repository.deleteExpired(now - 15 * 1000))
+                .compose(deleted -> repository.release(expired))
+                .compose(expiredReleased -> repository.release(alive)
+                        .map(aliveReleased -> {
+                            testContext.verify(() -> {
+                                assertFalse(expiredReleased);
+                                assertTrue(aliveReleased);
+                            });
+                            return aliveReleased;
+                        }))
+                .setHandler(testContext.succeeding(released -> testContext.completeNow()));
+    }
+}
@@ -0,0 +1,210 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.model.ProbeType;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class LogServiceStoreTest {
+
+    private String directory;
+
+    @BeforeEach
+    void init() throws IOException {
+        directory = Files.createTempDirectory("service-log").toString();
+    }
+
+    private LogServiceStore store(Vertx vertx) {
+        return new LogServiceStore(vertx, directory, LogServiceStore.DEFAULT_SYNC_MS, LogServiceStore.DEFAULT_COMPACT_INTERVAL_MS);
+    }
+
+    @Test
+    @DisplayName("should reload services and statuses after a restart")
+    void testReopen(Vertx vertx, VertxTestContext testContext) {
+        final LogServiceStore store = store(vertx);
+        final AtomicReference<String> kept = new AtomicReference<>();
+        final AtomicReference<String> deleted = new AtomicReference<>();
+
+        store.createDb()
+                .compose(created -> store.save("https://www.kry.se", "kry", ServiceStatus.UNKNOWN, 5000, ProbeType.HEAD))
+                .compose(id -> {
+                    kept.set(id);
+                    return store.save("https://www.google.com", "google", ServiceStatus.UNKNOWN);
+                })
+                .compose(id -> {
+                    deleted.set(id);
+                    return store.updateStatus(kept.get(), ServiceStatus.OK);
+                })
+                .compose(updated -> store.delete(deleted.get()))
+                .compose(deletedService -> store.close())
+                .compose(closed -> {
+                    final LogServiceStore reopened = store(vertx);
+                    return reopened.createDb()
+                            .compose(opened -> reopened.findAll())
+                            .compose(services -> reopened.close().map(services));
+                })
+                .setHandler(findAll -> {
+                    testContext.verify(() -> {
+                        assertTrue(findAll.succeeded());
+                        assertEquals(1, findAll.result().size());
+                        final Service service = findAll.result().get(0);
+                        assertEquals(kept.get(), service.getId());
+                        assertEquals("https://www.kry.se", service.getUrl());
+                        assertEquals(ServiceStatus.OK, service.getServiceStatus());
+                        assertEquals(5000, service.getPollIntervalMs());
+                        assertEquals(ProbeType.HEAD, service.getProbeType());
+                    });
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should keep services and statuses through a compaction")
+    void testCompaction(Vertx vertx, VertxTestContext testContext) {
+        final LogServiceStore store = store(vertx);
+        final AtomicReference<String> id = new AtomicReference<>();
+
+        store.createDb()
+                .compose(created -> store.save("https://www.kry.se", "kry", ServiceStatus.UNKNOWN))
+                .compose(saved -> {
+                    id.set(saved);
+                    return store.update(Service.builder().id(saved).url("https://www.kry.se/health").name("kry").build());
+                })
+                .compose(updated -> store.updateStatus(id.get(), ServiceStatus.FAILED))
+                .compose(updated -> {
+                    Future<Void> compacted = Future.future();
+                    vertx.executeBlocking(compacting -> {
+                        try {
+                            store.compact();
+                            compacting.complete();
+                        } catch (IOException e) {
+                            compacting.fail(e);
+                        }
+                    }, compacted);
+                    return compacted;
+                })
+                .compose(compacted -> store.close())
+                .compose(closed -> {
+                    final LogServiceStore reopened = store(vertx);
+                    return reopened.createDb()
+                            .compose(opened -> reopened.findById(id.get()))
+                            .compose(service -> reopened.close().map(service));
+                })
+                .setHandler(findById -> {
+                    testContext.verify(() -> {
+                        assertTrue(findById.succeeded());
+                        assertEquals("https://www.kry.se/health", findById.result().getUrl());
+                        assertEquals(ServiceStatus.FAILED, findById.result().getServiceStatus());
+                    });
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should keep the changes written while a compaction was running")
+    void testWriteDuringCompaction(Vertx vertx, VertxTestContext testContext) {
+        final LogServiceStore store = store(vertx);
+        final AtomicReference<String> deleted = new AtomicReference<>();
+        final AtomicReference<String> updated = new AtomicReference<>();
+        final AtomicReference<String> added = new AtomicReference<>();
+        final AtomicReference<LogServiceStore.Compaction> compaction = new AtomicReference<>();
+
+        store.createDb()
+                .compose(created -> store.save("https://www.kry.se", "kry", ServiceStatus.UNKNOWN))
+                .compose(saved -> {
+                    deleted.set(saved);
+                    return store.save("https://www.google.com", "google", ServiceStatus.UNKNOWN);
+                })
+                .compose(saved -> {
+                    updated.set(saved);
+                    Future<Void> written = Future.future();
+                    vertx.executeBlocking(writing -> {
+                        try {
+                            compaction.set(store.writeCompaction());
+                            writing.complete();
+                        } catch (IOException e) {
+                            writing.fail(e);
+                        }
+                    }, written);
+                    return written;
+                })
+                .compose(written -> store.save("https://www.vertx.io", "vertx", ServiceStatus.UNKNOWN))
+                .compose(saved -> {
+                    added.set(saved);
+                    return store.updateStatus(saved, ServiceStatus.OK);
+                })
+                .compose(status -> store.update(Service.builder().id(updated.get()).url("https://www.google.com/health").name("google").build()))
+                .compose(update -> store.delete(deleted.get()))
+                .compose(delete -> {
+                    Future<Void> swapped = Future.future();
+                    vertx.executeBlocking(swapping -> {
+                        try {
+                            store.swapCompaction(compaction.get());
+                            swapping.complete();
+                        } catch (IOException e) {
+                            swapping.fail(e);
+                        }
+                    }, swapped);
+                    return swapped;
+                })
+                .compose(swapped -> store.close())
+                .compose(closed -> {
+                    final LogServiceStore reopened = store(vertx);
+                    return reopened.createDb()
+                            .compose(opened -> reopened.findAll())
+                            .compose(services -> reopened.close().map(services));
+                })
+                .setHandler(findAll -> {
+                    testContext.verify(() -> {
+                        assertTrue(findAll.succeeded());
+                        assertEquals(2, findAll.result().size());
+                        final Map<String, Service> services = findAll.result().stream()
+                                .collect(Collectors.toMap(Service::getId, Function.identity()));
+                        assertEquals("https://www.google.com/health", services.get(updated.get()).getUrl());
+                        assertEquals("https://www.vertx.io", services.get(added.get()).getUrl());
+                        assertEquals(ServiceStatus.OK, services.get(added.get()).getServiceStatus());
+                    });
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should ignore services whose url is already registered")
+    void testSaveAllDuplicates(Vertx vertx, VertxTestContext testContext) {
+        final LogServiceStore store = store(vertx);
+        final Service kry = Service.builder().url("https://www.kry.se").name("kry").build();
+        final Service duplicate = Service.builder().url("https://www.kry.se").name("kry again").build();
+
+        store.createDb()
+                .compose(created -> store.saveAll(Arrays.asList(kry, duplicate)))
+                .compose(saved -> store.close().map(saved))
+                .setHandler(saveAll -> {
+                    testContext.verify(() -> {
+                        assertTrue(saveAll.succeeded());
+                        assertEquals("kry", saveAll.result().get(0).getName());
+                        assertNull(saveAll.result().get(1));
+                    });
+                    testContext.completeNow();
+                });
+    }
+}
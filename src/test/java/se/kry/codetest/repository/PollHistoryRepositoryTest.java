@@ -0,0 +1,70 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.MainVerticle;
+import se.kry.codetest.model.HistoryBucket;
+import se.kry.codetest.model.HistoryResolution;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class PollHistoryRepositoryTest {
+
+    private PollHistoryRepository historyRepository;
+
+    @BeforeEach
+    void init(Vertx vertx, VertxTestContext testContext) {
+        DeploymentOptions deploymentOptions = new DeploymentOptions()
+                .setConfig(new JsonObject().put("db_path", "/tmp/poller.db"));
+        vertx.deployVerticle(new MainVerticle(), deploymentOptions, testContext.succeeding(id -> testContext.completeNow()));
+        historyRepository = new PollHistoryRepository(vertx);
+    }
+
+    @Test
+    @DisplayName("should add probes to an existing history bucket")
+    void testAddBuckets(VertxTestContext testContext) {
+        final String serviceId = UUID.randomUUID().toString();
+        final long bucketStart = HistoryResolution.HOUR.bucketStart(System.currentTimeMillis());
+
+        historyRepository.add(Collections.singletonList(bucket(serviceId, bucketStart, 3, 1, 300, 200)))
+                .compose(added -> historyRepository.add(Collections.singletonList(bucket(serviceId, bucketStart, 2, 0, 100, 60))))
+                .compose(added -> historyRepository.find(serviceId, HistoryResolution.HOUR, bucketStart, bucketStart + HistoryResolution.HOUR.getBucketMs()))
+                .setHandler(findQuery -> {
+                    testContext.verify(() -> {
+                        assertTrue(findQuery.succeeded());
+                        assertEquals(1, findQuery.result().size());
+                        final HistoryBucket bucket = findQuery.result().get(0);
+                        assertEquals(5, bucket.getProbes());
+                        assertEquals(1, bucket.getFailures());
+                        assertEquals(400, bucket.getLatencySumMs());
+                        assertEquals(200, bucket.getLatencyMaxMs());
+                    });
+                    historyRepository.deleteService(serviceId);
+                    testContext.completeNow();
+                });
+    }
+
+    private HistoryBucket bucket(String serviceId, long bucketStart, long probes, long failures, long latencySumMs, long latencyMaxMs) {
+        return HistoryBucket.builder()
+                .serviceId(serviceId)
+                .resolution(HistoryResolution.HOUR)
+                .bucketStart(bucketStart)
+                .probes(probes)
+                .failures(failures)
+                .latencySumMs(latencySumMs)
+                .latencyMaxMs(latencyMaxMs)
+                .build();
+    }
+}
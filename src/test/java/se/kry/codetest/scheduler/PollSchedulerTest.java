@@ -0,0 +1,171 @@
+package se.kry.codetest.scheduler;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.model.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class PollSchedulerTest {
+
+    private AtomicLong now;
+    private List<String> polled;
+    private PollScheduler scheduler;
+
+    @BeforeEach
+    void init(Vertx vertx) {
+        now = new AtomicLong(0);
+        polled = new ArrayList<>();
+        scheduler = new PollScheduler(vertx, svc -> polled.add(svc.getId()), now::get, PollScheduler.DEFAULT_TICK_MS);
+    }
+
+    @Test
+    @DisplayName("should poll each service on its own interval")
+    void testPollOnOwnInterval() {
+        scheduler.schedule(service("fast", 1000));
+        scheduler.schedule(service("slow", 5000));
+
+        scheduler.tick();
+        assertEquals(2, polled.size());
+
+        now.set(1000);
+        scheduler.tick();
+        assertEquals(3, polled.size());
+        assertEquals("fast", polled.get(2));
+
+        now.set(5000);
+        scheduler.tick();
+        assertEquals(2, polled.stream().filter("slow"::equals).count());
+        assertEquals(2, scheduler.getStats().getQueueDepth());
+    }
+
+    @Test
+    @DisplayName("should not poll an unscheduled service")
+    void testUnschedule() {
+        scheduler.schedule(service("removed", 1000), 500);
+        scheduler.unschedule("removed");
+
+        now.set(1000);
+        scheduler.tick();
+
+        assertEquals(0, polled.size());
+        assertFalse(scheduler.isScheduled("removed"));
+        assertEquals(0, scheduler.getStats().getQueueDepth());
+    }
+
+    @Test
+    @DisplayName("should report lag when a service is polled late")
+    void testLag() {
+        scheduler.schedule(service("late", 1000));
+
+        now.set(250);
+        scheduler.tick();
+
+        assertEquals(250, scheduler.getStats().getLagMs());
+        assertEquals(1, scheduler.getStats().getDispatched());
+    }
+
+    @Test
+    @DisplayName("should ask the interval function for the next due time")
+    void testIntervalFunction(Vertx vertx) {
+        final PollScheduler stretched = new PollScheduler(vertx, svc -> polled.add(svc.getId()),
+                svc -> svc.effectivePollIntervalMs() * 4, now::get, PollScheduler.DEFAULT_TICK_MS);
+        stretched.schedule(service("failing", 1000));
+
+        stretched.tick();
+        now.set(1000);
+        stretched.tick();
+        assertEquals(1, polled.size());
+
+        now.set(4000);
+        stretched.tick();
+        assertEquals(2, polled.size());
+    }
+
+    @Test
+    @DisplayName("should ask the interval function again once the poll completed")
+    void testIntervalAfterPollCompleted(Vertx vertx) {
+        final AtomicLong factor = new AtomicLong(1);
+        final PollScheduler backingOff = new PollScheduler(vertx, svc -> polled.add(svc.getId()),
+                svc -> svc.effectivePollIntervalMs() * factor.get(), now::get, PollScheduler.DEFAULT_TICK_MS);
+        final Service failing = service("failing", 1000);
+        backingOff.schedule(failing);
+
+        backingOff.tick();
+        // the poll result stretches the interval after the poll was dispatched
+        factor.set(4);
+        backingOff.pollCompleted(failing);
+        now.set(1000);
+        backingOff.tick();
+        assertEquals(1, polled.size());
+
+        now.set(4000);
+        backingOff.tick();
+        assertEquals(2, polled.size());
+
+        // recovered, the next poll is back on the base interval
+        factor.set(1);
+        backingOff.pollCompleted(failing);
+        now.set(5000);
+        backingOff.tick();
+        assertEquals(3, polled.size());
+    }
+
+    @Test
+    @DisplayName("should spread staggered services sharing an interval over it")
+    void testStaggered(Vertx vertx) {
+        final PollScheduler staggered = new PollScheduler(vertx, svc -> polled.add(svc.getId()),
+                Service::effectivePollIntervalMs, true, 0, now::get, PollScheduler.DEFAULT_TICK_MS);
+        for (int i = 0; i < 100; i++) {
+            staggered.scheduleSpread(service("service-" + i, 10000), 10000);
+        }
+
+        final int[] polledPerSecond = new int[10];
+        for (int second = 0; second < 10; second++) {
+            final int before = polled.size();
+            now.set(second * 1000L + 999);
+            staggered.tick();
+            polledPerSecond[second] = polled.size() - before;
+        }
+
+        assertEquals(100, polled.size());
+        for (int count : polledPerSecond) {
+            assertTrue(count < 25, "burst of " + count + " polls in one second");
+        }
+    }
+
+    @Test
+    @DisplayName("should keep staggered services on their phase after an off phase poll")
+    void testStaggeredPhase(Vertx vertx) {
+        final PollScheduler staggered = new PollScheduler(vertx, svc -> polled.add(svc.getId()),
+                Service::effectivePollIntervalMs, true, 0, now::get, PollScheduler.DEFAULT_TICK_MS);
+        final Service service = service("phased", 1000);
+        final long phase = PollScheduler.phaseOf("phased", 1000);
+
+        final long afterOffPhase = staggered.nextSlot(service, 12345, 1000);
+        final long afterOnPhase = staggered.nextSlot(service, afterOffPhase, 1000);
+
+        assertEquals(phase, afterOffPhase % 1000);
+        assertTrue(afterOffPhase > 12345 + 500 && afterOffPhase <= 12345 + 1500);
+        assertEquals(afterOffPhase + 1000, afterOnPhase);
+    }
+
+    private static Service service(String id, long pollIntervalMs) {
+        return Service.builder()
+                .id(id)
+                .url("http://www.my-url.com/" + id)
+                .pollIntervalMs(pollIntervalMs)
+                .build();
+    }
+}
@@ -11,9 +11,11 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import se.kry.codetest.MainVerticle;
+import se.kry.codetest.mapper.ServiceMapper;
 import se.kry.codetest.model.Service;
 import se.kry.codetest.model.ServiceStatus;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -192,4 +194,78 @@ class ApiPollerServiceTest {
                     testContext.completeNow();
                 });
     }
+
+    @Test
+    @DisplayName("should serve reads from memory once loaded")
+    void testCachedReads(VertxTestContext testContext) {
+        final String url = "http://www.my-url.com/" + UUID.randomUUID().toString();
+        final String name = UUID.randomUUID().toString();
+
+        apiPollerService.load()
+                .compose(loaded -> apiPollerService.create(url, name))
+                .compose(id -> apiPollerService.updateStatus(id, ServiceStatus.OK))
+                .compose(updated -> apiPollerService.getByUrl(url + "/missing"))
+                .compose(missing -> apiPollerService.getByUrl(url))
+                .setHandler(getRequest -> {
+                    testContext.verify(() -> {
+                        assertEquals(ServiceStatus.OK, getRequest.result().getServiceStatus());
+                        assertEquals(1, apiPollerService.getCacheStats().getSize());
+                        assertEquals(1, apiPollerService.getCacheStats().getHits());
+                        assertEquals(1, apiPollerService.getCacheStats().getMisses());
+                    });
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should give a new etag to a list rebuilt to refresh its derived content")
+    void testSnapshotEtag(VertxTestContext testContext) {
+        final List<String> etags = new ArrayList<>();
+
+        apiPollerService.getSnapshot()
+                .compose(first -> {
+                    etags.add(first.getEtag());
+                    return apiPollerService.getSnapshot();
+                })
+                .compose(unchanged -> {
+                    etags.add(unchanged.getEtag());
+                    apiPollerService.setListMapper(ServiceMapper::toJsonObject, 0);
+                    return apiPollerService.getSnapshot();
+                })
+                .setHandler(refreshed -> {
+                    testContext.verify(() -> {
+                        assertEquals(etags.get(0), etags.get(1));
+                        assertNotEquals(etags.get(1), refreshed.result().getEtag());
+                        assertFalse(refreshed.result().getEtag().startsWith("W/"));
+                    });
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should import services in bulk and report invalid and duplicate rows")
+    void testBulkImport(VertxTestContext testContext) {
+        final String url = "http://www.my-url.com/" + UUID.randomUUID().toString();
+        final List<Service> scheduled = new ArrayList<>();
+        final BulkImport bulkImport = new BulkImport(apiPollerService, 2, scheduled::add);
+
+        bulkImport.add(new JsonObject().put("url", url).put("name", UUID.randomUUID().toString()));
+        bulkImport.add(new JsonObject().put("url", "url-not-valid"));
+        bulkImport.add(new JsonObject().put("url", url).put("name", UUID.randomUUID().toString()));
+        bulkImport.add(new JsonObject().put("url", url + "/unnamed-1"));
+        bulkImport.add(new JsonObject().put("url", url + "/unnamed-2"))
+                .compose(flushed -> bulkImport.finish())
+                .setHandler(importRequest -> {
+                    testContext.verify(() -> {
+                        final JsonObject report = importRequest.result();
+                        assertEquals(5, report.getInteger("rows").intValue());
+                        assertEquals(3, report.getInteger("created").intValue());
+                        assertEquals(2, report.getInteger("failed").intValue());
+                        assertEquals(3, scheduled.size());
+                        assertEquals(url, scheduled.get(0).getUrl());
+                        assertNull(scheduled.get(1).getName());
+                    });
+                    testContext.completeNow();
+                });
+    }
 }
@@ -13,6 +13,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import se.kry.codetest.MainVerticle;
+import se.kry.codetest.latency.AdaptiveTimeouts;
+import se.kry.codetest.latency.ServiceLatency;
+import se.kry.codetest.model.ProbeResult;
+import se.kry.codetest.model.ProbeType;
 import se.kry.codetest.model.Service;
 import se.kry.codetest.model.ServiceStatus;
 
@@ -21,6 +25,7 @@ import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 @ExtendWith({
         VertxExtension.class
@@ -37,6 +42,7 @@ class BackgroundPollerTest {
                 .setConfig(new JsonObject().put("db_path", "/tmp/poller.db"));
         vertx.deployVerticle(new MainVerticle(), deploymentOptions, testContext.succeeding(id -> testContext.completeNow()));        apiPollerService = new ServiceRegistry(vertx);
         poller = Mockito.mock(Poller.class);
+        Mockito.when(poller.getConnections()).thenReturn(new ProbeConnections());
         backgroundPoller = new BackgroundPoller(poller, apiPollerService);
     }
 
@@ -49,8 +55,8 @@ class BackgroundPollerTest {
     @DisplayName("should poll services and update them to OK when succeed")
     void testPollWithASuccessfulService(VertxTestContext testContext) {
 
-        Mockito.when(poller.pollService(Mockito.anyString()))
-                .thenReturn(Future.succeededFuture(true));
+        Mockito.when(poller.probe(Mockito.anyString(), Mockito.any(ProbeType.class), Mockito.anyLong()))
+                .thenReturn(Future.succeededFuture(probeResult(true)));
 
         final String url = "http://www.my-url.com/" + UUID.randomUUID().toString();
         final String name = UUID.randomUUID().toString();
@@ -76,8 +82,8 @@ class BackgroundPollerTest {
     @Test
     @DisplayName("should poll services and update them to FAILED when fail")
     void testPollWithAFailingService(VertxTestContext testContext) {
-        Mockito.when(poller.pollService(Mockito.anyString()))
-                .thenReturn(Future.succeededFuture(false));
+        Mockito.when(poller.probe(Mockito.anyString(), Mockito.any(ProbeType.class), Mockito.anyLong()))
+                .thenReturn(Future.succeededFuture(probeResult(false)));
 
         final String url = "http://www.my-url.com/" + UUID.randomUUID().toString();
         final String name = UUID.randomUUID().toString();
@@ -99,4 +105,184 @@ class BackgroundPollerTest {
                         })
                 );
     }
+
+    @Test
+    @DisplayName("should not write a status that did not change")
+    void testSkipUnchangedStatus(VertxTestContext testContext) {
+        Mockito.when(poller.probe(Mockito.anyString(), Mockito.any(ProbeType.class), Mockito.anyLong()))
+                .thenReturn(Future.succeededFuture(probeResult(true)));
+
+        final Service service = Service.builder()
+                .id(UUID.randomUUID().toString())
+                .url("http://www.my-url.com/" + UUID.randomUUID().toString())
+                .serviceStatus(ServiceStatus.UNKNOWN)
+                .build();
+
+        backgroundPoller.pollService(service)
+                .compose(polled -> backgroundPoller.pollService(service))
+                .setHandler(pollRequest -> {
+                    testContext.verify(() -> {
+                        assertEquals(1, backgroundPoller.getStats().getStatusWrites());
+                        assertEquals(1, backgroundPoller.getStats().getStatusWritesAvoided());
+                    });
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should record the latency of every probe")
+    void testRecordLatency(VertxTestContext testContext) {
+        Mockito.when(poller.probe(Mockito.anyString(), Mockito.any(ProbeType.class), Mockito.anyLong()))
+                .thenReturn(Future.succeededFuture(probeResult(true)));
+
+        final Service service = Service.builder()
+                .id(UUID.randomUUID().toString())
+                .url("http://www.my-url.com/" + UUID.randomUUID().toString())
+                .serviceStatus(ServiceStatus.UNKNOWN)
+                .build();
+
+        backgroundPoller.pollService(service)
+                .setHandler(pollRequest -> {
+                    testContext.verify(() -> {
+                        final ServiceLatency latency = backgroundPoller.getLatencyRecorder().get(service.getId());
+                        assertEquals(1, latency.getTotal().getCount());
+                        assertEquals(12, latency.getTotal().getMax());
+                        assertEquals(5, latency.getTtfb().percentile(50));
+                    });
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should share the pending probe of a service polled again before it completed")
+    void testSkipOverlappingPoll(VertxTestContext testContext) {
+        final Future<ProbeResult> probe = Future.future();
+        Mockito.when(poller.probe(Mockito.anyString(), Mockito.any(ProbeType.class), Mockito.anyLong()))
+                .thenReturn(probe);
+        final Service service = Service.builder()
+                .id(UUID.randomUUID().toString())
+                .url("http://www.my-url.com/" + UUID.randomUUID().toString())
+                .serviceStatus(ServiceStatus.UNKNOWN)
+                .build();
+
+        final Future<Service> first = backgroundPoller.pollService(service);
+        final Future<Service> second = backgroundPoller.pollService(service);
+        probe.complete(probeResult(true));
+
+        testContext.verify(() -> {
+            assertSame(first, second);
+            Mockito.verify(poller, Mockito.times(1)).probe(Mockito.anyString(), Mockito.any(ProbeType.class), Mockito.anyLong());
+            assertEquals(1, backgroundPoller.getStats().getOverlaps());
+            assertEquals(0, backgroundPoller.getStats().getPendingServices());
+        });
+        testContext.completeNow();
+    }
+
+    @Test
+    @DisplayName("should discard the pending probe of a service forgotten while it was pending")
+    void testForgetDuringPendingPoll(VertxTestContext testContext) {
+        final Future<ProbeResult> oldProbe = Future.future();
+        final String id = UUID.randomUUID().toString();
+        final Service original = Service.builder()
+                .id(id)
+                .url("http://www.my-url.com/" + UUID.randomUUID().toString())
+                .serviceStatus(ServiceStatus.UNKNOWN)
+                .build();
+        final Service updated = original.toBuilder()
+                .url("http://www.my-url.com/" + UUID.randomUUID().toString())
+                .build();
+        Mockito.when(poller.probe(Mockito.eq(original.getUrl()), Mockito.any(ProbeType.class), Mockito.anyLong()))
+                .thenReturn(oldProbe);
+
+        final Future<Service> first = backgroundPoller.pollService(original);
+        backgroundPoller.forget(id);
+        final Future<Service> second = backgroundPoller.pollService(updated);
+        oldProbe.complete(probeResult(false));
+
+        testContext.verify(() -> {
+            assertSame(first, second);
+            assertEquals(ServiceStatus.UNKNOWN, second.result().getServiceStatus());
+            Mockito.verify(poller, Mockito.never()).probe(Mockito.eq(updated.getUrl()), Mockito.any(ProbeType.class), Mockito.anyLong());
+            assertEquals(1, backgroundPoller.getStats().getOverlaps());
+            assertEquals(0, backgroundPoller.getStats().getPendingServices());
+            assertEquals(0, backgroundPoller.getStats().getStatusWrites());
+            assertEquals(0, backgroundPoller.getLatencyRecorder().get(id).getTotal().getCount());
+        });
+        testContext.completeNow();
+    }
+
+    @Test
+    @DisplayName("should probe the updated definition after the forgotten probe with the queue policy")
+    void testForgetDuringPendingPollQueued(VertxTestContext testContext) {
+        final BackgroundPoller queueing = new BackgroundPoller(poller, apiPollerService, new PollExecutor(),
+                new AdaptiveTimeouts(Poller.DEFAULT_TIMEOUT_MS), new PollBackoff(), OverlapPolicy.QUEUE,
+                StatusWriteBuffer.writeThrough(apiPollerService));
+        final Future<ProbeResult> oldProbe = Future.future();
+        final String id = UUID.randomUUID().toString();
+        final Service original = Service.builder()
+                .id(id)
+                .url("http://www.my-url.com/" + UUID.randomUUID().toString())
+                .serviceStatus(ServiceStatus.UNKNOWN)
+                .build();
+        final Service updated = original.toBuilder()
+                .url("http://www.my-url.com/" + UUID.randomUUID().toString())
+                .build();
+        Mockito.when(poller.probe(Mockito.eq(original.getUrl()), Mockito.any(ProbeType.class), Mockito.anyLong()))
+                .thenReturn(oldProbe);
+        Mockito.when(poller.probe(Mockito.eq(updated.getUrl()), Mockito.any(ProbeType.class), Mockito.anyLong()))
+                .thenReturn(Future.succeededFuture(probeResult(true)));
+
+        queueing.pollService(original);
+        queueing.forget(id);
+        final Future<Service> second = queueing.pollService(updated);
+        Mockito.verify(poller, Mockito.never()).probe(Mockito.eq(updated.getUrl()), Mockito.any(ProbeType.class), Mockito.anyLong());
+        oldProbe.complete(probeResult(false));
+
+        testContext.verify(() -> {
+            assertEquals(ServiceStatus.OK, second.result().getServiceStatus());
+            Mockito.verify(poller, Mockito.times(1)).probe(Mockito.eq(updated.getUrl()), Mockito.any(ProbeType.class), Mockito.anyLong());
+            assertEquals(1, queueing.getStats().getOverlaps());
+            assertEquals(0, queueing.getStats().getPendingServices());
+            assertEquals(1, queueing.getLatencyRecorder().get(id).getTotal().getCount());
+        });
+        testContext.completeNow();
+    }
+
+    @Test
+    @DisplayName("should probe once more after the pending probe with the queue policy")
+    void testQueueOverlappingPoll(VertxTestContext testContext) {
+        final BackgroundPoller queueing = new BackgroundPoller(poller, apiPollerService, new PollExecutor(),
+                new AdaptiveTimeouts(Poller.DEFAULT_TIMEOUT_MS), new PollBackoff(), OverlapPolicy.QUEUE,
+                StatusWriteBuffer.writeThrough(apiPollerService));
+        final Future<ProbeResult> probe = Future.future();
+        Mockito.when(poller.probe(Mockito.anyString(), Mockito.any(ProbeType.class), Mockito.anyLong()))
+                .thenReturn(probe, Future.succeededFuture(probeResult(false)));
+        final Service service = Service.builder()
+                .id(UUID.randomUUID().toString())
+                .url("http://www.my-url.com/" + UUID.randomUUID().toString())
+                .serviceStatus(ServiceStatus.UNKNOWN)
+                .build();
+
+        queueing.pollService(service);
+        final Future<Service> second = queueing.pollService(service);
+        final Future<Service> third = queueing.pollService(service);
+        probe.complete(probeResult(true));
+
+        testContext.verify(() -> {
+            assertSame(second, third);
+            assertEquals(ServiceStatus.FAILED, second.result().getServiceStatus());
+            Mockito.verify(poller, Mockito.times(2)).probe(Mockito.anyString(), Mockito.any(ProbeType.class), Mockito.anyLong());
+            assertEquals(2, queueing.getStats().getOverlaps());
+        });
+        testContext.completeNow();
+    }
+
+    private static ProbeResult probeResult(boolean success) {
+        return ProbeResult.builder()
+                .success(success)
+                .connectMs(2)
+                .ttfbMs(5)
+                .totalMs(12)
+                .build();
+    }
 }
@@ -0,0 +1,76 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(VertxExtension.class)
+class HostLimiterTest {
+
+    @Test
+    @DisplayName("should cap probes in flight per host and queue the others")
+    void testMaxInFlightPerHost(Vertx vertx) {
+        final HostLimiter limiter = new HostLimiter(vertx, 2, 0, 1);
+        final List<Future<Void>> pending = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            limiter.submit("gateway:80", () -> {
+                final Future<Void> probe = Future.future();
+                pending.add(probe);
+                return probe;
+            });
+        }
+        limiter.submit("other:80", () -> {
+            final Future<Void> probe = Future.future();
+            pending.add(probe);
+            return probe;
+        });
+
+        assertEquals(3, pending.size());
+        assertEquals(1, limiter.getQueued());
+
+        pending.get(0).complete();
+
+        assertEquals(4, pending.size());
+        assertEquals(0, limiter.getQueued());
+        assertEquals(1L, limiter.toJson().getLong("delayed"));
+    }
+
+    @Test
+    @DisplayName("should delay probes over the host rate until a token is available")
+    void testRate(Vertx vertx) {
+        final AtomicLong now = new AtomicLong();
+        final HostLimiter limiter = new HostLimiter(vertx, 0, 10, 2, now::get);
+        final List<String> sent = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            limiter.submit("gateway:80", () -> {
+                sent.add("gateway");
+                return Future.succeededFuture();
+            });
+        }
+
+        assertEquals(2, sent.size());
+        assertEquals(1, limiter.getQueued());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        limiter.submit("gateway:80", () -> {
+            sent.add("gateway");
+            return Future.succeededFuture();
+        });
+
+        assertEquals(3, sent.size());
+        assertEquals(1, limiter.getQueued());
+        assertEquals(2L, limiter.toJson().getLong("delayed"));
+    }
+}
@@ -0,0 +1,66 @@
+package se.kry.codetest.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import se.kry.codetest.model.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PollBackoffTest {
+
+    private final Service service = Service.builder()
+            .id("a")
+            .url("http://www.my-url.com/a")
+            .pollIntervalMs(1000)
+            .build();
+
+    @Test
+    @DisplayName("should stretch the interval exponentially after repeated failures up to the cap")
+    void testBackoff() {
+        final PollBackoff backoff = new PollBackoff(true, 2, 2, 10000);
+
+        backoff.record("a", false);
+        assertEquals(1000, backoff.intervalMs(service));
+
+        backoff.record("a", false);
+        assertEquals(2000, backoff.intervalMs(service));
+
+        backoff.record("a", false);
+        assertEquals(4000, backoff.intervalMs(service));
+
+        for (int i = 0; i < 10; i++) {
+            backoff.record("a", false);
+        }
+        assertEquals(10000, backoff.intervalMs(service));
+        assertTrue(backoff.getState(service).isBackingOff());
+        assertEquals(1, backoff.countBackingOff());
+    }
+
+    @Test
+    @DisplayName("should reset the interval on the first success")
+    void testReset() {
+        final PollBackoff backoff = new PollBackoff(true, 1, 2, 10000);
+        backoff.record("a", false);
+        backoff.record("a", false);
+
+        backoff.record("a", true);
+
+        assertEquals(1000, backoff.intervalMs(service));
+        assertFalse(backoff.getState(service).isBackingOff());
+        assertEquals(0, backoff.getState(service).getConsecutiveFailures());
+    }
+
+    @Test
+    @DisplayName("should keep the service interval when disabled")
+    void testDisabled() {
+        final PollBackoff backoff = new PollBackoff();
+        for (int i = 0; i < 5; i++) {
+            backoff.record("a", false);
+        }
+
+        assertEquals(1000, backoff.intervalMs(service));
+        assertEquals(0, backoff.countBackingOff());
+    }
+}
@@ -0,0 +1,61 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.Future;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PollExecutorTest {
+
+    @Test
+    @DisplayName("should never run more polls than the in flight limit")
+    void testInFlightLimit() {
+        final PollExecutor executor = new PollExecutor(2);
+        final List<Future<Boolean>> started = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            executor.submit(() -> {
+                Future<Boolean> probe = Future.future();
+                started.add(probe);
+                return probe;
+            });
+        }
+
+        assertEquals(2, started.size());
+        assertEquals(2, executor.getStats().getInFlight());
+        assertEquals(3, executor.getStats().getQueued());
+
+        started.get(0).complete(true);
+
+        assertEquals(3, started.size());
+        assertEquals(2, executor.getStats().getInFlight());
+        assertEquals(2, executor.getStats().getQueued());
+        assertEquals(1, executor.getStats().getCompleted());
+    }
+
+    @Test
+    @DisplayName("should complete polls finishing synchronously and forward their result")
+    void testSynchronousPolls() {
+        final PollExecutor executor = new PollExecutor(1);
+
+        final Future<Boolean> first = executor.submit(() -> Future.succeededFuture(true));
+        final Future<Boolean> second = executor.submit(() -> Future.failedFuture("unreachable"));
+
+        assertTrue(first.succeeded());
+        assertTrue(second.failed());
+        assertEquals(2, executor.getStats().getCompleted());
+        assertEquals(0, executor.getStats().getInFlight());
+    }
+
+    @Test
+    @DisplayName("should reject a limit lower than one")
+    void testInvalidLimit() {
+        assertThrows(IllegalArgumentException.class, () -> new PollExecutor(0));
+    }
+}
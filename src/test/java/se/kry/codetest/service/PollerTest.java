@@ -0,0 +1,168 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.net.NetServer;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.model.ProbeResult;
+import se.kry.codetest.model.ProbeType;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class PollerTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private final List<HttpMethod> methods = new CopyOnWriteArrayList<>();
+
+    private Future<HttpServer> httpServer(Vertx vertx) {
+        Future<HttpServer> listening = Future.future();
+        vertx.createHttpServer()
+                .requestHandler(request -> {
+                    methods.add(request.method());
+                    final HttpServerResponse response = request.response();
+                    switch (request.path()) {
+                        case "/ok":
+                            response.end("ok");
+                            break;
+                        case "/not-modified":
+                            response.setStatusCode(304).end();
+                            break;
+                        case "/missing":
+                            response.setStatusCode(404).end();
+                            break;
+                        case "/unavailable":
+                            response.setStatusCode(503).end();
+                            break;
+                        case "/endless":
+                            // never ends, a probe only completes by stopping to read
+                            response.setChunked(true);
+                            final Buffer chunk = Buffer.buffer(new byte[16 * 1024]);
+                            vertx.setPeriodic(10, timerId -> {
+                                if (response.closed()) {
+                                    vertx.cancelTimer(timerId);
+                                } else if (!response.writeQueueFull()) {
+                                    response.write(chunk);
+                                }
+                            });
+                            break;
+                        default:
+                            response.setStatusCode(500).end();
+                    }
+                })
+                .listen(0, listening);
+        return listening;
+    }
+
+    private static String url(HttpServer server, String path) {
+        return "http://localhost:" + server.actualPort() + path;
+    }
+
+    @Test
+    @DisplayName("should succeed a GET probe on a status below 400 only")
+    void testGetStatus(Vertx vertx, VertxTestContext testContext) {
+        final Poller poller = new Poller(vertx);
+
+        httpServer(vertx)
+                .compose(server -> {
+                    final Future<ProbeResult> ok = poller.probe(url(server, "/ok"), ProbeType.GET, TIMEOUT_MS);
+                    final Future<ProbeResult> notModified = poller.probe(url(server, "/not-modified"), ProbeType.GET, TIMEOUT_MS);
+                    final Future<ProbeResult> missing = poller.probe(url(server, "/missing"), ProbeType.GET, TIMEOUT_MS);
+                    final Future<ProbeResult> unavailable = poller.probe(url(server, "/unavailable"), ProbeType.GET, TIMEOUT_MS);
+                    return CompositeFuture.all(ok, notModified, missing, unavailable);
+                })
+                .setHandler(testContext.succeeding(probes -> {
+                    testContext.verify(() -> {
+                        assertTrue(probes.<ProbeResult>resultAt(0).isSuccess());
+                        assertTrue(probes.<ProbeResult>resultAt(1).isSuccess());
+                        assertFalse(probes.<ProbeResult>resultAt(2).isSuccess());
+                        assertFalse(probes.<ProbeResult>resultAt(3).isSuccess());
+                        assertTrue(probes.<ProbeResult>resultAt(0).getTtfbMs() >= 0);
+                        assertTrue(methods.stream().allMatch(HttpMethod.GET::equals));
+                    });
+                    testContext.completeNow();
+                }));
+    }
+
+    @Test
+    @DisplayName("should send a HEAD request for a HEAD probe")
+    void testHead(Vertx vertx, VertxTestContext testContext) {
+        final Poller poller = new Poller(vertx);
+
+        httpServer(vertx)
+                .compose(server -> CompositeFuture.all(
+                        poller.probe(url(server, "/ok"), ProbeType.HEAD, TIMEOUT_MS),
+                        poller.probe(url(server, "/missing"), ProbeType.HEAD, TIMEOUT_MS)))
+                .setHandler(testContext.succeeding(probes -> {
+                    testContext.verify(() -> {
+                        assertTrue(probes.<ProbeResult>resultAt(0).isSuccess());
+                        assertFalse(probes.<ProbeResult>resultAt(1).isSuccess());
+                        assertEquals(2, methods.size());
+                        assertTrue(methods.stream().allMatch(HttpMethod.HEAD::equals));
+                    });
+                    testContext.completeNow();
+                }));
+    }
+
+    @Test
+    @DisplayName("should stop reading a GET response after the max body size")
+    void testGetBodyCap(Vertx vertx, VertxTestContext testContext) {
+        final Poller poller = new Poller(vertx, ProbeClientOptions.builder().maxBodyBytes(64 * 1024).build());
+
+        httpServer(vertx)
+                .compose(server -> poller.probe(url(server, "/endless"), ProbeType.GET, TIMEOUT_MS))
+                .setHandler(testContext.succeeding(probe -> {
+                    testContext.verify(() -> {
+                        assertTrue(probe.isSuccess());
+                        assertFalse(probe.isTimedOut());
+                        assertTrue(probe.getTotalMs() < TIMEOUT_MS);
+                    });
+                    testContext.completeNow();
+                }));
+    }
+
+    @Test
+    @DisplayName("should succeed a TCP probe once connected and fail it on a closed port")
+    void testTcp(Vertx vertx, VertxTestContext testContext) {
+        final Poller poller = new Poller(vertx);
+        final Future<NetServer> listening = Future.future();
+        final Future<NetServer> closedListening = Future.future();
+        vertx.createNetServer().connectHandler(socket -> socket.close()).listen(0, listening);
+        vertx.createNetServer().connectHandler(socket -> socket.close()).listen(0, closedListening);
+
+        CompositeFuture.all(listening, closedListening)
+                .compose(listened -> {
+                    final NetServer closed = closedListening.result();
+                    final int closedPort = closed.actualPort();
+                    final Future<Void> closing = Future.future();
+                    closed.close(closing);
+                    return closing.compose(closedServer -> CompositeFuture.all(
+                            poller.probe("tcp://localhost:" + listening.result().actualPort(), ProbeType.TCP, TIMEOUT_MS),
+                            poller.probe("tcp://localhost:" + closedPort, ProbeType.TCP, TIMEOUT_MS)));
+                })
+                .setHandler(testContext.succeeding(probes -> {
+                    testContext.verify(() -> {
+                        assertTrue(probes.<ProbeResult>resultAt(0).isSuccess());
+                        assertTrue(probes.<ProbeResult>resultAt(0).getConnectMs() >= 0);
+                        assertFalse(probes.<ProbeResult>resultAt(1).isSuccess());
+                        assertFalse(probes.<ProbeResult>resultAt(1).isTimedOut());
+                    });
+                    testContext.completeNow();
+                }));
+    }
+}
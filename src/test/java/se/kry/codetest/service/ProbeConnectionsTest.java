@@ -0,0 +1,61 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpConnection;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProbeConnectionsTest {
+
+    @Test
+    @DisplayName("should count a reused connection once and release it on close")
+    @SuppressWarnings("unchecked")
+    void testReuse() {
+        final ProbeConnections connections = new ProbeConnections();
+        final HttpConnection connection = Mockito.mock(HttpConnection.class);
+        final ArgumentCaptor<Handler<Void>> closeHandler = ArgumentCaptor.forClass(Handler.class);
+        Mockito.when(connection.closeHandler(closeHandler.capture())).thenReturn(connection);
+
+        for (int i = 0; i < 4; i++) {
+            connections.onRequest("host:80");
+            connections.onConnection("host:80", connection);
+        }
+
+        JsonObject stats = connections.toJson();
+        assertEquals(1, stats.getLong("connections_opened").longValue());
+        assertEquals(1, stats.getLong("connections_open").longValue());
+        assertEquals(4, stats.getLong("requests").longValue());
+        assertEquals(0.75, stats.getDouble("reuse_rate"), 0.001);
+
+        closeHandler.getValue().handle(null);
+
+        assertEquals(0, connections.getOpen());
+    }
+
+    @Test
+    @DisplayName("should drop a forgotten host once its last connection is closed")
+    @SuppressWarnings("unchecked")
+    void testForget() {
+        final ProbeConnections connections = new ProbeConnections();
+        final HttpConnection connection = Mockito.mock(HttpConnection.class);
+        final ArgumentCaptor<Handler<Void>> closeHandler = ArgumentCaptor.forClass(Handler.class);
+        Mockito.when(connection.closeHandler(closeHandler.capture())).thenReturn(connection);
+        connections.onRequest("idle:80");
+        connections.onRequest("busy:80");
+        connections.onConnection("busy:80", connection);
+
+        connections.forget("idle:80");
+        connections.forget("busy:80");
+
+        assertEquals(1, connections.toJson().getInteger("hosts").intValue());
+
+        closeHandler.getValue().handle(null);
+
+        assertEquals(0, connections.toJson().getInteger("hosts").intValue());
+    }
+}
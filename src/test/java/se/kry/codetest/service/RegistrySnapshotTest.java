@@ -0,0 +1,97 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.model.ProbeType;
+import se.kry.codetest.model.Service;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class RegistrySnapshotTest {
+
+    private Path path;
+
+    @BeforeEach
+    void init() throws IOException {
+        path = Files.createTempDirectory("registry-snapshot").resolve("registry.snapshot");
+    }
+
+    @Test
+    @DisplayName("should read back the services and statuses written")
+    void testWriteRead(Vertx vertx, VertxTestContext testContext) {
+        final RegistrySnapshot registrySnapshot = new RegistrySnapshot(vertx, path.toString());
+        final LocalDateTime creationDate = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        final List<Service> services = Arrays.asList(
+                Service.builder().id("1").name("kry").url("https://www.kry.se").serviceStatus(ServiceStatus.OK)
+                        .creationDate(creationDate).pollIntervalMs(5000).probeType(ProbeType.HEAD).build(),
+                Service.builder().id("2").url("https://www.google.com").serviceStatus(ServiceStatus.FAILED).build());
+
+        registrySnapshot.write(1, services)
+                .compose(written -> registrySnapshot.write(1, services)
+                        .map(rewritten -> {
+                            testContext.verify(() -> {
+                                assertTrue(written);
+                                assertFalse(rewritten);
+                            });
+                            return rewritten;
+                        }))
+                .compose(written -> new RegistrySnapshot(vertx, path.toString()).read())
+                .setHandler(read -> {
+                    testContext.verify(() -> {
+                        assertTrue(read.succeeded());
+                        assertEquals(2, read.result().size());
+                        final Service kry = read.result().get(0);
+                        assertEquals("kry", kry.getName());
+                        assertEquals(ServiceStatus.OK, kry.getServiceStatus());
+                        assertEquals(creationDate, kry.getCreationDate());
+                        assertEquals(5000, kry.getPollIntervalMs());
+                        assertEquals(ProbeType.HEAD, kry.getProbeType());
+                        final Service google = read.result().get(1);
+                        assertNull(google.getName());
+                        assertNull(google.getCreationDate());
+                        assertEquals(ServiceStatus.FAILED, google.getServiceStatus());
+                    });
+                    testContext.completeNow();
+                });
+    }
+
+    @Test
+    @DisplayName("should read a corrupted snapshot as empty")
+    void testCorrupted(Vertx vertx, VertxTestContext testContext) {
+        final RegistrySnapshot registrySnapshot = new RegistrySnapshot(vertx, path.toString());
+        final List<Service> services = Arrays.asList(
+                Service.builder().id("1").name("kry").url("https://www.kry.se").serviceStatus(ServiceStatus.OK).build());
+
+        registrySnapshot.write(1, services)
+                .compose(written -> {
+                    vertx.fileSystem().writeFileBlocking(path.toString(),
+                            vertx.fileSystem().readFileBlocking(path.toString()).setByte(30, (byte) 'x'));
+                    return registrySnapshot.read();
+                })
+                .setHandler(read -> {
+                    testContext.verify(() -> {
+                        assertTrue(read.succeeded());
+                        assertTrue(read.result().isEmpty());
+                    });
+                    testContext.completeNow();
+                });
+    }
+}
@@ -0,0 +1,51 @@
+package se.kry.codetest.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.repository.InMemoryServiceStore;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class StatusWriteBufferTest {
+
+    @Test
+    @DisplayName("should retry a failed flush without waiting for another status")
+    void testRetryFailedFlush(Vertx vertx, VertxTestContext testContext) {
+        final AtomicInteger attempts = new AtomicInteger();
+        final ServiceRegistry registry = new ServiceRegistry(vertx, new InMemoryServiceStore() {
+            @Override
+            public synchronized Future<Integer> updateStatuses(Map<String, ServiceStatus> statuses) {
+                if (attempts.incrementAndGet() == 1) {
+                    return Future.failedFuture("database is locked");
+                }
+                return super.updateStatuses(statuses);
+            }
+        });
+        final StatusWriteBuffer buffer = new StatusWriteBuffer(vertx, registry, 10, 10);
+
+        registry.create("https://www.kry.se", "kry")
+                .setHandler(testContext.succeeding(id -> vertx.runOnContext(v -> {
+                    buffer.write(id, ServiceStatus.OK);
+                    vertx.setTimer(StatusWriteBuffer.RETRY_DELAY_MS + 500, timerId -> registry.get(id)
+                            .setHandler(testContext.succeeding(service -> {
+                                testContext.verify(() -> {
+                                    assertTrue(attempts.get() >= 2);
+                                    assertEquals(0, buffer.getPending());
+                                    assertEquals(ServiceStatus.OK, service.getServiceStatus());
+                                });
+                                testContext.completeNow();
+                            })));
+                })));
+    }
+}
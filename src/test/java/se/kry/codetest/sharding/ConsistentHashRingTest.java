@@ -0,0 +1,51 @@
+package se.kry.codetest.sharding;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashRingTest {
+
+    @Test
+    @DisplayName("should spread keys over every member")
+    void testSpread() {
+        final ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        final Map<String, Integer> owned = new HashMap<>();
+
+        for (int i = 0; i < 3000; i++) {
+            owned.merge(ring.owner(UUID.randomUUID().toString()), 1, Integer::sum);
+        }
+
+        assertEquals(3, owned.size());
+        owned.values().forEach(count -> assertTrue(count > 500, "unbalanced ring " + owned));
+    }
+
+    @Test
+    @DisplayName("should only move the keys of a member leaving the ring")
+    void testMemberLeaving() {
+        final ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        final ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("a", "b"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+
+        for (int i = 0; i < 1000; i++) {
+            final String key = UUID.randomUUID().toString();
+            if (!"c".equals(before.owner(key))) {
+                assertEquals(before.owner(key), after.owner(key));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("should have no owner when empty")
+    void testEmpty() {
+        assertNull(new ConsistentHashRing(Collections.emptyList(), ConsistentHashRing.DEFAULT_VIRTUAL_NODES).owner("key"));
+    }
+}
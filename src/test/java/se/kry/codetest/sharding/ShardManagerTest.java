@@ -0,0 +1,66 @@
+package se.kry.codetest.sharding;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class ShardManagerTest {
+
+    private static final long HEARTBEAT_MS = 100;
+    private static final long LEASE_TTL_MS = 1000;
+
+    private static List<String> serviceIds() {
+        final List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+
+    @Test
+    @DisplayName("should own every service when sharding is disabled")
+    void testDisabled(Vertx vertx, VertxTestContext testContext) {
+        final ShardManager shards = new ShardManager(vertx, UUID.randomUUID().toString(), false, HEARTBEAT_MS, LEASE_TTL_MS);
+
+        shards.start()
+                .setHandler(testContext.succeeding(started -> {
+                    testContext.verify(() -> serviceIds().forEach(id -> assertTrue(shards.owns(id))));
+                    testContext.completeNow();
+                }));
+    }
+
+    @Test
+    @DisplayName("should split services between live instances and take them over when one leaves")
+    void testSplitAndTakeOver(Vertx vertx, VertxTestContext testContext) {
+        final ShardManager first = new ShardManager(vertx, "first-" + UUID.randomUUID(), true, HEARTBEAT_MS, LEASE_TTL_MS);
+        final ShardManager second = new ShardManager(vertx, "second-" + UUID.randomUUID(), true, HEARTBEAT_MS, LEASE_TTL_MS);
+        final List<String> ids = serviceIds();
+
+        first.start()
+                .compose(started -> second.start())
+                .setHandler(testContext.succeeding(started -> vertx.setTimer(HEARTBEAT_MS * 5, split -> {
+                    testContext.verify(() -> {
+                        final long ownedByFirst = ids.stream().filter(first::owns).count();
+                        ids.forEach(id -> assertNotEquals(first.owns(id), second.owns(id), "service " + id + " must have one owner"));
+                        assertTrue(ownedByFirst > 0 && ownedByFirst < ids.size());
+                    });
+                    second.stop()
+                            .setHandler(testContext.succeeding(stopped -> vertx.setTimer(HEARTBEAT_MS * 5, takenOver -> {
+                                testContext.verify(() -> assertEquals(ids.size(), ids.stream().filter(first::owns).count()));
+                                first.stop().setHandler(released -> testContext.completeNow());
+                            })));
+                })));
+    }
+}
@@ -1,18 +1,52 @@
 const listContainer = document.querySelector('#service-list');
+const servicesById = new Map();
+
+function renderService(service) {
+    let li = servicesById.get(service.id);
+    if (!li) {
+        li = document.createElement("li");
+        servicesById.set(service.id, li);
+        listContainer.appendChild(li);
+    }
+    li.dataset.service = JSON.stringify(service);
+    li.textContent = 'id: ' + service.id + ', name: ' + service.name
+        + ', url: ' + service.url + ', status: ' + service.status + ', creation_date: ' + service.creation_date;
+}
+
+function removeService(id) {
+    const li = servicesById.get(id);
+    if (li) {
+        listContainer.removeChild(li);
+        servicesById.delete(id);
+    }
+}
+
 let servicesRequest = new Request('/api/v1/services');
 fetch(servicesRequest)
     .then(function (response) {
         return response.json();
     })
     .then(function (serviceList) {
-        serviceList.forEach(service => {
-            var li = document.createElement("li");
-            li.appendChild(document.createTextNode('id: ' + service.id + ', name: ' + service.name
-                + ', url: ' + service.url + ', status: ' + service.status + ', creation_date: ' + service.creation_date));
-            listContainer.appendChild(li);
-        });
+        serviceList.forEach(renderService);
     });
 
+const events = new EventSource('/api/v1/services/events');
+events.addEventListener('created', evt => renderService(JSON.parse(evt.data).service));
+events.addEventListener('updated', evt => renderService(JSON.parse(evt.data).service));
+events.addEventListener('deleted', evt => removeService(JSON.parse(evt.data).id));
+events.addEventListener('cleared', evt => Array.from(servicesById.keys()).forEach(removeService));
+events.addEventListener('statuses', evt => {
+    const statuses = JSON.parse(evt.data).statuses;
+    Object.keys(statuses).forEach(id => {
+        const li = servicesById.get(id);
+        if (li) {
+            const service = JSON.parse(li.dataset.service);
+            service.status = statuses[id];
+            renderService(service);
+        }
+    });
+});
+
 const saveButton = document.querySelector('#post-service');
 saveButton.onclick = evt => {
     let url = document.querySelector('#url').value;
@@ -24,5 +58,5 @@ saveButton.onclick = evt => {
             'Content-Type': 'application/json'
         },
         body: JSON.stringify({url: url, name: urlName})
-    }).then(res => location.reload());
-}
\ No newline at end of file
+    });
+}